@@ -2,17 +2,30 @@ package fr.ufc.l3info.oprog;
 
 /**
  * Classe décrivant un article.
+ *
+ * Un article est immuable : il peut être partagé sans précaution entre les
+ * threads (cf. ArticleDB).
+ *
+ * Les montants (caisse, panier) sont calculés sur le prix en centimes, arrondi au
+ * centime le plus proche : un prix comportant des fractions de centime (1.996)
+ * compte pour le prix arrondi (2.00). Les articles lus dans un catalogue sont
+ * construits en centimes (cf. ChargeurCSV) : leur prix unitaire est lui aussi
+ * arrondi, et une réduction s'applique au prix arrondi (arrondi au centime
+ * inférieur : 1.996 avec 10% donne 1.80).
  */
-public class Article implements Comparable {
+public class Article implements Comparable<Article> {
 
     /** Code EAN 13 de l'article */
-    long codeEAN13;
+    final long codeEAN13;
 
     /** Dénomination commerciale de l'article */
-    String nom;
+    final String nom;
 
     /** Prix unitaire de l'article */
-    double prixUnitaire;
+    final double prixUnitaire;
+
+    /** Prix unitaire de l'article en centimes (arrondi au centime le plus proche) */
+    final long prixCentimes;
 
     /** Constructeur
      * @param _ean13 le code EAN13 de l'article
@@ -20,13 +33,29 @@ public class Article implements Comparable {
      * @param _nom le nom de l'article
      */
     public Article(long _ean13, double _pu, String _nom) {
+        this(_ean13, _pu, Math.round(_pu * 100), _nom);
+    }
+
+    private Article(long _ean13, double _pu, long _centimes, String _nom) {
         codeEAN13 = _ean13;
         prixUnitaire = _pu;
+        prixCentimes = _centimes;
 
         nom = (_nom == null) ? "" : _nom;
         // nom = (_nom == null) ? "prout" : _nom;
     }
 
+    /**
+     * Construit un article dont le prix est exprimé en centimes.
+     * @param ean13 le code EAN13 de l'article
+     * @param centimes le prix unitaire de l'article, en centimes
+     * @param nom le nom de l'article
+     * @return l'article
+     */
+    public static Article enCentimes(long ean13, long centimes, String nom) {
+        return new Article(ean13, centimes / 100.0, centimes, nom);
+    }
+
     /**
      * Accesseur pour le nom de l'article.
      * @return le nom de l'article
@@ -45,12 +74,22 @@ public class Article implements Comparable {
 
     /**
      * Accesseur pour le prix unitaire de l'article
-     * @return la valeur du prix unitaire de l'article
+     * @return la valeur du prix unitaire de l'article (telle que donnée au constructeur,
+     *         ou prixCentimes / 100 pour un article construit en centimes)
      */
     public double getPrixUnitaire() {
         return prixUnitaire;
     }
 
+    /**
+     * Accesseur pour le prix unitaire de l'article en centimes, qui permet
+     * des calculs exacts sur les montants.
+     * @return le prix unitaire de l'article en centimes
+     */
+    public long getPrixCentimes() {
+        return prixCentimes;
+    }
+
 
     public boolean equals(Object a) {
         return a != null && a instanceof Article && ((Article)a).codeEAN13 == this.codeEAN13;
@@ -61,36 +100,21 @@ public class Article implements Comparable {
         return Long.valueOf(codeEAN13).hashCode();
     }
 
+    /**
+     * Vérifie la clé de contrôle du code EAN13 de l'article (cf. GTIN).
+     * @return true si le code est un EAN13 correct, false sinon
+     */
     public boolean isValidEAN13() {
-        // if (false) {
-        if (codeEAN13 < 0) {
-            return false;
-        }
-        String tab = Long.toString(codeEAN13);
-        // if (false) {
-        if (tab.length() > 13) {
-            return false;
-        }
-        while (tab.length() < 13) {
-            tab = "0" + tab;
-        }
-        int sum = 0;
-        // for (int i=0; i < 13; i++) {
-        // for (int i=0; i < 11; i++) {
-        for (int i=0; i < 12; i++) {
-            int digit = tab.charAt(i) - '0';
-            sum += (i % 2 == 1) ? digit * 3 : digit;
-            // sum += (i % 2 == 0) ? digit * 3 : digit;
-        }
-        int reste = sum % 10;
-
-        int key = (reste == 0) ? 0 : 10 - reste;
-        // int key = 10 - reste;
-
-        return key == (tab.charAt(12) - '0');
+        return GTIN.estValideEAN13(codeEAN13);
     }
 
-    public int compareTo(Object o) {
-        return this.hashCode() - o.hashCode();
+    /**
+     * Ordre des articles selon leur code EAN13 (cohérent avec equals).
+     * @param o l'article à comparer
+     * @return un entier négatif, nul ou positif selon que le code de cet article
+     *         est inférieur, égal ou supérieur à celui de o
+     */
+    public int compareTo(Article o) {
+        return Long.compare(this.codeEAN13, o.codeEAN13);
     }
 }
@@ -1,9 +1,25 @@
 package fr.ufc.l3info.oprog;
 
-import java.io.*;
-import java.util.LinkedHashMap;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 /**
+ * Base de données des articles.
+ *
+ * Concurrence : une base peut être partagée par un nombre quelconque de threads.
+ * Son contenu est une version immuable, publiée d'un bloc par une écriture
+ * volatile ; les lectures (getArticle, chercher, getTailleDB, recherches par
+ * plage...) ne prennent aucun verrou et voient toujours une version complète,
+ * la dernière publiée. Les écritures (init, appliquer, setFiltreNegatif) sont
+ * sérialisées : chacune construit la version suivante puis la publie. Une base
+ * partagée en lecture seule (cf. ArticleDBCache) refuse toute écriture. Une suite
+ * de lectures qui doit porter sur une même version passe par instantane().
+ *
  * Created with IntelliJ IDEA.
  * User: Frederic Dadeau
  * Date: 26/08/2018
@@ -11,66 +27,346 @@ import java.util.LinkedHashMap;
  */
 public class ArticleDB {
 
-    private LinkedHashMap<Long, Article> DB = new LinkedHashMap<Long, Article>();
+    /**
+     * Au-delà d'une surcouche de taille(base) / FUSION_SURCOUCHE codes, les
+     * modifications sont fusionnées dans un nouveau catalogue compact
+     */
+    private static final int FUSION_SURCOUCHE = 8;
+
+    /**
+     * Contenu de la base à un instant donné ; jamais modifié une fois publié, si ce
+     * n'est que son filtre peut recevoir les codes ajoutés par les versions suivantes
+     */
+    private static final class Version {
+        final Catalogue catalogue;
+        final long numero;
+        /** Filtre des codes absents, ou null s'il n'est pas activé */
+        final FiltreBloom filtre;
+
+        Version(Catalogue catalogue, long numero, boolean avecFiltre) {
+            this(catalogue, numero, avecFiltre ? FiltreBloom.pour(catalogue) : null);
+        }
+
+        Version(Catalogue catalogue, long numero, FiltreBloom filtre) {
+            this.catalogue = catalogue;
+            this.numero = numero;
+            this.filtre = filtre;
+        }
+    }
+
+    /** Version courante, remplacée d'un bloc à chaque modification */
+    private volatile Version DB;
+
+    /** Vrai si la base est partagée (cf. ArticleDBCache) et ne peut plus être réinitialisée ni modifiée */
+    private volatile boolean lectureSeule;
+
+    /** Vrai si la base est un instantané figé d'une autre base (cf. instantane()) */
+    private final boolean figee;
+
+    /** Relevé du dernier chargement (cf. init) */
+    private volatile StatistiquesChargement statistiques;
+
+
+    public ArticleDB() {
+        this(new Version(new TableArticles(), 0, false), false);
+    }
+
+    private ArticleDB(Version v, boolean figee) {
+        this.DB = v;
+        this.figee = figee;
+        this.lectureSeule = figee;
+    }
     
-    /** Initialise la base de données des articles avec un fichier CSV */
+    /**
+     * Initialise la base de données des articles avec un fichier CSV, dont le
+     * contenu est rangé par colonnes (cf. CatalogueCompact), ou avec un catalogue
+     * compilé (cf. CompilateurCatalogue) qui est alors projeté en mémoire sans
+     * être analysé. Un fichier CSV compressé par gzip (extension .csv.gz) est
+     * décompressé à la volée pendant son analyse.
+     *
+     * Chaque chargement, réussi ou non, est relevé (cf. getStatistiquesChargement)
+     * et ajouté aux compteurs de la JVM publiés par JMX (cf. ChargementCatalogue).
+     */
     public void init(String initFile) throws IOException, FileFormatException {
-        if (initFile == null || !initFile.endsWith(".csv"))
-            throw new IOException();
-
-        LinkedHashMap<Long, Article> temp = new LinkedHashMap<Long, Article>();
-        FileReader reader = new FileReader(new File(initFile));
-        BufferedReader br = new BufferedReader(reader);
-        String line;
-        while ((line = br.readLine()) != null) {
-            String[] tokens = line.split(",");
-            if (tokens.length != 3 && tokens.length != 4)
-                throw new FileFormatException(initFile);
-            try {
-                long ean13 = Long.parseLong(tokens[0]);
-                double pu = Double.parseDouble(tokens[1]);
-                String nom = tokens[2].trim();
-                int reduc = 0;
-                if (tokens.length == 4) {
-                    tokens[3] = tokens[3].trim();
-                    if (tokens[3].charAt(tokens[3].length()-1) != '%') {
-                        throw new FileFormatException(initFile);
-                    }
-                    tokens[3] = tokens[3].substring(0, tokens[3].length()-1);
-                    reduc = Integer.parseInt(tokens[3]);
-                    pu = Math.floor((pu - (pu * reduc / 100.0)) * 100) / 100;
-                }
-                if (pu >= 0) {
-                //if (false && pu > 0) {
-                    Article art = new Article(ean13, pu, nom);
-                    if (!art.isValidEAN13()) {
-                    //if (false && !art.isValidEAN13()) {
-                        throw new FileFormatException(initFile);
-                    }
-                    temp.put(ean13, art);
-                    // DB.put(ean13, art);
-                }
-                else {
-                    throw new FileFormatException(initFile);
-                }
+        if (lectureSeule)
+            throw new IllegalStateException("Base de données partagée en lecture seule");
+        long debut = System.nanoTime();
+        StatistiquesChargement.Compteurs compteurs = new StatistiquesChargement.Compteurs();
+        boolean reussi = false;
+        try {
+            Catalogue c;
+            if (initFile != null && initFile.endsWith(CatalogueBinaire.EXTENSION)) {
+                c = CatalogueBinaire.ouvrir(initFile);
+                compteurs.octetsLus = new File(initFile).length();
+                compteurs.lignes = compteurs.articles = c.taille();
+            }
+            else {
+                if (initFile == null || !(initFile.endsWith(".csv") || initFile.endsWith(".csv" + ChargeurCSV.EXTENSION_GZIP)))
+                    throw new IOException();
+                c = CatalogueCompact.compacter(ChargeurCSV.charger(initFile, compteurs));
             }
-            catch (NumberFormatException e) {
-                throw new FileFormatException(initFile);
+            publier(c);
+            reussi = true;
+            releve(compteurs.reussite(initFile, System.nanoTime() - debut, c));
+        }
+        finally {
+            if (!reussi) {
+                releve(compteurs.echec(initFile, System.nanoTime() - debut));
             }
-        };
-        DB = temp;
+        }
+    }
+
+    private void releve(StatistiquesChargement s) {
+        statistiques = s;
+        ChargementCatalogue.get().ajouter(s);
+    }
+
+    /**
+     * @return le relevé du dernier chargement de la base par init (réussi ou non),
+     *         ou null si la base n'a jamais été chargée
+     */
+    public StatistiquesChargement getStatistiquesChargement() {
+        return statistiques;
     }
 
     public Article getArticle(long _ean13) throws ArticleNotFoundException {
-        if (! DB.containsKey(_ean13)) {
-        // if (false && ! DB.containsKey(_ean13)) {
+        Article a = chercher(_ean13);
+        if (a == null) {
+        // if (false && a == null) {
             throw new ArticleNotFoundException(_ean13);
         }
-        return DB.get(_ean13);
+        return a;
+    }
+
+    /**
+     * Recherche un article sans lever d'exception lorsqu'il est inconnu,
+     * pour les appelants pour lesquels un code inconnu est un cas courant.
+     * @param ean13 le code EAN13 de l'article
+     * @return l'article, ou null s'il ne figure pas dans la base
+     */
+    public Article chercher(long ean13) {
+        Version v = DB;
+        if (v.filtre != null && !v.filtre.peutContenir(ean13)) {
+            return null;
+        }
+        return v.catalogue.get(ean13);
+    }
+
+    /**
+     * Active ou désactive le filtre des codes absents : lorsqu'il est actif,
+     * la plupart des recherches de codes inconnus se terminent sans consulter
+     * le catalogue, au prix d'environ 10 bits par article.
+     * Le réglage s'applique à la version courante et aux suivantes.
+     * @param actif true pour activer le filtre
+     * @throws IllegalStateException si la base est partagée en lecture seule ou figée
+     */
+    public synchronized void setFiltreNegatif(boolean actif) {
+        verifierModifiable();
+        if (actif != (DB.filtre != null)) {
+            DB = new Version(DB.catalogue, DB.numero, actif);
+        }
+    }
+
+    /**
+     * Compresse la version courante (cf. CatalogueHachageParfait) : l'index des
+     * codes n'occupe plus que quelques octets par article, ce qui permet de garder
+     * plusieurs catalogues en mémoire sur un appareil. Destiné aux bases qui ne
+     * sont plus modifiées : les modifications ultérieures restent possibles, mais
+     * une modification importante range à nouveau la base par colonnes.
+     * Le numéro de version n'est pas modifié.
+     * @throws IllegalStateException si la base est partagée en lecture seule ou figée
+     */
+    public synchronized void compresser() {
+        verifierModifiable();
+        DB = new Version(CatalogueHachageParfait.compresser(DB.catalogue), DB.numero, DB.filtre != null);
+    }
+
+    /**
+     * @return true si le filtre des codes absents est actif
+     */
+    public boolean getFiltreNegatif() {
+        return DB.filtre != null;
+    }
+
+    /**
+     * Recherche les articles dont le code est compris dans une plage.
+     * Les codes du catalogue étant triés, la plage est localisée par dichotomie
+     * (O(log n)) et seuls ses articles sont construits (cf. Catalogue.entre).
+     * @param min le plus petit code recherché (inclus)
+     * @param max le plus grand code recherché (exclu)
+     * @return les articles (liste non modifiable), par ordre croissant de code
+     */
+    public List<Article> getArticlesEntre(long min, long max) {
+        if (max <= min) {
+            return Collections.<Article>emptyList();
+        }
+        return DB.catalogue.entre(min, max);
+    }
+
+    /**
+     * Recherche les articles dont le code EAN13 (complété à gauche par des zéros)
+     * commence par les chiffres donnés, par exemple un préfixe d'entreprise GS1.
+     * @param prefixe de 0 à 13 chiffres
+     * @return les articles (liste non modifiable), par ordre croissant de code
+     * @throws IllegalArgumentException si le préfixe n'est pas une suite d'au plus 13 chiffres
+     */
+    public List<Article> getArticlesPrefixe(String prefixe) {
+        if (prefixe == null || prefixe.length() > 13) {
+            throw new IllegalArgumentException("Préfixe EAN13 incorrect : " + prefixe);
+        }
+        long debut = 0;
+        for (int i = 0; i < prefixe.length(); i++) {
+            char c = prefixe.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("Préfixe EAN13 incorrect : " + prefixe);
+            }
+            debut = debut * 10 + (c - '0');
+        }
+        long largeur = 1;
+        for (int i = prefixe.length(); i < 13; i++) {
+            largeur *= 10;
+        }
+        return getArticlesEntre(debut * largeur, (debut + 1) * largeur);
     }
 
     public int getTailleDB() {
-        return DB.size();
+        return DB.catalogue.taille();
+    }
+
+    /**
+     * Applique un fichier de modifications (cf. Delta pour le format), éventuellement
+     * compressé par gzip (extension .gz), à la base.
+     * La nouvelle version est publiée d'un bloc : les lecteurs voient soit
+     * l'ancienne version, soit la nouvelle, sans jamais être bloqués.
+     * @param fichierDelta chemin vers le fichier de modifications
+     * @return le numéro de la nouvelle version
+     * @throws IOException si le fichier ne peut être lu
+     * @throws FileFormatException si le fichier est incorrect (la base n'est alors pas modifiée)
+     */
+    public long appliquer(String fichierDelta) throws IOException, FileFormatException {
+        return appliquer(ChargeurCSV.chargerDelta(fichierDelta));
+    }
+
+    /**
+     * Applique un flux de modifications (cf. Delta pour le format) à la base.
+     * @param flux le flux à lire jusqu'à sa fin (il n'est pas fermé)
+     * @return le numéro de la nouvelle version
+     * @throws IOException si le flux ne peut être lu
+     * @throws FileFormatException si le flux est incorrect (la base n'est alors pas modifiée)
+     */
+    public long appliquer(InputStream flux) throws IOException, FileFormatException {
+        return appliquer(ChargeurCSV.chargerDelta(ByteBuffer.wrap(ChargeurCSV.lire(flux)), "<flux>"));
+    }
+
+    /**
+     * Applique des modifications à la base et publie la nouvelle version.
+     * Le filtre des codes absents, s'il est actif, n'est pas reconstruit : les codes
+     * ajoutés y sont insérés (les codes supprimés y restent, comme faux positifs),
+     * et il n'est reconstruit que lorsque la surcouche est fusionnée dans la base.
+     * Une base partagée (cf. ArticleDBCache) n'est pas modifiable : les modifications
+     * propres à un appareil passent par surcharger ou ArticleDBCache.get(base, surcouche).
+     * @param delta les modifications
+     * @return le numéro de la nouvelle version
+     * @throws IllegalStateException si la base est partagée en lecture seule ou figée
+     */
+    public synchronized long appliquer(Delta delta) {
+        verifierModifiable();
+        Version v = DB;
+        CatalogueEnCouches c = CatalogueEnCouches.empiler(v.catalogue, delta);
+        if (c.tailleSurcouche() > c.base().taille() / FUSION_SURCOUCHE) {
+            DB = new Version(CatalogueCompact.compacter(c), v.numero + 1, v.filtre != null);
+        }
+        else {
+            // les lecteurs de la version courante voient au pire des faux positifs de plus
+            DB = new Version(c, v.numero + 1, ajouterCodes(v.filtre, delta));
+        }
+        return v.numero + 1;
+    }
+
+    /**
+     * Insère dans un filtre les codes ajoutés par des modifications.
+     * @param filtre le filtre, ou null
+     * @param delta les modifications
+     * @return le filtre
+     */
+    private static FiltreBloom ajouterCodes(FiltreBloom filtre, Delta delta) {
+        if (filtre != null) {
+            for (Map.Entry<Long, Article> e : delta.operations()) {
+                if (e.getValue() != null) {
+                    filtre.ajouter(e.getKey());
+                }
+            }
+        }
+        return filtre;
+    }
+
+    /**
+     * Crée une base formée de la version courante de celle-ci et d'une surcouche
+     * de modifications, par exemple le catalogue d'un magasin à partir du catalogue
+     * de l'enseigne. Le contenu de cette base n'est pas recopié mais partagé :
+     * la nouvelle base n'occupe en propre que la place de la surcouche, et les
+     * modifications ultérieures de cette base ne la concernent pas.
+     * @param surcouche les modifications propres à la nouvelle base
+     * @return la nouvelle base
+     */
+    public ArticleDB surcharger(Delta surcouche) {
+        Version v = DB;
+        // le filtre de cette base n'est pas modifié : celui de la nouvelle base en est une copie
+        FiltreBloom filtre = (v.filtre == null) ? null : ajouterCodes(v.filtre.copie(), surcouche);
+        return new ArticleDB(new Version(CatalogueEnCouches.empiler(v.catalogue, surcouche), 1, filtre), false);
+    }
+
+    /**
+     * @return le numéro de la version courante de la base (incrémenté à chaque modification)
+     */
+    public long getVersion() {
+        return DB.numero;
+    }
+
+    /**
+     * Fige la version courante de la base : les modifications ultérieures de
+     * celle-ci ne sont pas visibles dans l'instantané, qui permet par exemple
+     * de garder des prix cohérents tout au long d'un même panier.
+     * @return une base en lecture seule sur la version courante
+     */
+    public ArticleDB instantane() {
+        return new ArticleDB(DB, true);
+    }
+
+    private void verifierModifiable() {
+        if (figee)
+            throw new IllegalStateException("Instantané d'une base de données");
+        if (lectureSeule)
+            throw new IllegalStateException("Base de données partagée en lecture seule");
+    }
+
+    private synchronized void publier(Catalogue c) {
+        // la base a pu être verrouillée pendant le chargement
+        if (lectureSeule)
+            throw new IllegalStateException("Base de données partagée en lecture seule");
+        DB = new Version(c, DB.numero + 1, DB.filtre != null);
+    }
+
+    /** Contenu de la base */
+    Catalogue catalogue() {
+        return DB.catalogue;
+    }
+
+    /** Filtre des codes absents de la version courante, ou null s'il n'est pas activé */
+    FiltreBloom filtre() {
+        return DB.filtre;
+    }
+
+    /** Interdit toute réinitialisation ou modification ultérieure de la base */
+    synchronized void verrouiller() {
+        lectureSeule = true;
+    }
+
+    /**
+     * @return true si la base est partagée et ne peut plus être réinitialisée ni modifiée
+     */
+    public boolean estLectureSeule() {
+        return lectureSeule;
     }
     
 }
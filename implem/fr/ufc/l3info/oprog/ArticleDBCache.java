@@ -0,0 +1,312 @@
+package fr.ufc.l3info.oprog;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registre des bases de données d'articles partagées entre toutes les scanettes
+ * et toutes les caisses d'une même JVM.
+ *
+ * Chaque fichier n'est analysé qu'une seule fois : les appels suivants à
+ * {@link #get(String)} renvoient la même instance d'{@link ArticleDB}, en lecture
+ * seule, tant que la date de dernière modification et la taille du fichier
+ * n'ont pas changé. Dans le cas contraire, le fichier est rechargé et la nouvelle
+ * base remplace l'ancienne dans le registre (les objets qui utilisaient l'ancienne
+ * base la conservent).
+ *
+ * Deux fichiers CSV de même contenu partagent la même base : l'empreinte du contenu
+ * d'un fichier n'est calculée que si un fichier de même taille a déjà été chargé.
+ * Les catalogues compilés (cf. CatalogueBinaire), projetés en mémoire hors du tas,
+ * ne sont jamais lus en entier. De même, les bases formées d'une base commune et
+ * d'une surcouche de modifications (cf. {@link #get(String, String)}) sont partagées
+ * entre toutes les surcouches de même contenu ; un fichier de surcouche n'est relu
+ * que si sa date de dernière modification ou sa taille a changé. Les bases partagées ne sont jamais
+ * modifiées (cf. ArticleDB.estLectureSeule).
+ *
+ * Le registre peut être utilisé depuis un nombre quelconque de threads : une
+ * demande servie depuis le registre ne prend aucun verrou, seuls les
+ * (re)chargements sont sérialisés.
+ */
+public class ArticleDBCache {
+
+    /** Une base chargée, avec les caractéristiques du fichier au moment du chargement */
+    private static class Entree {
+        final ArticleDB db;
+        /** Chemin canonique du fichier */
+        final String chemin;
+        final long dateModif;
+        final long taille;
+        /** Empreinte du contenu du fichier, calculée à la demande (cf. empreinte()) */
+        private String empreinte;
+        /** Bases surchargées construites sur celle-ci, indexées par empreinte de la surcouche */
+        final HashMap<String, ArticleDB> surcouches;
+        /** Bases surchargées construites sur celle-ci, indexées par chemin canonique du fichier de surcouche */
+        final HashMap<String, FichierSurcouche> fichiersSurcouches;
+
+        Entree(ArticleDB db, String chemin, long dateModif, long taille, String empreinte,
+               HashMap<String, ArticleDB> surcouches, HashMap<String, FichierSurcouche> fichiersSurcouches) {
+            this.db = db;
+            this.chemin = chemin;
+            this.surcouches = surcouches;
+            this.fichiersSurcouches = fichiersSurcouches;
+            this.dateModif = dateModif;
+            this.taille = taille;
+            this.empreinte = empreinte;
+        }
+
+        /**
+         * @return l'empreinte du contenu chargé, ou null si le fichier a changé
+         *         depuis ou ne peut plus être lu (la base n'est alors plus partageable)
+         */
+        String empreinte() {
+            if (empreinte == null) {
+                File f = new File(chemin);
+                if (f.lastModified() != dateModif || f.length() != taille) {
+                    return null;
+                }
+                try {
+                    empreinte = calculerEmpreinte(chemin);
+                }
+                catch (IOException e) {
+                    return null;
+                }
+            }
+            return empreinte;
+        }
+    }
+
+    /** Une base surchargée, avec les caractéristiques du fichier de surcouche au moment de sa lecture */
+    private static class FichierSurcouche {
+        final ArticleDB db;
+        final long dateModif;
+        final long taille;
+
+        FichierSurcouche(ArticleDB db, long dateModif, long taille) {
+            this.db = db;
+            this.dateModif = dateModif;
+            this.taille = taille;
+        }
+    }
+
+    /** Bases chargées, indexées par chemin canonique (lues sans verrou) */
+    private static final ConcurrentHashMap<String, Entree> bases = new ConcurrentHashMap<String, Entree>();
+    /** Bases chargées depuis un fichier CSV, indexées par taille du fichier (candidates au partage) */
+    private static final HashMap<Long, ArrayList<Entree>> basesParTaille = new HashMap<Long, ArrayList<Entree>>();
+
+    /** Nombre de fichiers effectivement analysés */
+    private static final AtomicLong nbChargements = new AtomicLong();
+    /** Nombre de demandes servies depuis le registre */
+    private static final AtomicLong nbSucces = new AtomicLong();
+    /** Nombre de demandes ayant nécessité un (re)chargement */
+    private static final AtomicLong nbEchecs = new AtomicLong();
+    /** Nombre de fichiers dont le contenu était déjà chargé sous un autre chemin */
+    private static final AtomicLong nbPartages = new AtomicLong();
+    /** Nombre d'empreintes de fichiers calculées */
+    private static final AtomicLong nbEmpreintes = new AtomicLong();
+
+    /** Activation du filtre des codes absents sur les bases chargées */
+    private static volatile boolean filtreNegatif = false;
+
+
+    private ArticleDBCache() { }
+
+    /**
+     * Renvoie la base de données partagée correspondant au fichier donné,
+     * en la chargeant si elle est absente du registre ou si le fichier a changé.
+     * @param initFile chemin vers le fichier de la base de données d'articles
+     * @return la base de données (en lecture seule) associée au fichier
+     * @throws IOException si le fichier ne peut pas être lu
+     * @throws FileFormatException si le fichier n'est pas correctement formaté
+     */
+    public static ArticleDB get(String initFile) throws IOException, FileFormatException {
+        if (initFile == null) {
+            throw new IOException();
+        }
+        File f = new File(initFile);
+        Entree e = bases.get(f.getCanonicalPath());
+        if (e != null && e.dateModif == f.lastModified() && e.taille == f.length()) {
+            nbSucces.incrementAndGet();
+            return e.db;
+        }
+        return entree(initFile).db;
+    }
+
+    private static synchronized Entree entree(String initFile) throws IOException, FileFormatException {
+        if (initFile == null) {
+            throw new IOException();
+        }
+        File f = new File(initFile);
+        String cle = f.getCanonicalPath();
+        long dateModif = f.lastModified();
+        long taille = f.length();
+
+        Entree e = bases.get(cle);
+        if (e != null && e.dateModif == dateModif && e.taille == taille) {
+            nbSucces.incrementAndGet();
+            return e;
+        }
+        nbEchecs.incrementAndGet();
+
+        // recherche d'un contenu identique parmi les fichiers CSV de même taille
+        boolean compile = initFile.endsWith(CatalogueBinaire.EXTENSION);
+        ArrayList<Entree> memeTaille = compile ? null : basesParTaille.get(taille);
+        String empreinte = null;
+        if (memeTaille != null) {
+            empreinte = calculerEmpreinte(initFile);
+            for (Entree meme : memeTaille) {
+                if (empreinte.equals(meme.empreinte())) {
+                    nbPartages.incrementAndGet();
+                    enregistrer(cle, e = new Entree(meme.db, cle, dateModif, taille, empreinte, meme.surcouches, meme.fichiersSurcouches), compile);
+                    return e;
+                }
+            }
+        }
+
+        ArticleDB db = new ArticleDB();
+        db.init(initFile);
+        db.setFiltreNegatif(filtreNegatif);
+        db.verrouiller();
+        nbChargements.incrementAndGet();
+        enregistrer(cle, e = new Entree(db, cle, dateModif, taille, empreinte,
+                new HashMap<String, ArticleDB>(), new HashMap<String, FichierSurcouche>()), compile);
+        return e;
+    }
+
+    /** Ajoute une base au registre, à la place de celle qui était chargée depuis le même fichier */
+    private static void enregistrer(String cle, Entree e, boolean compile) {
+        Entree ancienne = bases.put(cle, e);
+        if (ancienne != null) {
+            ArrayList<Entree> l = basesParTaille.get(ancienne.taille);
+            if (l != null) {
+                l.remove(ancienne);
+                if (l.isEmpty()) {
+                    basesParTaille.remove(ancienne.taille);
+                }
+            }
+        }
+        if (!compile) {
+            ArrayList<Entree> l = basesParTaille.get(e.taille);
+            if (l == null) {
+                basesParTaille.put(e.taille, l = new ArrayList<Entree>());
+            }
+            l.add(e);
+        }
+    }
+
+    private static String calculerEmpreinte(String fichier) throws IOException {
+        nbEmpreintes.incrementAndGet();
+        return Empreinte.deFichier(fichier);
+    }
+
+    /**
+     * Renvoie la base formée de la base partagée correspondant au fichier donné et
+     * d'une surcouche de modifications (cf. Delta pour le format) : le contenu de
+     * la base commune n'est pas recopié, et deux surcouches de même contenu sur la
+     * même base donnent la même instance d'ArticleDB, en lecture seule. Le fichier de
+     * surcouche n'est relu (et son empreinte calculée) que s'il n'a pas encore été lu
+     * avec cette base ou si sa date de dernière modification ou sa taille a changé.
+     * @param initFile chemin vers le fichier de la base de données d'articles commune
+     * @param fichierSurcouche chemin vers le fichier des modifications propres
+     * @return la base de données (en lecture seule) avec ses modifications
+     * @throws IOException si l'un des fichiers ne peut pas être lu
+     * @throws FileFormatException si l'un des fichiers n'est pas correctement formaté
+     */
+    public static synchronized ArticleDB get(String initFile, String fichierSurcouche)
+            throws IOException, FileFormatException {
+        Entree e = entree(initFile);
+        if (fichierSurcouche == null) {
+            throw new IOException();
+        }
+        File f = new File(fichierSurcouche);
+        String cle = f.getCanonicalPath();
+        long dateModif = f.lastModified();
+        long taille = f.length();
+        FichierSurcouche fs = e.fichiersSurcouches.get(cle);
+        if (fs != null && fs.dateModif == dateModif && fs.taille == taille) {
+            return fs.db;
+        }
+
+        Delta surcouche = ChargeurCSV.chargerDelta(fichierSurcouche);
+        String empreinte = surcouche.empreinte();
+        ArticleDB db = e.surcouches.get(empreinte);
+        if (db != null) {
+            nbPartages.incrementAndGet();
+        }
+        else {
+            db = e.db.surcharger(surcouche);
+            db.verrouiller();
+            e.surcouches.put(empreinte, db);
+        }
+        e.fichiersSurcouches.put(cle, new FichierSurcouche(db, dateModif, taille));
+        return db;
+    }
+
+    /**
+     * Active ou désactive le filtre des codes absents (cf. ArticleDB.setFiltreNegatif)
+     * sur les bases qui seront chargées ensuite.
+     * @param actif true pour activer le filtre
+     */
+    public static synchronized void setFiltreNegatif(boolean actif) {
+        filtreNegatif = actif;
+    }
+
+    /**
+     * Vide le registre et remet les compteurs à zéro.
+     */
+    public static synchronized void vider() {
+        bases.clear();
+        basesParTaille.clear();
+        nbChargements.set(0);
+        nbPartages.set(0);
+        nbEmpreintes.set(0);
+        nbSucces.set(0);
+        nbEchecs.set(0);
+    }
+
+    /**
+     * @return le nombre de fichiers analysés depuis la dernière remise à zéro
+     */
+    public static long getNbChargements() {
+        return nbChargements.get();
+    }
+
+    /**
+     * @return le nombre de demandes servies sans relire le fichier
+     */
+    public static long getNbSucces() {
+        return nbSucces.get();
+    }
+
+    /**
+     * @return le nombre de demandes ayant nécessité la lecture du fichier
+     */
+    public static long getNbEchecs() {
+        return nbEchecs.get();
+    }
+
+    /**
+     * @return le nombre de bases et de surcouches partagées plutôt que construites
+     *         (contenu identique à celui d'une base ou d'une surcouche déjà chargée)
+     */
+    public static long getNbPartages() {
+        return nbPartages.get();
+    }
+
+    /**
+     * @return le nombre de fichiers lus en entier pour calculer l'empreinte de leur contenu
+     */
+    public static long getNbEmpreintes() {
+        return nbEmpreintes.get();
+    }
+
+    /**
+     * @return le nombre de bases actuellement présentes dans le registre
+     */
+    public static synchronized int getTaille() {
+        return bases.size();
+    }
+}
@@ -0,0 +1,49 @@
+package fr.ufc.l3info.oprog;
+
+import java.util.List;
+
+/**
+ * Représentation interne du contenu d'une base de données d'articles
+ * (cf. ArticleDB), indépendante de la manière dont elle est stockée.
+ */
+interface Catalogue {
+
+    /**
+     * Recherche un article par son code.
+     * @param ean13 le code EAN13 de l'article
+     * @return l'article, ou null s'il n'existe pas
+     */
+    Article get(long ean13);
+
+    /**
+     * @return le nombre d'articles du catalogue
+     */
+    int taille();
+
+    /**
+     * Permet de parcourir le catalogue.
+     * @param rang un entier entre 0 et taille()-1
+     * @return l'article situé au rang donné
+     */
+    Article article(int rang);
+
+    /**
+     * @param ean13 un code EAN13
+     * @return le rang de l'article de ce code (cf. article), ou -1 s'il n'existe pas
+     */
+    int rang(long ean13);
+
+    /**
+     * Recherche les articles dont le code est compris dans une plage. Les catalogues
+     * rangés par ordre croissant de code ne construisent que les articles de la plage.
+     * @param min le plus petit code recherché (inclus)
+     * @param max le plus grand code recherché (exclu)
+     * @return les articles (liste non modifiable), par ordre croissant de code
+     */
+    List<Article> entre(long min, long max);
+
+    /**
+     * @return une estimation de la place occupée par le catalogue dans le tas, en octets
+     */
+    long empreinte();
+}
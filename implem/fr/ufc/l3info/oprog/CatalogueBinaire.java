@@ -0,0 +1,280 @@
+package fr.ufc.l3info.oprog;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Catalogue compilé, projeté en mémoire depuis un fichier binaire (extension
+ * {@link #EXTENSION}) produit par {@link CompilateurCatalogue}.
+ *
+ * L'ouverture ne fait aucune analyse : le fichier est projeté par
+ * FileChannel.map et les recherches lisent directement les pages projetées,
+ * qui sont partagées par toutes les JVM d'une même machine via le cache
+ * du système.
+ *
+ * Format (entiers big-endian) :
+ * <pre>
+ *   int    MAGIE, int VERSION, int n, int capacite
+ *   long[n]        codes EAN13, triés par ordre croissant
+ *   int[n]         prix unitaires en centimes
+ *   int[n+1]       début du nom de chaque article dans le tas des noms
+ *   int[capacite]  index de hachage : rang+1 de l'article, 0 si la case est vide
+ *   byte[]         tas des noms (UTF-8)
+ * </pre>
+ * L'index de hachage utilise le même hachage que {@link TableArticles}
+ * avec sondage linéaire ; capacite est une puissance de 2.
+ *
+ * L'ouverture vérifie la cohérence des débuts de noms et de l'index (mais pas
+ * les codes, les prix ni les noms), afin qu'un fichier tronqué ou corrompu soit
+ * refusé plutôt que de provoquer plus tard une erreur ou une recherche sans fin.
+ */
+final class CatalogueBinaire implements Catalogue {
+
+    /** Extension des fichiers de catalogue compilés */
+    static final String EXTENSION = ".artdb";
+
+    private static final int MAGIE = 0x41444231;   // "ADB1"
+    private static final int VERSION = 1;
+    private static final int TAILLE_ENTETE = 16;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final int taille;
+    private final int decalage;
+    private final LongBuffer codes;
+    private final IntBuffer prix;
+    private final IntBuffer debutsNoms;
+    private final IntBuffer index;
+    private final ByteBuffer noms;
+
+
+    private CatalogueBinaire(MappedByteBuffer buf, String nomFichier) throws FileFormatException {
+        if (buf.capacity() < TAILLE_ENTETE || buf.getInt(0) != MAGIE || buf.getInt(4) != VERSION) {
+            throw new FileFormatException(nomFichier);
+        }
+        taille = buf.getInt(8);
+        int capacite = buf.getInt(12);
+        if (taille < 0 || capacite <= taille || Integer.bitCount(capacite) != 1) {
+            throw new FileFormatException(nomFichier);
+        }
+        decalage = 64 - Integer.numberOfTrailingZeros(capacite);
+
+        long pos = TAILLE_ENTETE;
+        long finCodes = pos + 8L * taille;
+        long finPrix = finCodes + 4L * taille;
+        long finDebuts = finPrix + 4L * (taille + 1);
+        long finIndex = finDebuts + 4L * capacite;
+        if (finIndex > buf.capacity()) {
+            throw new FileFormatException(nomFichier);
+        }
+        codes = tranche(buf, pos, finCodes).asLongBuffer();
+        prix = tranche(buf, finCodes, finPrix).asIntBuffer();
+        debutsNoms = tranche(buf, finPrix, finDebuts).asIntBuffer();
+        index = tranche(buf, finDebuts, finIndex).asIntBuffer();
+        noms = tranche(buf, finIndex, buf.capacity());
+        if (!coherent()) {
+            throw new FileFormatException(nomFichier);
+        }
+    }
+
+    /**
+     * @return true si les débuts de noms croissent de 0 à la taille du tas des noms,
+     *         et si l'index ne contient que des rangs+1 entre 0 et n, dont au moins
+     *         une case vide (qui termine toute recherche)
+     */
+    private boolean coherent() {
+        int precedent = 0;
+        for (int r = 0; r <= taille; r++) {
+            int debut = debutsNoms.get(r);
+            if (debut < precedent) {
+                return false;
+            }
+            precedent = debut;
+        }
+        if (precedent != noms.capacity()) {
+            return false;
+        }
+        boolean caseVide = false;
+        for (int i = 0; i < index.capacity(); i++) {
+            int v = index.get(i);
+            if (v < 0 || v > taille) {
+                return false;
+            }
+            caseVide |= (v == 0);
+        }
+        return caseVide;
+    }
+
+    private static ByteBuffer tranche(ByteBuffer buf, long debut, long fin) {
+        ByteBuffer b = buf.duplicate();
+        b.limit((int) fin);
+        b.position((int) debut);
+        return b.slice();
+    }
+
+    /**
+     * Projette un catalogue compilé en mémoire.
+     * @param fichier chemin vers le fichier compilé
+     * @return le catalogue
+     * @throws IOException si le fichier ne peut pas être lu
+     * @throws FileFormatException si le fichier n'est pas un catalogue compilé valide
+     */
+    static CatalogueBinaire ouvrir(String fichier) throws IOException, FileFormatException {
+        RandomAccessFile raf = new RandomAccessFile(fichier, "r");
+        try {
+            FileChannel ch = raf.getChannel();
+            if (ch.size() > Integer.MAX_VALUE) {
+                throw new FileFormatException(fichier);
+            }
+            // la projection reste valide après la fermeture du canal
+            return new CatalogueBinaire(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()), fichier);
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    public Article get(long ean13) {
+        int r = rang(ean13);
+        return (r < 0) ? null : article(r);
+    }
+
+    public int rang(long ean13) {
+        int masque = index.capacity() - 1;
+        for (int i = TableArticles.hacher(ean13, decalage); ; i = (i + 1) & masque) {
+            int rang = index.get(i) - 1;
+            if (rang < 0 || codes.get(rang) == ean13) {
+                return rang;
+            }
+        }
+    }
+
+    public int taille() {
+        return taille;
+    }
+
+    /** @return le rang du premier code supérieur ou égal à code */
+    private int borneInf(long code) {
+        int bas = 0, haut = taille;
+        while (bas < haut) {
+            int milieu = (bas + haut) >>> 1;
+            if (codes.get(milieu) < code) {
+                bas = milieu + 1;
+            }
+            else {
+                haut = milieu;
+            }
+        }
+        return bas;
+    }
+
+    /**
+     * Dichotomie sur les codes projetés ; les articles de la plage sont construits à la demande.
+     */
+    public List<Article> entre(long min, long max) {
+        return new VueTriee(this, borneInf(min), borneInf(max));
+    }
+
+    /**
+     * @param rang rang de l'article dans l'ordre croissant des codes
+     * @return l'article situé à ce rang
+     */
+    public Article article(int rang) {
+        int debut = debutsNoms.get(rang);
+        byte[] nom = new byte[debutsNoms.get(rang + 1) - debut];
+        for (int i = 0; i < nom.length; i++) {
+            nom[i] = noms.get(debut + i);
+        }
+        return Article.enCentimes(codes.get(rang), prix.get(rang), new String(nom, UTF8));
+    }
+
+
+    /**
+     * Compile un catalogue dans un fichier binaire.
+     * @param source le catalogue à compiler
+     * @param destination le fichier à produire
+     * @throws IOException en cas d'erreur d'écriture
+     * @throws IllegalArgumentException si un prix dépasse la capacité du format
+     */
+    static void ecrire(Catalogue source, File destination) throws IOException {
+        int n = source.taille();
+        Article[] articles = new Article[n];
+        for (int i = 0; i < n; i++) {
+            articles[i] = source.article(i);
+        }
+        Arrays.sort(articles, new Comparator<Article>() {
+            public int compare(Article a, Article b) {
+                return a.codeEAN13 < b.codeEAN13 ? -1 : (a.codeEAN13 == b.codeEAN13 ? 0 : 1);
+            }
+        });
+
+        int capacite = 16;
+        while (capacite - (capacite >>> 2) <= n) {
+            capacite <<= 1;
+        }
+        int decalage = 64 - Integer.numberOfTrailingZeros(capacite);
+        int[] index = new int[capacite];
+        byte[][] noms = new byte[n][];
+        for (int r = 0; r < n; r++) {
+            int i = TableArticles.hacher(articles[r].codeEAN13, decalage);
+            while (index[i] != 0) {
+                i = (i + 1) & (capacite - 1);
+            }
+            index[i] = r + 1;
+            noms[r] = articles[r].nom.getBytes(UTF8);
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(destination), 1 << 16));
+        try {
+            out.writeInt(MAGIE);
+            out.writeInt(VERSION);
+            out.writeInt(n);
+            out.writeInt(capacite);
+            for (Article a : articles) {
+                out.writeLong(a.codeEAN13);
+            }
+            for (Article a : articles) {
+                long centimes = a.prixCentimes;
+                if (centimes > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Prix trop élevé : " + a.codeEAN13);
+                }
+                out.writeInt((int) centimes);
+            }
+            int debut = 0;
+            for (byte[] nom : noms) {
+                out.writeInt(debut);
+                debut += nom.length;
+            }
+            out.writeInt(debut);
+            for (int i : index) {
+                out.writeInt(i);
+            }
+            for (byte[] nom : noms) {
+                out.write(nom);
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return 0 : les données sont projetées hors du tas (cf. ouvrir)
+     */
+    public long empreinte() {
+        return 0;
+    }
+}
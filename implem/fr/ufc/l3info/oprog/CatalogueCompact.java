@@ -0,0 +1,178 @@
+package fr.ufc.l3info.oprog;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Catalogue rangé par colonnes en mémoire : un tableau trié des codes, un tableau
+ * des prix en centimes et un tas commun des noms encodés en UTF-8.
+ *
+ * Aucun objet n'est conservé par article : un article coûte 16 octets plus la
+ * longueur de son nom, au lieu d'un Article, d'une chaîne et d'une entrée de
+ * table de hachage. Les Article sont construits à la demande par get et article,
+ * si bien que deux recherches du même code renvoient deux objets égaux mais
+ * distincts.
+ *
+ * La recherche d'un code passe par un index de seaux (environ un seau pour
+ * {@link #ARTICLES_PAR_SEAU} articles, selon les bits de poids fort du code)
+ * puis par une recherche dichotomique dans le seau.
+ */
+final class CatalogueCompact implements Catalogue {
+
+    /** Nombre moyen d'articles par seau de l'index */
+    static final int ARTICLES_PAR_SEAU = 4;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** Codes EAN, par ordre croissant */
+    private final long[] codes;
+    /** Prix unitaires en centimes, dans l'ordre des codes */
+    private final int[] centimes;
+    /** Début du nom de chaque article dans le tas (taille n+1) */
+    private final int[] debutsNoms;
+    /** Tas des noms (UTF-8) */
+    private final byte[] noms;
+    /** Rang du premier article de chaque seau (taille nbSeaux+1) */
+    private final int[] seaux;
+    /** Décalage donnant le seau d'un code à partir de son écart au plus petit code */
+    private final int decalage;
+
+
+    private CatalogueCompact(Article[] articles) {
+        int n = articles.length;
+        codes = new long[n];
+        centimes = new int[n];
+        debutsNoms = new int[n + 1];
+        byte[][] encodes = new byte[n][];
+        int total = 0;
+        for (int r = 0; r < n; r++) {
+            codes[r] = articles[r].codeEAN13;
+            centimes[r] = (int) articles[r].prixCentimes;
+            encodes[r] = articles[r].nom.getBytes(UTF8);
+            debutsNoms[r] = total;
+            total += encodes[r].length;
+        }
+        debutsNoms[n] = total;
+        noms = new byte[total];
+        for (int r = 0; r < n; r++) {
+            System.arraycopy(encodes[r], 0, noms, debutsNoms[r], encodes[r].length);
+        }
+
+        // index des seaux : le seau d'un code est (code - codes[0]) >>> decalage
+        long etendue = (n == 0) ? 0 : codes[n - 1] - codes[0];
+        int bitsSeaux = 32 - Integer.numberOfLeadingZeros(Math.max(1, n / ARTICLES_PAR_SEAU) - 1);
+        decalage = Math.max(0, (64 - Long.numberOfLeadingZeros(etendue)) - bitsSeaux);
+        int nbSeaux = (int) (etendue >>> decalage) + 1;
+        seaux = new int[nbSeaux + 1];
+        int r = 0;
+        for (int s = 0; s <= nbSeaux; s++) {
+            while (r < n && ((codes[r] - codes[0]) >>> decalage) < s) {
+                r++;
+            }
+            seaux[s] = r;
+        }
+    }
+
+    /**
+     * Range un catalogue par colonnes.
+     * @param source le catalogue à compacter
+     * @return le catalogue compact, ou source lui-même si l'un de ses prix ne tient
+     *         pas sur un int (plus de 21 millions d'euros)
+     */
+    static Catalogue compacter(Catalogue source) {
+        if (source instanceof CatalogueCompact) {
+            return source;
+        }
+        int n = source.taille();
+        Article[] articles = new Article[n];
+        for (int i = 0; i < n; i++) {
+            articles[i] = source.article(i);
+            if (articles[i].prixCentimes > Integer.MAX_VALUE) {
+                return source;
+            }
+        }
+        Arrays.sort(articles);
+        return new CatalogueCompact(articles);
+    }
+
+    public int rang(long ean13) {
+        int n = codes.length;
+        if (n == 0 || ean13 < codes[0] || ean13 > codes[n - 1]) {
+            return -1;
+        }
+        int s = (int) ((ean13 - codes[0]) >>> decalage);
+        int bas = seaux[s], haut = seaux[s + 1] - 1;
+        while (bas <= haut) {
+            int milieu = (bas + haut) >>> 1;
+            long c = codes[milieu];
+            if (c < ean13) {
+                bas = milieu + 1;
+            }
+            else if (c > ean13) {
+                haut = milieu - 1;
+            }
+            else {
+                return milieu;
+            }
+        }
+        return -1;
+    }
+
+    /** @return le rang du premier code supérieur ou égal à code */
+    private int borneInf(long code) {
+        int bas = 0, haut = codes.length;
+        while (bas < haut) {
+            int milieu = (bas + haut) >>> 1;
+            if (codes[milieu] < code) {
+                bas = milieu + 1;
+            }
+            else {
+                haut = milieu;
+            }
+        }
+        return bas;
+    }
+
+    /**
+     * Dichotomie sur les codes (O(log n)) ; les articles de la plage sont construits à la demande.
+     */
+    public List<Article> entre(long min, long max) {
+        return new VueTriee(this, borneInf(min), borneInf(max));
+    }
+
+    public Article get(long ean13) {
+        int r = rang(ean13);
+        return (r < 0) ? null : article(r);
+    }
+
+    public int taille() {
+        return codes.length;
+    }
+
+    /**
+     * @param rang rang de l'article dans l'ordre croissant des codes
+     * @return l'article situé à ce rang (construit à chaque appel)
+     */
+    public Article article(int rang) {
+        int debut = debutsNoms[rang];
+        String nom = new String(noms, debut, debutsNoms[rang + 1] - debut, UTF8);
+        return Article.enCentimes(codes[rang], centimes[rang], nom);
+    }
+
+    /**
+     * @param rang rang de l'article dans l'ordre croissant des codes
+     * @return le prix unitaire en centimes de l'article, sans le construire
+     */
+    long prixCentimes(int rang) {
+        return centimes[rang];
+    }
+
+    /**
+     * @return une estimation de la place occupée par les données du catalogue, en octets
+     */
+    public long empreinte() {
+        return 8L * codes.length + 4L * centimes.length + 4L * debutsNoms.length
+                + noms.length + 4L * seaux.length;
+    }
+}
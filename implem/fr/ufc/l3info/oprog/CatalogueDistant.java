@@ -0,0 +1,21 @@
+package fr.ufc.l3info.oprog;
+
+import java.io.IOException;
+
+/**
+ * Second niveau de catalogue, consulté lorsqu'un code est absent de la base locale
+ * (par exemple un service central plus complet). Les codes sont transmis par lots
+ * et l'appel peut être lent : il n'est jamais fait depuis un scan, mais depuis le
+ * fil d'exécution d'un ResolveurInconnus.
+ */
+public interface CatalogueDistant {
+
+    /**
+     * Recherche un lot d'articles.
+     * @param codes les codes EAN13 recherchés
+     * @return un tableau de même taille que codes, contenant l'article de chaque
+     *         code, ou null si le code est inconnu du catalogue
+     * @throws IOException si le catalogue n'a pas pu être consulté
+     */
+    Article[] resoudre(long[] codes) throws IOException;
+}
@@ -0,0 +1,50 @@
+package fr.ufc.l3info.oprog;
+
+import java.io.IOException;
+
+/**
+ * Catalogue distant simulé, répondant à partir d'une base chargée localement,
+ * éventuellement après un délai fixe par lot pour imiter la latence du réseau.
+ * Destiné aux tests et aux démonstrations.
+ */
+public class CatalogueDistantLocal implements CatalogueDistant {
+
+    private final ArticleDB base;
+    private final long latenceMillis;
+    private volatile int nbLots = 0;
+
+
+    /**
+     * @param base la base qui tient lieu de catalogue central
+     * @param latenceMillis délai ajouté à chaque lot, en millisecondes
+     */
+    public CatalogueDistantLocal(ArticleDB base, long latenceMillis) {
+        this.base = base;
+        this.latenceMillis = latenceMillis;
+    }
+
+    public Article[] resoudre(long[] codes) throws IOException {
+        nbLots++;
+        if (latenceMillis > 0) {
+            try {
+                Thread.sleep(latenceMillis);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Consultation interrompue");
+            }
+        }
+        Article[] articles = new Article[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            articles[i] = base.chercher(codes[i]);
+        }
+        return articles;
+    }
+
+    /**
+     * @return le nombre de lots reçus
+     */
+    public int getNbLots() {
+        return nbLots;
+    }
+}
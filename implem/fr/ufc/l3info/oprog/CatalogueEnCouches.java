@@ -0,0 +1,188 @@
+package fr.ufc.l3info.oprog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Catalogue formé d'un catalogue de base, partagé et jamais modifié, et d'une
+ * surcouche de modifications (ajouts, remplacements et suppressions, cf. Delta)
+ * propre à un magasin ou à un appareil.
+ *
+ * Seule la surcouche occupe de la mémoire en propre : de nombreux catalogues
+ * proches (par exemple ceux de la scanette et de la caisse, ou ceux des magasins
+ * d'une même enseigne) peuvent ainsi partager une seule base. Empiler une
+ * nouvelle modification coûte O(taille de la surcouche), sans recopier la base.
+ *
+ * Rangs : les articles de la base qui n'ont pas été supprimés gardent leur ordre
+ * (un article remplacé garde sa place), suivis des articles absents de la base,
+ * dans l'ordre de la surcouche.
+ */
+final class CatalogueEnCouches implements Catalogue {
+
+    private final Catalogue base;
+    private final Delta surcouche;
+
+    /** Articles de la surcouche remplaçant un article de la base */
+    private final TableArticles remplacements;
+    /** Articles de la surcouche absents de la base, dans l'ordre de la surcouche */
+    private final TableArticles nouveaux;
+    /** Codes de la base supprimés, triés */
+    private final long[] supprimes;
+    /** Rangs dans la base des articles supprimés, triés */
+    private final int[] rangsSupprimes;
+
+
+    private CatalogueEnCouches(Catalogue base, Delta surcouche) {
+        this.base = base;
+        this.surcouche = surcouche;
+        remplacements = new TableArticles();
+        nouveaux = new TableArticles();
+        ArrayList<Long> codesSupprimes = new ArrayList<Long>();
+        for (Map.Entry<Long, Article> e : surcouche.operations()) {
+            long code = e.getKey();
+            int rang = base.rang(code);
+            if (e.getValue() != null) {
+                if (rang >= 0) {
+                    remplacements.put(e.getValue());
+                }
+                else {
+                    nouveaux.put(e.getValue());
+                }
+            }
+            else if (rang >= 0) {
+                codesSupprimes.add(code);
+            }
+        }
+        supprimes = new long[codesSupprimes.size()];
+        rangsSupprimes = new int[supprimes.length];
+        for (int i = 0; i < supprimes.length; i++) {
+            supprimes[i] = codesSupprimes.get(i);
+            rangsSupprimes[i] = base.rang(supprimes[i]);
+        }
+        Arrays.sort(supprimes);
+        Arrays.sort(rangsSupprimes);
+    }
+
+    /**
+     * Ajoute une modification à un catalogue. Si le catalogue est déjà en couches,
+     * la modification est fusionnée avec sa surcouche et la base reste la même.
+     * @param c le catalogue à modifier (non modifié)
+     * @param d la modification
+     * @return le catalogue modifié
+     */
+    static CatalogueEnCouches empiler(Catalogue c, Delta d) {
+        if (c instanceof CatalogueEnCouches) {
+            CatalogueEnCouches cc = (CatalogueEnCouches) c;
+            return new CatalogueEnCouches(cc.base, cc.surcouche.puis(d));
+        }
+        return new CatalogueEnCouches(c, d);
+    }
+
+    /**
+     * @return le catalogue de base (partagé)
+     */
+    Catalogue base() {
+        return base;
+    }
+
+    /**
+     * @return le nombre de codes concernés par la surcouche
+     */
+    int tailleSurcouche() {
+        return surcouche.taille();
+    }
+
+    private boolean estSupprime(long ean13) {
+        return supprimes.length > 0 && Arrays.binarySearch(supprimes, ean13) >= 0;
+    }
+
+    /** Nombre d'articles de la base conservés */
+    private int nbConserves() {
+        return base.taille() - rangsSupprimes.length;
+    }
+
+    public Article get(long ean13) {
+        Article a = remplacements.get(ean13);
+        if (a == null) {
+            a = nouveaux.get(ean13);
+        }
+        if (a == null && !estSupprime(ean13)) {
+            a = base.get(ean13);
+        }
+        return a;
+    }
+
+    public int taille() {
+        return nbConserves() + nouveaux.taille();
+    }
+
+    public Article article(int rang) {
+        int conserves = nbConserves();
+        if (rang >= conserves) {
+            return nouveaux.article(rang - conserves);
+        }
+        // rang dans la base : on saute les articles supprimés qui précèdent
+        // (rangsSupprimes[i] - i = nombre d'articles conservés avant le i-ème supprimé)
+        int bas = 0, haut = rangsSupprimes.length;
+        while (bas < haut) {
+            int milieu = (bas + haut) >>> 1;
+            if (rangsSupprimes[milieu] - milieu <= rang) {
+                bas = milieu + 1;
+            }
+            else {
+                haut = milieu;
+            }
+        }
+        Article a = base.article(rang + bas);
+        Article r = remplacements.get(a.codeEAN13);
+        return (r != null) ? r : a;
+    }
+
+    public int rang(long ean13) {
+        int r = nouveaux.rang(ean13);
+        if (r >= 0) {
+            return nbConserves() + r;
+        }
+        if (estSupprime(ean13)) {
+            return -1;
+        }
+        r = base.rang(ean13);
+        if (r < 0) {
+            return -1;
+        }
+        // nombre d'articles supprimés de rang inférieur
+        int i = Arrays.binarySearch(rangsSupprimes, r);
+        return r - (-i - 1);
+    }
+
+    /**
+     * Plage de la base, dont les articles supprimés sont retirés et les articles
+     * remplacés substitués, complétée par les articles ajoutés de la plage :
+     * O(taille de la plage + taille de la surcouche).
+     */
+    public List<Article> entre(long min, long max) {
+        ArrayList<Article> l = new ArrayList<Article>();
+        for (Article a : base.entre(min, max)) {
+            if (!estSupprime(a.codeEAN13)) {
+                Article r = remplacements.get(a.codeEAN13);
+                l.add((r != null) ? r : a);
+            }
+        }
+        List<Article> ajouts = nouveaux.entre(min, max);
+        if (!ajouts.isEmpty()) {
+            l.addAll(ajouts);
+            Collections.sort(l);
+        }
+        return Collections.unmodifiableList(l);
+    }
+
+    /**
+     * @return la place occupée par la surcouche, la base (partagée) n'étant pas comptée
+     */
+    public long empreinte() {
+        return remplacements.empreinte() + nouveaux.empreinte() + 12L * supprimes.length;
+    }
+}
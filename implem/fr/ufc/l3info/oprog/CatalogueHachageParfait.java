@@ -0,0 +1,170 @@
+package fr.ufc.l3info.oprog;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Catalogue compressé, destiné aux catalogues qui ne sont plus modifiés (par
+ * exemple les catalogues saisonniers gardés côte à côte sur un appareil).
+ *
+ * Les codes, triés, sont compressés par Elias-Fano ; un hachage parfait minimal
+ * (cf. HachageParfait) donne pour chaque code un indice, associé au rang du code
+ * dans l'ordre croissant par un tableau d'entiers de log2(n) bits. Une recherche
+ * calcule cet indice puis vérifie que le code de ce rang est bien le code cherché :
+ * il n'y a aucune comparaison de codes en chaîne ni de sondage, et chaque étape ne
+ * lit qu'une ou deux lignes de cache.
+ *
+ * Les prix sont rangés sur le nombre de bits du plus grand d'entre eux, les débuts
+ * des noms dans le tas UTF-8 sont eux aussi compressés par Elias-Fano. Pour un
+ * catalogue de 100 000 articles, l'ensemble (noms exceptés) occupe environ 8 octets
+ * par article, deux fois moins que CatalogueCompact.
+ *
+ * Comme dans CatalogueCompact, les rangs suivent l'ordre croissant des codes et les
+ * Article sont construits à la demande.
+ */
+final class CatalogueHachageParfait implements Catalogue {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** Plus petit code, soustrait à tous les codes avant compression */
+    private final long premier;
+    /** Codes moins premier, par ordre croissant */
+    private final EliasFano codes;
+    private final HachageParfait index;
+    /** Rang du code associé à chaque indice du hachage */
+    private final EntiersCompacts rangs;
+    /** Prix unitaires en centimes, dans l'ordre des codes */
+    private final EntiersCompacts centimes;
+    /** Début du nom de chaque article dans le tas (n+1 valeurs) */
+    private final EliasFano debutsNoms;
+    /** Tas des noms (UTF-8) */
+    private final byte[] noms;
+
+
+    private CatalogueHachageParfait(Article[] articles, long[] ecarts, long prixMax) {
+        int n = articles.length;
+        premier = (n == 0) ? 0 : articles[0].codeEAN13;
+        codes = new EliasFano(ecarts, n);
+        index = new HachageParfait(ecarts, n);
+        rangs = new EntiersCompacts(n, EntiersCompacts.largeurPour(n));
+        centimes = new EntiersCompacts(n, EntiersCompacts.largeurPour(prixMax));
+        long[] debuts = new long[n + 1];
+        byte[][] encodes = new byte[n][];
+        for (int r = 0; r < n; r++) {
+            rangs.set(index.indice(ecarts[r]), r);
+            centimes.set(r, articles[r].prixCentimes);
+            encodes[r] = articles[r].nom.getBytes(UTF8);
+            debuts[r + 1] = debuts[r] + encodes[r].length;
+        }
+        debutsNoms = new EliasFano(debuts, n + 1);
+        noms = new byte[(int) debuts[n]];
+        for (int r = 0; r < n; r++) {
+            System.arraycopy(encodes[r], 0, noms, (int) debuts[r], encodes[r].length);
+        }
+    }
+
+    /**
+     * Compresse un catalogue.
+     * @param source le catalogue à compresser
+     * @return le catalogue compressé, ou source lui-même si ses codes s'étendent
+     *         sur plus de 2^63 valeurs ou si l'un de ses prix est négatif
+     */
+    static Catalogue compresser(Catalogue source) {
+        if (source instanceof CatalogueHachageParfait) {
+            return source;
+        }
+        int n = source.taille();
+        Article[] articles = new Article[n];
+        long prixMax = 0;
+        for (int i = 0; i < n; i++) {
+            articles[i] = source.article(i);
+            if (articles[i].prixCentimes < 0) {
+                return source;
+            }
+            prixMax = Math.max(prixMax, articles[i].prixCentimes);
+        }
+        Arrays.sort(articles);
+        long[] ecarts = new long[n];
+        for (int i = 0; i < n; i++) {
+            ecarts[i] = articles[i].codeEAN13 - articles[0].codeEAN13;
+            if (ecarts[i] < 0) {
+                return source;
+            }
+        }
+        return new CatalogueHachageParfait(articles, ecarts, prixMax);
+    }
+
+    public int rang(long ean13) {
+        long ecart = ean13 - premier;
+        int n = codes.taille();
+        if (ecart < 0 || ean13 < premier || n == 0) {
+            return -1;
+        }
+        int i = index.indice(ecart);
+        if (i < 0 || i >= n) {
+            return -1;
+        }
+        int r = (int) rangs.get(i);
+        return (codes.get(r) == ecart) ? r : -1;
+    }
+
+    public Article get(long ean13) {
+        int r = rang(ean13);
+        return (r < 0) ? null : article(r);
+    }
+
+    public int taille() {
+        return codes.taille();
+    }
+
+    /** @return le rang du premier code supérieur ou égal à code */
+    private int borneInf(long code) {
+        if (code <= premier) {
+            return 0;
+        }
+        long ecart = code - premier;
+        int bas = 0, haut = codes.taille();
+        while (bas < haut) {
+            int milieu = (bas + haut) >>> 1;
+            if (codes.get(milieu) < ecart) {
+                bas = milieu + 1;
+            }
+            else {
+                haut = milieu;
+            }
+        }
+        return bas;
+    }
+
+    /**
+     * Dichotomie sur les codes compressés ; les articles de la plage sont construits à la demande.
+     */
+    public List<Article> entre(long min, long max) {
+        return new VueTriee(this, borneInf(min), borneInf(max));
+    }
+
+    /**
+     * @param rang rang de l'article dans l'ordre croissant des codes
+     * @return l'article situé à ce rang (construit à chaque appel)
+     */
+    public Article article(int rang) {
+        int debut = (int) debutsNoms.get(rang);
+        String nom = new String(noms, debut, (int) debutsNoms.get(rang + 1) - debut, UTF8);
+        return Article.enCentimes(premier + codes.get(rang), centimes.get(rang), nom);
+    }
+
+    /**
+     * @return la place occupée par l'index des codes (hachage, rangs et codes), en octets
+     */
+    long empreinteIndex() {
+        return index.empreinte() + rangs.empreinte() + codes.empreinte();
+    }
+
+    /**
+     * @return une estimation de la place occupée par les données du catalogue, en octets
+     */
+    public long empreinte() {
+        return empreinteIndex() + centimes.empreinte() + debutsNoms.empreinte() + noms.length;
+    }
+}
@@ -0,0 +1,100 @@
+package fr.ufc.l3info.oprog;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Compteurs cumulés des chargements de bases de données d'articles de la JVM,
+ * alimentés par ArticleDB.init. Ils sont enregistrés auprès du serveur JMX de
+ * la plate-forme au premier chargement, sous le nom {@link #NOM}, et restent
+ * consultables directement par {@link #get()}.
+ */
+public final class ChargementCatalogue implements ChargementCatalogueMXBean {
+
+    /** Nom JMX des compteurs */
+    public static final String NOM = "fr.ufc.l3info.oprog:type=ChargementCatalogue";
+
+    private static final ChargementCatalogue INSTANCE = new ChargementCatalogue();
+
+    private boolean enregistre = false;
+    private long nbChargements, nbEchecs, dureeTotaleNanos, octetsLus, lignesLues, lignesRejetees, doublons;
+    private StatistiquesChargement dernier;
+
+
+    private ChargementCatalogue() { }
+
+    /**
+     * @return les compteurs de la JVM
+     */
+    public static ChargementCatalogue get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Ajoute un chargement aux compteurs.
+     * @param s le relevé du chargement
+     */
+    synchronized void ajouter(StatistiquesChargement s) {
+        if (!enregistre) {
+            enregistre = true;
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(NOM));
+            }
+            catch (JMException e) {
+                // JMX indisponible : les compteurs restent accessibles par get()
+            }
+            catch (SecurityException e) {
+                // idem
+            }
+        }
+        nbChargements++;
+        if (!s.isReussi()) {
+            nbEchecs++;
+        }
+        dureeTotaleNanos += s.getDureeNanos();
+        octetsLus += s.getOctetsLus();
+        lignesLues += s.getLignesLues();
+        lignesRejetees += s.getLignesRejetees();
+        doublons += s.getDoublons();
+        dernier = s;
+    }
+
+    public synchronized long getNbChargements() {
+        return nbChargements;
+    }
+
+    public synchronized long getNbEchecs() {
+        return nbEchecs;
+    }
+
+    public synchronized long getDureeTotaleNanos() {
+        return dureeTotaleNanos;
+    }
+
+    public synchronized long getOctetsLus() {
+        return octetsLus;
+    }
+
+    public synchronized long getLignesLues() {
+        return lignesLues;
+    }
+
+    public synchronized long getLignesRejetees() {
+        return lignesRejetees;
+    }
+
+    public synchronized long getDoublons() {
+        return doublons;
+    }
+
+    public synchronized StatistiquesChargement getDernierChargement() {
+        return dernier;
+    }
+
+    public synchronized void reinitialiser() {
+        nbChargements = nbEchecs = dureeTotaleNanos = octetsLus = lignesLues = lignesRejetees = doublons = 0;
+        dernier = null;
+    }
+}
@@ -0,0 +1,35 @@
+package fr.ufc.l3info.oprog;
+
+/**
+ * Interface JMX des chargements de bases de données d'articles (cf. ChargementCatalogue),
+ * publiée sous le nom {@link ChargementCatalogue#NOM}.
+ */
+public interface ChargementCatalogueMXBean {
+
+    /** @return le nombre de chargements, réussis ou non */
+    long getNbChargements();
+
+    /** @return le nombre de chargements qui ont échoué */
+    long getNbEchecs();
+
+    /** @return la durée cumulée des chargements, en nanosecondes */
+    long getDureeTotaleNanos();
+
+    /** @return le nombre cumulé d'octets lus */
+    long getOctetsLus();
+
+    /** @return le nombre cumulé de lignes analysées */
+    long getLignesLues();
+
+    /** @return le nombre cumulé de lignes rejetées */
+    long getLignesRejetees();
+
+    /** @return le nombre cumulé d'articles remplacés par un doublon */
+    long getDoublons();
+
+    /** @return le relevé du dernier chargement, ou null s'il n'y en a pas eu */
+    StatistiquesChargement getDernierChargement();
+
+    /** Remet les compteurs à zéro */
+    void reinitialiser();
+}
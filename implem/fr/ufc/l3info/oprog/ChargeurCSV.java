@@ -0,0 +1,638 @@
+package fr.ufc.l3info.oprog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.GZIPInputStream;
+
+import fr.ufc.l3info.oprog.StatistiquesChargement.Compteurs;
+import fr.ufc.l3info.oprog.StatistiquesChargement.MotifRejet;
+
+/**
+ * Chargeur parallèle des fichiers CSV de produits utilisé par ArticleDB.init.
+ *
+ * Le fichier est découpé en morceaux d'au moins {@link #TAILLE_MORCEAU} octets,
+ * dont les bornes sont alignées sur des fins de ligne. Chaque morceau est projeté
+ * en mémoire et analysé sur le pool fork/join commun par un découpeur qui lit
+ * directement les octets, sans expression régulière ni chaîne intermédiaire
+ * (seuls les noms des articles sont décodés). Les morceaux sont ensuite fusionnés
+ * dans l'ordre du fichier, si bien qu'un code présent plusieurs fois garde la
+ * valeur de sa dernière occurrence.
+ *
+ * Les règles de validation sont celles de la lecture ligne à ligne d'origine :
+ * 3 ou 4 colonnes (les colonnes vides en fin de ligne sont ignorées), code et
+ * prix numériques, réduction de la forme "N%", prix positif ou nul après réduction
+ * et code EAN13 valide. Seule différence : un prix infini ("Infinity"), qui ne
+ * peut pas être exprimé en centimes, est rejeté (motif PRIX_NEGATIF). Une ligne
+ * incorrecte fait échouer le chargement, mais l'analyse se poursuit jusqu'au bout
+ * afin de compter les lignes rejetées par motif (cf. StatistiquesChargement).
+ *
+ * Les prix sont arrondis au centime et les réductions sont calculées en centimes
+ * (arrondi au centime inférieur), sans erreur d'arrondi liée aux double.
+ *
+ * Les fichiers compressés (extension {@link #EXTENSION_GZIP}) sont décompressés
+ * à la volée dans des tampons directs d'au moins {@link #TAILLE_MORCEAU} octets,
+ * dont chacun est analysé dès qu'il est plein pendant que la décompression se
+ * poursuit, sans passer par un fichier décompressé sur le disque.
+ */
+final class ChargeurCSV {
+
+    /** Taille minimale d'un morceau analysé par une tâche */
+    static final int TAILLE_MORCEAU = 1 << 20;
+
+    /** Extension des fichiers compressés par gzip */
+    static final String EXTENSION_GZIP = ".gz";
+
+    /** Taille du tampon de lecture du fichier compressé */
+    private static final int TAILLE_TAMPON_GZIP = 1 << 16;
+
+    /** Puissances de 10 représentables exactement par un double */
+    private static final double[] PUISSANCES_10 = new double[23];
+    static {
+        PUISSANCES_10[0] = 1;
+        for (int i = 1; i < PUISSANCES_10.length; i++) {
+            PUISSANCES_10[i] = PUISSANCES_10[i - 1] * 10;
+        }
+    }
+
+    /**
+     * Taille visée au plus pour un morceau projeté en mémoire : la moitié de la taille
+     * maximale d'une projection, le reste laissant la place d'aller jusqu'à la fin de ligne
+     */
+    static final long TAILLE_MAX_MORCEAU = Integer.MAX_VALUE / 2;
+
+    /** Mantisse maximale pour laquelle la conversion rapide d'un prix est exacte (2^53) */
+    private static final long MANTISSE_MAX = 1L << 53;
+
+    /** Jeu de caractères des noms (celui qu'utilisait FileReader) */
+    private static final Charset CHARSET = Charset.defaultCharset();
+    private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+
+
+    private ChargeurCSV() { }
+
+    /**
+     * Charge un fichier CSV de produits.
+     * @param fichier le fichier à lire
+     * @return la table des articles du fichier
+     * @throws IOException si le fichier ne peut être lu
+     * @throws FileFormatException si une ligne du fichier est incorrecte
+     */
+    static TableArticles charger(String fichier) throws IOException, FileFormatException {
+        return charger(fichier, new Compteurs());
+    }
+
+    /**
+     * Charge un fichier CSV de produits en relevant les volumes lus et les lignes rejetées.
+     * @param fichier le fichier à lire
+     * @param compteurs les compteurs à compléter, y compris en cas d'échec
+     * @return la table des articles du fichier
+     * @throws IOException si le fichier ne peut être lu
+     * @throws FileFormatException si une ligne du fichier est incorrecte
+     */
+    static TableArticles charger(String fichier, Compteurs compteurs) throws IOException, FileFormatException {
+        if (fichier.endsWith(EXTENSION_GZIP)) {
+            return chargerGzip(fichier, compteurs);
+        }
+        RandomAccessFile raf = new RandomAccessFile(fichier, "r");
+        try {
+            FileChannel ch = raf.getChannel();
+            long taille = ch.size();
+            compteurs.octetsLus = taille;
+            compteurs.octetsAnalyses = taille;
+            Morceau[] morceaux;
+            if (taille < 2L * TAILLE_MORCEAU) {
+                ByteBuffer buf = ByteBuffer.allocate((int) taille);
+                while (buf.hasRemaining() && ch.read(buf) >= 0) { }
+                morceaux = new Morceau[] { new Morceau(buf, 0, buf.position()) };
+                morceaux[0].analyser();
+            }
+            else {
+                morceaux = decouper(ch, taille);
+                ForkJoinPool.commonPool().invoke(new Analyse(morceaux, 0, morceaux.length));
+            }
+            return fusionner(morceaux, fichier, compteurs);
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Charge un fichier CSV de produits compressé par gzip : chaque tampon décompressé,
+     * coupé après sa dernière fin de ligne, est analysé sur le pool commun pendant la
+     * décompression du suivant. Le nombre de tampons en attente d'analyse est borné.
+     */
+    private static TableArticles chargerGzip(String fichier, Compteurs compteurs) throws IOException, FileFormatException {
+        compteurs.octetsLus = new File(fichier).length();
+        InputStream in = new GZIPInputStream(new FileInputStream(fichier), TAILLE_TAMPON_GZIP);
+        try {
+            int maxEnCours = 2 * ForkJoinPool.getCommonPoolParallelism();
+            ArrayList<Morceau> morceaux = new ArrayList<Morceau>();
+            ArrayList<ForkJoinTask<Void>> taches = new ArrayList<ForkJoinTask<Void>>();
+            byte[] lu = new byte[TAILLE_TAMPON_GZIP];
+            ByteBuffer courant = ByteBuffer.allocateDirect(TAILLE_MORCEAU);
+            int n;
+            while ((n = in.read(lu)) > 0) {
+                compteurs.octetsAnalyses += n;
+                int pos = 0;
+                while (pos < n) {
+                    if (!courant.hasRemaining()) {
+                        int fin = derniereFinDeLigne(courant);
+                        if (fin == 0) {
+                            // ligne plus longue que le tampon
+                            courant = agrandir(courant);
+                            continue;
+                        }
+                        Morceau m = new Morceau(courant, 0, fin);
+                        morceaux.add(m);
+                        taches.add(ForkJoinPool.commonPool().submit(new Analyse(new Morceau[] { m }, 0, 1)));
+                        if (taches.size() >= maxEnCours) {
+                            taches.get(taches.size() - maxEnCours).join();
+                        }
+                        courant = reste(courant, fin);
+                    }
+                    int k = Math.min(n - pos, courant.remaining());
+                    courant.put(lu, pos, k);
+                    pos += k;
+                }
+            }
+            Morceau dernier = new Morceau(courant, 0, courant.position());
+            morceaux.add(dernier);
+            dernier.analyser();
+            for (ForkJoinTask<Void> t : taches) {
+                t.join();
+            }
+            return fusionner(morceaux.toArray(new Morceau[morceaux.size()]), fichier, compteurs);
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /** @return la position qui suit le dernier '\n' du tampon (0 s'il n'y en a pas) */
+    private static int derniereFinDeLigne(ByteBuffer buf) {
+        for (int i = buf.position() - 1; i >= 0; i--) {
+            if (buf.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    /** @return un tampon deux fois plus grand, avec le même contenu */
+    private static ByteBuffer agrandir(ByteBuffer buf) {
+        if (buf.capacity() > Integer.MAX_VALUE / 2) {
+            throw new IllegalStateException("Ligne trop longue");
+        }
+        ByteBuffer nouveau = ByteBuffer.allocateDirect(2 * buf.capacity());
+        buf.flip();
+        nouveau.put(buf);
+        return nouveau;
+    }
+
+    /**
+     * @return un nouveau tampon contenant les octets de buf qui suivent la position fin
+     *         (plus grand que TAILLE_MORCEAU si buf a été agrandi pour une ligne longue)
+     */
+    private static ByteBuffer reste(ByteBuffer buf, int fin) {
+        ByteBuffer nouveau = ByteBuffer.allocateDirect(Math.max(TAILLE_MORCEAU, buf.position() - fin));
+        ByteBuffer suite = buf.duplicate();
+        suite.limit(buf.position());
+        suite.position(fin);
+        nouveau.put(suite);
+        return nouveau;
+    }
+
+    /**
+     * Nombre de morceaux d'un fichier : 4 par processeur, d'au moins TAILLE_MORCEAU
+     * octets, mais assez pour qu'aucun ne dépasse TAILLE_MAX_MORCEAU octets (hors fin
+     * de la dernière ligne), quel que soit le nombre de processeurs.
+     * @param taille la taille du fichier
+     * @param processeurs le nombre de processeurs
+     * @return le nombre de morceaux (au moins 1)
+     */
+    static int nbMorceaux(long taille, int processeurs) {
+        long nb = Math.min(taille / TAILLE_MORCEAU, 4L * processeurs);
+        nb = Math.max(nb, (taille + TAILLE_MAX_MORCEAU - 1) / TAILLE_MAX_MORCEAU);
+        return (int) Math.max(1, nb);
+    }
+
+    /**
+     * Découpe le fichier en morceaux alignés sur les fins de ligne ('\n').
+     * @throws IOException si une ligne ne tient pas dans un morceau (plus de 2 Go)
+     */
+    private static Morceau[] decouper(FileChannel ch, long taille) throws IOException {
+        int nb = nbMorceaux(taille, Runtime.getRuntime().availableProcessors());
+        long pas = taille / nb;
+        ArrayList<Morceau> liste = new ArrayList<Morceau>();
+        ByteBuffer lu = ByteBuffer.allocate(4096);
+        long debut = 0;
+        for (int i = 1; i <= nb && debut < taille; i++) {
+            long fin = (i == nb) ? taille : finDeLigne(ch, Math.max(debut, i * pas), taille, lu);
+            if (fin - debut > Integer.MAX_VALUE) {
+                throw new IOException("Ligne trop longue");
+            }
+            liste.add(new Morceau(ch.map(FileChannel.MapMode.READ_ONLY, debut, fin - debut), 0, (int) (fin - debut)));
+            debut = fin;
+        }
+        return liste.toArray(new Morceau[liste.size()]);
+    }
+
+    /**
+     * @return la position qui suit le premier '\n' trouvé à partir de pos (ou la fin du fichier)
+     */
+    private static long finDeLigne(FileChannel ch, long pos, long taille, ByteBuffer lu) throws IOException {
+        while (pos < taille) {
+            lu.clear();
+            int n = ch.read(lu, pos);
+            for (int i = 0; i < n; i++) {
+                if (lu.get(i) == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += n;
+        }
+        return taille;
+    }
+
+    /**
+     * Lit un fichier de modifications, au format décrit dans Delta.
+     * @param fichier le fichier à lire
+     * @return les modifications lues
+     * @throws IOException si le fichier ne peut être lu
+     * @throws FileFormatException si une ligne est incorrecte
+     */
+    static Delta chargerDelta(String fichier) throws IOException, FileFormatException {
+        if (fichier == null)
+            throw new IOException();
+        if (fichier.endsWith(EXTENSION_GZIP)) {
+            InputStream in = new GZIPInputStream(new FileInputStream(fichier), TAILLE_TAMPON_GZIP);
+            try {
+                return chargerDelta(ByteBuffer.wrap(lire(in)), fichier);
+            }
+            finally {
+                in.close();
+            }
+        }
+        RandomAccessFile raf = new RandomAccessFile(fichier, "r");
+        try {
+            FileChannel ch = raf.getChannel();
+            ByteBuffer buf = ByteBuffer.allocate((int) ch.size());
+            while (buf.hasRemaining() && ch.read(buf) >= 0) { }
+            buf.flip();
+            return chargerDelta(buf, fichier);
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Lit un flux jusqu'à sa fin.
+     * @param flux le flux à lire (il n'est pas fermé)
+     * @return le contenu du flux
+     * @throws IOException si le flux ne peut être lu
+     */
+    static byte[] lire(InputStream flux) throws IOException {
+        ByteArrayOutputStream contenu = new ByteArrayOutputStream();
+        byte[] tampon = new byte[8192];
+        int n;
+        while ((n = flux.read(tampon)) > 0) {
+            contenu.write(tampon, 0, n);
+        }
+        return contenu.toByteArray();
+    }
+
+    /**
+     * Analyse un fichier (ou flux) de modifications, au format décrit dans Delta.
+     * @param buf le contenu à analyser, entre 0 et buf.limit()
+     * @param nom le nom du fichier ou du flux, pour les messages d'erreur
+     * @return les modifications lues
+     * @throws FileFormatException si une ligne est incorrecte
+     */
+    static Delta chargerDelta(ByteBuffer buf, String nom) throws FileFormatException {
+        Morceau m = new Morceau(buf, 0, buf.limit());
+        m.delta = new Delta();
+        m.analyser();
+        if (m.erreur) {
+            throw new FileFormatException(nom);
+        }
+        return m.delta;
+    }
+
+    private static TableArticles fusionner(Morceau[] morceaux, String fichier, Compteurs compteurs) throws FileFormatException {
+        int total = 0;
+        boolean erreur = false;
+        for (Morceau m : morceaux) {
+            erreur |= m.erreur;
+            total += m.articles.size();
+            compteurs.lignes += m.lignes;
+            compteurs.articles += m.articles.size();
+            for (int i = 0; i < m.rejets.length; i++) {
+                compteurs.rejets[i] += m.rejets[i];
+            }
+        }
+        if (erreur) {
+            throw new FileFormatException(fichier);
+        }
+        TableArticles table = new TableArticles(total);
+        for (Morceau m : morceaux) {
+            for (Article a : m.articles) {
+                table.put(a);
+            }
+        }
+        return table;
+    }
+
+
+    /**
+     * Analyse parallèle d'une série de morceaux, par dichotomie.
+     */
+    private static class Analyse extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Morceau[] morceaux;
+        private final int debut, fin;
+
+        Analyse(Morceau[] morceaux, int debut, int fin) {
+            this.morceaux = morceaux;
+            this.debut = debut;
+            this.fin = fin;
+        }
+
+        protected void compute() {
+            if (fin - debut == 1) {
+                morceaux[debut].analyser();
+                return;
+            }
+            int milieu = (debut + fin) >>> 1;
+            invokeAll(new Analyse(morceaux, debut, milieu), new Analyse(morceaux, milieu, fin));
+        }
+    }
+
+
+    /**
+     * Un morceau du fichier, composé de lignes entières, et le résultat de son analyse.
+     */
+    private static class Morceau {
+        /** Contenu du morceau, libéré après l'analyse */
+        private ByteBuffer buf;
+        private final int debut, fin;
+
+        /** Articles du morceau, dans l'ordre des lignes */
+        final ArrayList<Article> articles = new ArrayList<Article>();
+        /** Vrai si une ligne du morceau est incorrecte */
+        boolean erreur = false;
+        /** Nombre de lignes analysées */
+        long lignes = 0;
+        /** Lignes rejetées, par motif */
+        final long[] rejets = new long[MotifRejet.values().length];
+        /** Motif de rejet de la ligne courante (null si la ligne est correcte) */
+        private MotifRejet motif;
+        /** Modifications lues, lorsque le morceau est un fichier de modifications (sinon null) */
+        Delta delta = null;
+
+        /** Bornes des colonnes de la ligne courante (au plus 4 colonnes utiles) */
+        private final int[] debuts = new int[5];
+        private final int[] fins = new int[5];
+
+        Morceau(ByteBuffer buf, int debut, int fin) {
+            this.buf = buf;
+            this.debut = debut;
+            this.fin = fin;
+        }
+
+        void analyser() {
+            int pos = debut;
+            while (pos < fin) {
+                int eol = pos;
+                while (eol < fin && buf.get(eol) != '\n' && buf.get(eol) != '\r') {
+                    eol++;
+                }
+                motif = null;
+                boolean correcte = (delta == null) ? ajouter(analyserLigne(pos, eol)) : analyserModification(pos, eol);
+                lignes++;
+                if (!correcte) {
+                    erreur = true;
+                    rejets[(motif == null) ? MotifRejet.MODIFICATION.ordinal() : motif.ordinal()]++;
+                }
+                pos = eol + 1;
+                if (eol < fin && buf.get(eol) == '\r' && pos < fin && buf.get(pos) == '\n') {
+                    pos++;
+                }
+            }
+            buf = null;
+        }
+
+        private boolean ajouter(Article a) {
+            if (a == null) {
+                return false;
+            }
+            articles.add(a);
+            return true;
+        }
+
+        /**
+         * Analyse une ligne "+,article" ou "-,code" d'un fichier de modifications.
+         * @return false si la ligne est incorrecte
+         */
+        private boolean analyserModification(int deb, int fin) {
+            if (fin - deb < 3 || buf.get(deb + 1) != ',') {
+                return false;
+            }
+            if (buf.get(deb) == '+') {
+                Article a = analyserLigne(deb + 2, fin);
+                if (a != null) {
+                    delta.ajouter(a);
+                }
+                return a != null;
+            }
+            if (buf.get(deb) == '-') {
+                try {
+                    delta.supprimer(lireLong(deb + 2, fin));
+                    return true;
+                }
+                catch (NumberFormatException e) {
+                    motif = MotifRejet.NOMBRE;
+                    return false;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Analyse la ligne [deb, fin[ d'un fichier de produits.
+         * @return l'article correspondant, ou null si la ligne est incorrecte
+         */
+        private Article analyserLigne(int deb, int fin) {
+            // découpage selon ',' à la manière de String.split (colonnes vides finales ignorées)
+            int nb = 0;
+            int colonne = 0;
+            int d = deb;
+            for (int i = deb; i <= fin; i++) {
+                if (i == fin || buf.get(i) == ',') {
+                    if (i > d) {
+                        if (colonne >= debuts.length) {
+                            return rejeter(MotifRejet.COLONNES);
+                        }
+                        nb = colonne + 1;
+                    }
+                    if (colonne < debuts.length) {
+                        debuts[colonne] = d;
+                        fins[colonne] = i;
+                    }
+                    colonne++;
+                    d = i + 1;
+                }
+            }
+            if (nb != 3 && nb != 4) {
+                return rejeter(MotifRejet.COLONNES);
+            }
+
+            long ean13;
+            double pu;
+            try {
+                ean13 = lireLong(debuts[0], fins[0]);
+                pu = lirePrix(debuts[1], fins[1]);
+            }
+            catch (NumberFormatException e) {
+                return rejeter(MotifRejet.NOMBRE);
+            }
+            String nom = lireNom(debuts[2], fins[2]);
+            long centimes = Math.round(pu * 100);
+            if (nb == 4) {
+                int s = debuts[3], e = fins[3];
+                while (s < e && (buf.get(s) & 0xff) <= ' ') s++;
+                while (e > s && (buf.get(e - 1) & 0xff) <= ' ') e--;
+                if (s == e || buf.get(e - 1) != '%') {
+                    return rejeter(MotifRejet.REDUCTION);
+                }
+                try {
+                    int reduc = (int) lireEntier(s, e - 1, Integer.MIN_VALUE, Integer.MAX_VALUE);
+                    centimes = Math.floorDiv(Math.multiplyExact(centimes, 100L - reduc), 100);
+                }
+                catch (NumberFormatException ex) {
+                    return rejeter(MotifRejet.REDUCTION);
+                }
+                catch (ArithmeticException ex) {
+                    return rejeter(MotifRejet.REDUCTION);
+                }
+            }
+            if (!(pu >= 0) || centimes < 0 || Double.isInfinite(pu)) {
+                return rejeter(MotifRejet.PRIX_NEGATIF);
+            }
+            if (!GTIN.estValideEAN13(ean13)) {
+                return rejeter(MotifRejet.CLE_EAN13);
+            }
+            return Article.enCentimes(ean13, centimes, nom);
+        }
+
+        /** Note le motif de rejet de la ligne courante */
+        private Article rejeter(MotifRejet m) {
+            motif = m;
+            return null;
+        }
+
+        /** Équivalent de Long.parseLong sur les octets [s, e[ */
+        private long lireLong(int s, int e) {
+            return lireEntier(s, e, Long.MIN_VALUE, Long.MAX_VALUE);
+        }
+
+        /** Entier signé compris entre min et max, sans espace (comme Long.parseLong / Integer.parseInt) */
+        private long lireEntier(int s, int e, long min, long max) {
+            if (s == e) {
+                throw new NumberFormatException();
+            }
+            boolean negatif = false;
+            byte c = buf.get(s);
+            if (c == '-' || c == '+') {
+                negatif = (c == '-');
+                if (++s == e) {
+                    throw new NumberFormatException();
+                }
+            }
+            long limite = negatif ? min : -max;
+            long limiteMult = limite / 10;
+            long v = 0;     // accumulé en négatif, comme Long.parseLong
+            for (int i = s; i < e; i++) {
+                int chiffre = buf.get(i) - '0';
+                if (chiffre < 0 || chiffre > 9 || v < limiteMult) {
+                    throw new NumberFormatException();
+                }
+                v *= 10;
+                if (v < limite + chiffre) {
+                    throw new NumberFormatException();
+                }
+                v -= chiffre;
+            }
+            return negatif ? v : -v;
+        }
+
+        /**
+         * Équivalent de Double.parseDouble sur les octets [s, e[. Les écritures décimales
+         * simples sont converties directement (le résultat est exact car la mantisse et
+         * la puissance de 10 sont représentables et la division est correctement arrondie),
+         * les autres sont confiées à Double.parseDouble.
+         */
+        private double lirePrix(int s, int e) {
+            int s0 = s, e0 = e;
+            while (s < e && (buf.get(s) & 0xff) <= ' ') s++;
+            while (e > s && (buf.get(e - 1) & 0xff) <= ' ') e--;
+            boolean negatif = false;
+            int i = s;
+            if (i < e && (buf.get(i) == '-' || buf.get(i) == '+')) {
+                negatif = buf.get(i) == '-';
+                i++;
+            }
+            long mantisse = 0;
+            int chiffres = 0, decimales = -1;
+            for (; i < e; i++) {
+                byte c = buf.get(i);
+                if (c == '.' && decimales < 0) {
+                    decimales = 0;
+                }
+                else if (c >= '0' && c <= '9' && mantisse < MANTISSE_MAX / 10) {
+                    mantisse = mantisse * 10 + (c - '0');
+                    chiffres++;
+                    if (decimales >= 0) {
+                        decimales++;
+                    }
+                }
+                else {
+                    break;
+                }
+            }
+            if (i < e || chiffres == 0 || decimales >= PUISSANCES_10.length) {
+                byte[] texte = new byte[e0 - s0];
+                for (int k = 0; k < texte.length; k++) {
+                    texte[k] = buf.get(s0 + k);
+                }
+                return Double.parseDouble(new String(texte, LATIN1));
+            }
+            double v = (decimales > 0) ? mantisse / PUISSANCES_10[decimales] : mantisse;
+            return negatif ? -v : v;
+        }
+
+        /** Nom de l'article (octets [s, e[ décodés, sans espaces aux extrémités) */
+        private String lireNom(int s, int e) {
+            while (s < e && (buf.get(s) & 0xff) <= ' ') s++;
+            while (e > s && (buf.get(e - 1) & 0xff) <= ' ') e--;
+            byte[] texte = new byte[e - s];
+            for (int k = 0; k < texte.length; k++) {
+                texte[k] = buf.get(s + k);
+            }
+            return new String(texte, CHARSET);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package fr.ufc.l3info.oprog;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Outil de compilation d'un fichier CSV de produits en catalogue binaire
+ * (cf. CatalogueBinaire), utilisable ensuite directement par ArticleDB.init.
+ *
+ * Usage : java fr.ufc.l3info.oprog.CompilateurCatalogue produits.csv produits.artdb
+ */
+public class CompilateurCatalogue {
+
+    public static void main(String[] args) {
+        if (args.length != 2 || !args[1].endsWith(CatalogueBinaire.EXTENSION)) {
+            System.err.println("Usage: [run command] produits.csv produits" + CatalogueBinaire.EXTENSION);
+            System.exit(-1);
+        }
+        try {
+            int n = compiler(args[0], args[1]);
+            System.out.println(n + " articles compilés dans " + args[1]);
+        }
+        catch (IOException e) {
+            System.err.println("Erreur de lecture/écriture : " + e.getMessage());
+            System.exit(-1);
+        }
+        catch (FileFormatException e) {
+            System.err.println(e.getMessage());
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Compile un fichier CSV de produits.
+     * @param csv le fichier source, validé comme par ArticleDB.init
+     * @param destination le catalogue binaire à produire
+     * @return le nombre d'articles compilés
+     * @throws IOException si l'un des fichiers ne peut être lu ou écrit
+     * @throws FileFormatException si le fichier source est incorrect
+     */
+    public static int compiler(String csv, String destination) throws IOException, FileFormatException {
+        ArticleDB db = new ArticleDB();
+        db.init(csv);
+        CatalogueBinaire.ecrire(db.catalogue(), new File(destination));
+        return db.getTailleDB();
+    }
+}
@@ -0,0 +1,106 @@
+package fr.ufc.l3info.oprog;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Modification incrémentale d'un catalogue : une suite d'ajouts ou de
+ * remplacements d'articles et de suppressions de codes, appliquée par
+ * ArticleDB.appliquer.
+ *
+ * Format texte d'un fichier (ou flux) de modifications, une opération par ligne :
+ * <pre>
+ *   +,3474377910731,1.10,Marker           ajout ou remplacement (mêmes colonnes et
+ *   +,3017620402678,1.86,Nutella,10%      mêmes règles que le fichier de produits)
+ *   -,3760244111005                       suppression
+ * </pre>
+ * Lorsqu'un même code apparaît plusieurs fois, la dernière opération l'emporte.
+ */
+public class Delta {
+
+    /** État final de chaque code modifié (null = supprimé), dans l'ordre d'apparition */
+    private final LinkedHashMap<Long, Article> operations = new LinkedHashMap<Long, Article>();
+
+
+    /**
+     * Ajoute un article au catalogue, ou remplace celui qui a le même code.
+     * @param a l'article
+     * @return la modification elle-même
+     */
+    public Delta ajouter(Article a) {
+        operations.remove(a.getCodeEAN13());
+        operations.put(a.getCodeEAN13(), a);
+        return this;
+    }
+
+    /**
+     * Retire un article du catalogue (sans effet s'il n'y figure pas).
+     * @param ean13 le code de l'article
+     * @return la modification elle-même
+     */
+    public Delta supprimer(long ean13) {
+        operations.remove(ean13);
+        operations.put(ean13, null);
+        return this;
+    }
+
+    /**
+     * @return le nombre de codes concernés par la modification
+     */
+    public int taille() {
+        return operations.size();
+    }
+
+    /**
+     * Compose deux modifications.
+     * @param suivante la modification à appliquer après celle-ci
+     * @return une nouvelle modification équivalente à celle-ci suivie de suivante
+     */
+    public Delta puis(Delta suivante) {
+        Delta d = new Delta();
+        d.operations.putAll(operations);
+        for (Map.Entry<Long, Article> e : suivante.operations.entrySet()) {
+            d.operations.remove(e.getKey());
+            d.operations.put(e.getKey(), e.getValue());
+        }
+        return d;
+    }
+
+    /**
+     * Empreinte (SHA-256) du contenu de la modification : deux modifications
+     * comportant les mêmes opérations dans le même ordre ont la même empreinte.
+     * @return l'empreinte, en hexadécimal
+     */
+    public String empreinte() {
+        MessageDigest md = Empreinte.sha256();
+        Charset utf8 = Charset.forName("UTF-8");
+        ByteBuffer entete = ByteBuffer.allocate(21);
+        for (Map.Entry<Long, Article> e : operations.entrySet()) {
+            Article a = e.getValue();
+            entete.clear();
+            entete.put(a == null ? (byte) '-' : (byte) '+').putLong(e.getKey());
+            byte[] nom = null;
+            if (a != null) {
+                nom = a.nom.getBytes(utf8);
+                entete.putLong(a.prixCentimes).putInt(nom.length);
+            }
+            md.update(entete.array(), 0, entete.position());
+            if (nom != null) {
+                md.update(nom);
+            }
+        }
+        return Empreinte.terminer(md);
+    }
+
+    /**
+     * @return l'état final de chaque code modifié (null = supprimé), dans l'ordre d'apparition
+     */
+    Set<Map.Entry<Long, Article>> operations() {
+        return Collections.unmodifiableMap(operations).entrySet();
+    }
+}
@@ -0,0 +1,93 @@
+package fr.ufc.l3info.oprog;
+
+/**
+ * Suite croissante d'entiers positifs compressée selon le codage d'Elias-Fano.
+ *
+ * Chaque valeur est coupée en deux : ses bitsBas bits de poids faible sont rangés
+ * tels quels (cf. EntiersCompacts), ses bits de poids fort sont codés en unaire
+ * dans un vecteur de bits, où la i-ème valeur est représentée par le bit
+ * (poids fort + i). Avec bitsBas = log2(max / n), une suite de n valeurs inférieures
+ * à max occupe environ 2 + log2(max / n) bits par valeur.
+ *
+ * L'accès à la i-ème valeur cherche le i-ème bit à 1 du vecteur à partir d'un
+ * échantillon pris tous les {@link #PAS_ECHANTILLONS} bits à 1, puis lit ses bits
+ * de poids faible.
+ */
+final class EliasFano {
+
+    /** Nombre de valeurs entre deux échantillons des bits de poids fort */
+    static final int PAS_ECHANTILLONS = 128;
+
+    private final int taille;
+    private final int bitsBas;
+    private final EntiersCompacts bas;
+    private final long[] hauts;
+    /** Position dans hauts du bit de chaque valeur de rang multiple de PAS_ECHANTILLONS */
+    private final int[] echantillons;
+
+
+    /**
+     * @param valeurs les valeurs, positives et par ordre croissant (au sens large)
+     * @param n le nombre de valeurs à prendre au début du tableau
+     * @throws IllegalArgumentException si les valeurs ne sont pas positives et croissantes
+     */
+    EliasFano(long[] valeurs, int n) {
+        taille = n;
+        long max = (n == 0) ? 0 : valeurs[n - 1];
+        bitsBas = (n == 0 || max / n == 0) ? 0 : 63 - Long.numberOfLeadingZeros(max / n);
+        bas = new EntiersCompacts(n, bitsBas);
+        long nbBitsHauts = (max >>> bitsBas) + n + 1;
+        if (nbBitsHauts > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Trop de valeurs : " + n);
+        }
+        hauts = new long[(int) ((nbBitsHauts + 63) >>> 6)];
+        echantillons = new int[(n + PAS_ECHANTILLONS - 1) / PAS_ECHANTILLONS];
+        long masque = (1L << bitsBas) - 1;
+        for (int i = 0; i < n; i++) {
+            long v = valeurs[i];
+            if (v < 0 || (i > 0 && v < valeurs[i - 1])) {
+                throw new IllegalArgumentException("Suite non croissante au rang " + i);
+            }
+            bas.set(i, v & masque);
+            int p = (int) ((v >>> bitsBas) + i);
+            hauts[p >>> 6] |= 1L << p;
+            if (i % PAS_ECHANTILLONS == 0) {
+                echantillons[i / PAS_ECHANTILLONS] = p;
+            }
+        }
+    }
+
+    int taille() {
+        return taille;
+    }
+
+    /**
+     * @param i un entier entre 0 et taille()-1
+     * @return la i-ème valeur de la suite
+     */
+    long get(int i) {
+        int p = echantillons[i / PAS_ECHANTILLONS];
+        int reste = i % PAS_ECHANTILLONS;
+        // cherche le (reste+1)-ème bit à 1 à partir de la position p
+        int w = p >>> 6;
+        long mot = hauts[w] & (-1L << p);
+        int nb = Long.bitCount(mot);
+        while (nb <= reste) {
+            reste -= nb;
+            mot = hauts[++w];
+            nb = Long.bitCount(mot);
+        }
+        for (int k = 0; k < reste; k++) {
+            mot &= mot - 1;
+        }
+        long position = ((long) w << 6) + Long.numberOfTrailingZeros(mot);
+        return ((position - i) << bitsBas) | bas.get(i);
+    }
+
+    /**
+     * @return la place occupée par la suite, en octets
+     */
+    long empreinte() {
+        return bas.empreinte() + 8L * hauts.length + 4L * echantillons.length;
+    }
+}
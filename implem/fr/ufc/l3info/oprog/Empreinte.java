@@ -0,0 +1,61 @@
+package fr.ufc.l3info.oprog;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Empreintes SHA-256 servant à reconnaître des contenus identiques
+ * (fichiers de produits, modifications).
+ */
+final class Empreinte {
+
+    private Empreinte() { }
+
+    /**
+     * @return un nouveau calcul d'empreinte SHA-256
+     */
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            // algorithme fourni par toute JVM
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param md le calcul d'empreinte à terminer
+     * @return l'empreinte, en hexadécimal
+     */
+    static String terminer(MessageDigest md) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : md.digest()) {
+            sb.append(Character.forDigit((b >>> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param fichier le fichier à lire
+     * @return l'empreinte du contenu du fichier, en hexadécimal
+     * @throws IOException si le fichier ne peut être lu
+     */
+    static String deFichier(String fichier) throws IOException {
+        MessageDigest md = sha256();
+        FileInputStream in = new FileInputStream(fichier);
+        try {
+            byte[] tampon = new byte[1 << 16];
+            int n;
+            while ((n = in.read(tampon)) > 0) {
+                md.update(tampon, 0, n);
+            }
+        }
+        finally {
+            in.close();
+        }
+        return terminer(md);
+    }
+}
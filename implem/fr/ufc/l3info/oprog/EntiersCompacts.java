@@ -0,0 +1,75 @@
+package fr.ufc.l3info.oprog;
+
+/**
+ * Tableau d'entiers positifs de largeur fixe (de 0 à 63 bits), rangés bout à
+ * bout dans des mots de 64 bits.
+ */
+final class EntiersCompacts {
+
+    private final long[] mots;
+    private final int largeur;
+    private final long masque;
+
+
+    /**
+     * @param n le nombre d'entiers
+     * @param largeur le nombre de bits de chaque entier (0 à 63)
+     */
+    EntiersCompacts(int n, int largeur) {
+        if (largeur < 0 || largeur > 63) {
+            throw new IllegalArgumentException("Largeur incorrecte : " + largeur);
+        }
+        this.largeur = largeur;
+        this.masque = (1L << largeur) - 1;
+        this.mots = new long[(int) (((long) n * largeur + 63) >>> 6)];
+    }
+
+    /**
+     * @param max un entier positif
+     * @return le nombre de bits nécessaires pour représenter les entiers de 0 à max
+     */
+    static int largeurPour(long max) {
+        return 64 - Long.numberOfLeadingZeros(max);
+    }
+
+    long get(int i) {
+        if (largeur == 0) {
+            return 0;
+        }
+        long bit = (long) i * largeur;
+        int w = (int) (bit >>> 6);
+        int d = (int) bit & 63;
+        long v = mots[w] >>> d;
+        if (d + largeur > 64) {
+            v |= mots[w + 1] << (64 - d);
+        }
+        return v & masque;
+    }
+
+    /**
+     * @param i l'indice
+     * @param v la valeur, entre 0 et 2^largeur - 1
+     */
+    void set(int i, long v) {
+        if ((v & ~masque) != 0) {
+            throw new IllegalArgumentException("Valeur trop grande : " + v);
+        }
+        if (largeur == 0) {
+            return;
+        }
+        long bit = (long) i * largeur;
+        int w = (int) (bit >>> 6);
+        int d = (int) bit & 63;
+        mots[w] = (mots[w] & ~(masque << d)) | (v << d);
+        if (d + largeur > 64) {
+            mots[w + 1] = (mots[w + 1] & ~(masque >>> (64 - d))) | (v >>> (64 - d));
+        }
+    }
+
+    /**
+     * @return la place occupée par les entiers, en octets
+     */
+    long empreinte() {
+        return 8L * mots.length;
+    }
+}
@@ -0,0 +1,104 @@
+package fr.ufc.l3info.oprog;
+
+/**
+ * Filtre de Bloom par blocs sur les codes d'un catalogue, permettant d'écarter
+ * la plupart des codes inconnus sans consulter le catalogue lui-même.
+ *
+ * Chaque code est associé à un bloc de 512 bits (une ligne de cache) dans lequel
+ * {@link #NB_HACHAGES} bits sont positionnés. Un test ne lit donc qu'un seul bloc.
+ * Le filtre peut répondre "peut-être présent" pour un code absent (environ 1 % des
+ * cas avec {@link #BITS_PAR_CODE} bits par code), jamais "absent" pour un code présent.
+ *
+ * Des codes peuvent être ajoutés à un filtre déjà publié : un ajout ne fait que
+ * positionner des bits, si bien qu'un lecteur concurrent obtient au pire un faux
+ * positif de plus. Au-delà du nombre de codes prévu, le taux de faux positifs augmente.
+ */
+final class FiltreBloom {
+
+    /** Nombre de bits du filtre par code inséré */
+    static final int BITS_PAR_CODE = 10;
+    /** Nombre de bits positionnés par code */
+    static final int NB_HACHAGES = 6;
+
+    /** Nombre de mots de 64 bits par bloc */
+    private static final int MOTS_PAR_BLOC = 8;
+
+    private final long[] bits;
+    private final int nbBlocs;
+
+
+    /**
+     * @param nbCodes le nombre de codes qui seront insérés
+     */
+    FiltreBloom(int nbCodes) {
+        long nb = ((long) nbCodes * BITS_PAR_CODE + 511) / 512;
+        nbBlocs = (int) Math.max(1, nb);
+        bits = new long[nbBlocs * MOTS_PAR_BLOC];
+    }
+
+    private FiltreBloom(FiltreBloom f) {
+        nbBlocs = f.nbBlocs;
+        bits = f.bits.clone();
+    }
+
+    /**
+     * @return une copie du filtre, que les ajouts ultérieurs ne concernent pas
+     */
+    FiltreBloom copie() {
+        return new FiltreBloom(this);
+    }
+
+    /**
+     * Construit le filtre des codes d'un catalogue.
+     * @param c le catalogue
+     * @return le filtre
+     */
+    static FiltreBloom pour(Catalogue c) {
+        FiltreBloom f = new FiltreBloom(c.taille());
+        for (int i = 0; i < c.taille(); i++) {
+            f.ajouter(c.article(i).getCodeEAN13());
+        }
+        return f;
+    }
+
+    /** Mélange des bits du code (finaliseur de MurmurHash3) */
+    private static long melanger(long x) {
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        x *= 0xc4ceb9fe1a85ec53L;
+        x ^= x >>> 33;
+        return x;
+    }
+
+    private int bloc(long h) {
+        return (int) (((h >>> 32) * nbBlocs) >>> 32) * MOTS_PAR_BLOC;
+    }
+
+    void ajouter(long code) {
+        long h = melanger(code);
+        int b = bloc(h);
+        long positions = (h * 0x9E3779B97F4A7C15L) >>> 10;
+        for (int i = 0; i < NB_HACHAGES; i++) {
+            int bit = (int) (positions >>> (9 * i)) & 511;
+            bits[b + (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * @param code le code à tester
+     * @return false si le code n'a certainement pas été inséré, true s'il l'a peut-être été
+     */
+    boolean peutContenir(long code) {
+        long h = melanger(code);
+        int b = bloc(h);
+        long positions = (h * 0x9E3779B97F4A7C15L) >>> 10;
+        for (int i = 0; i < NB_HACHAGES; i++) {
+            int bit = (int) (positions >>> (9 * i)) & 511;
+            if ((bits[b + (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,144 @@
+package fr.ufc.l3info.oprog;
+
+/**
+ * Calcul et vérification de la clé de contrôle des codes GTIN (EAN-8, UPC-A,
+ * EAN-13, GTIN-14), directement sur la valeur numérique du code.
+ *
+ * Tous ces formats partagent la même clé : en partant du chiffre situé juste à
+ * gauche de la clé, les chiffres sont pondérés alternativement par 3 et par 1,
+ * et la clé complète la somme au multiple de 10 supérieur. Les zéros de tête ne
+ * modifiant pas cette somme, un code court se vérifie comme le même code complété
+ * à gauche par des zéros ; seule la longueur maximale distingue les formats.
+ *
+ * Aucune méthode n'alloue de mémoire (ni chaîne, ni tableau).
+ */
+public final class GTIN {
+
+    /** Longueur (en chiffres, clé comprise) d'un EAN-8 */
+    public static final int EAN8 = 8;
+    /** Longueur (en chiffres, clé comprise) d'un UPC-A */
+    public static final int UPC_A = 12;
+    /** Longueur (en chiffres, clé comprise) d'un EAN-13 */
+    public static final int EAN13 = 13;
+    /** Longueur (en chiffres, clé comprise) d'un GTIN-14 */
+    public static final int GTIN14 = 14;
+
+    /** Puissances de 10, de 10^0 à 10^14 */
+    private static final long[] PUISSANCES = new long[GTIN14 + 1];
+    static {
+        PUISSANCES[0] = 1;
+        for (int i = 1; i < PUISSANCES.length; i++) {
+            PUISSANCES[i] = PUISSANCES[i - 1] * 10;
+        }
+    }
+
+    private GTIN() { }
+
+    /**
+     * Calcule la clé de contrôle d'un code donné sans sa clé.
+     * @param sansCle les chiffres du code, clé exclue (valeur positive ou nulle)
+     * @return la clé (entre 0 et 9), ou -1 si la valeur est négative
+     */
+    public static int cle(long sansCle) {
+        if (sansCle < 0) {
+            return -1;
+        }
+        int somme = 0;
+        // chiffres lus deux par deux depuis la droite : poids 3 puis 1
+        while (sansCle != 0) {
+            long q = sansCle / 100;
+            int paire = (int) (sansCle - q * 100);
+            somme += 3 * (paire % 10) + paire / 10;
+            sansCle = q;
+        }
+        int reste = somme % 10;
+        return (reste == 0) ? 0 : 10 - reste;
+    }
+
+    /**
+     * Complète un code par sa clé de contrôle.
+     * @param sansCle les chiffres du code, clé exclue
+     * @param longueur la longueur du code complet (EAN8, UPC_A, EAN13 ou GTIN14)
+     * @return le code complet, ou -1 si le code est négatif ou trop long
+     */
+    public static long completer(long sansCle, int longueur) {
+        verifierLongueur(longueur);
+        if (sansCle < 0 || sansCle >= PUISSANCES[longueur - 1]) {
+            return -1;
+        }
+        return sansCle * 10 + cle(sansCle);
+    }
+
+    /**
+     * Vérifie un code, clé comprise.
+     * @param code le code à vérifier
+     * @param longueur la longueur maximale du format (EAN8, UPC_A, EAN13 ou GTIN14)
+     * @return true si le code est positif, compte au plus longueur chiffres et
+     *         si sa clé est correcte
+     */
+    public static boolean estValide(long code, int longueur) {
+        verifierLongueur(longueur);
+        return valide(code, PUISSANCES[longueur]);
+    }
+
+    /**
+     * @param code le code à vérifier
+     * @return true si le code est un EAN-13 correct (cf. estValide)
+     */
+    public static boolean estValideEAN13(long code) {
+        return valide(code, PUISSANCES[EAN13]);
+    }
+
+    /**
+     * Vérifie une série de codes d'un même format.
+     * @param codes les codes à vérifier
+     * @param debut rang du premier code à vérifier
+     * @param fin rang suivant le dernier code à vérifier
+     * @param longueur la longueur maximale du format (EAN8, UPC_A, EAN13 ou GTIN14)
+     * @return le rang du premier code incorrect, ou -1 s'ils sont tous corrects
+     */
+    public static int premierInvalide(long[] codes, int debut, int fin, int longueur) {
+        verifierLongueur(longueur);
+        long max = PUISSANCES[longueur];
+        for (int i = debut; i < fin; i++) {
+            if (!valide(codes[i], max)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Vérifie une série de codes d'un même format, en notant le résultat de chacun.
+     * @param codes les codes à vérifier
+     * @param resultats tableau (de même taille que codes) recevant le résultat de chaque code
+     * @param longueur la longueur maximale du format (EAN8, UPC_A, EAN13 ou GTIN14)
+     * @return le nombre de codes corrects
+     */
+    public static int valider(long[] codes, boolean[] resultats, int longueur) {
+        verifierLongueur(longueur);
+        long max = PUISSANCES[longueur];
+        int nb = 0;
+        for (int i = 0; i < codes.length; i++) {
+            resultats[i] = valide(codes[i], max);
+            if (resultats[i]) {
+                nb++;
+            }
+        }
+        return nb;
+    }
+
+    private static boolean valide(long code, long max) {
+        if (code < 0 || code >= max) {
+            return false;
+        }
+        long sansCle = code / 10;
+        return cle(sansCle) == (int) (code - sansCle * 10);
+    }
+
+    private static void verifierLongueur(int longueur) {
+        if (longueur != EAN8 && longueur != UPC_A && longueur != EAN13 && longueur != GTIN14) {
+            throw new IllegalArgumentException("longueur de code GTIN incorrecte : " + longueur);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package fr.ufc.l3info.oprog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Hachage parfait minimal d'un ensemble fixe de codes : chacun des n codes de
+ * l'ensemble reçoit un indice distinct entre 0 et n-1. Un code hors de l'ensemble
+ * reçoit un indice quelconque (ou -1) : l'appelant doit vérifier l'appartenance.
+ *
+ * Construction par niveaux (à la manière de BBHash) : au niveau k, chaque code
+ * restant est haché dans un vecteur de {@link #GAMMA} bits par code ; les codes
+ * seuls dans leur case y restent, les autres passent au niveau suivant. L'indice
+ * d'un code est le nombre de bits à 1 qui précèdent sa case dans la suite des
+ * niveaux. Les quelques codes restant après {@link #NIVEAUX_MAX} niveaux sont
+ * rangés à part, triés.
+ *
+ * L'index occupe environ 3,7 bits par code, plus un compteur de 32 bits tous
+ * les 512 bits pour le calcul des rangs. La plupart des codes sont placés dès
+ * le premier niveau, qui ne coûte alors qu'une ligne de cache de bits et une
+ * de compteurs.
+ */
+final class HachageParfait {
+
+    /** Nombre de bits de chaque niveau par code restant */
+    static final int GAMMA = 2;
+
+    private static final int NIVEAUX_MAX = 32;
+
+    /** Nombre de mots de 64 bits entre deux compteurs de rang (une ligne de cache) */
+    private static final int MOTS_PAR_BLOC = 8;
+
+    /** Vecteurs des niveaux, mis bout à bout */
+    private final long[] bits;
+    /** Position du premier bit de chaque niveau (nbNiveaux+1 valeurs) */
+    private final long[] debuts;
+    /** Nombre de bits à 1 avant chaque bloc */
+    private final int[] rangsBlocs;
+    /** Codes placés dans aucun niveau, triés */
+    private final long[] reste;
+    /** Nombre de codes placés dans les niveaux */
+    private final int nbPlaces;
+
+
+    /**
+     * @param cles les codes, tous distincts (non modifié)
+     * @param n le nombre de codes à prendre au début du tableau
+     */
+    HachageParfait(long[] cles, int n) {
+        long[] restantes = Arrays.copyOf(cles, n);
+        int nb = n;
+        ArrayList<long[]> niveaux = new ArrayList<long[]>();
+        while (nb > 0 && niveaux.size() < NIVEAUX_MAX) {
+            int niveau = niveaux.size();
+            long taille = Math.max(64, ((long) GAMMA * nb + 63) & ~63L);
+            long[] vus = new long[(int) (taille >>> 6)];
+            long[] collisions = new long[vus.length];
+            for (int i = 0; i < nb; i++) {
+                int p = position(restantes[i], niveau, taille);
+                if ((vus[p >>> 6] & (1L << p)) != 0) {
+                    collisions[p >>> 6] |= 1L << p;
+                }
+                vus[p >>> 6] |= 1L << p;
+            }
+            int suivantes = 0;
+            for (int i = 0; i < nb; i++) {
+                int p = position(restantes[i], niveau, taille);
+                if ((collisions[p >>> 6] & (1L << p)) != 0) {
+                    restantes[suivantes++] = restantes[i];
+                }
+            }
+            for (int w = 0; w < vus.length; w++) {
+                vus[w] &= ~collisions[w];
+            }
+            niveaux.add(vus);
+            nb = suivantes;
+        }
+        reste = Arrays.copyOf(restantes, nb);
+        Arrays.sort(reste);
+
+        debuts = new long[niveaux.size() + 1];
+        for (int k = 0; k < niveaux.size(); k++) {
+            debuts[k + 1] = debuts[k] + 64L * niveaux.get(k).length;
+        }
+        if (debuts[niveaux.size()] >>> 6 > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Trop de codes : " + n);
+        }
+        bits = new long[(int) (debuts[niveaux.size()] >>> 6)];
+        for (int k = 0; k < niveaux.size(); k++) {
+            System.arraycopy(niveaux.get(k), 0, bits, (int) (debuts[k] >>> 6), niveaux.get(k).length);
+        }
+        rangsBlocs = new int[(bits.length + MOTS_PAR_BLOC - 1) / MOTS_PAR_BLOC];
+        int total = 0;
+        for (int w = 0; w < bits.length; w++) {
+            if (w % MOTS_PAR_BLOC == 0) {
+                rangsBlocs[w / MOTS_PAR_BLOC] = total;
+            }
+            total += Long.bitCount(bits[w]);
+        }
+        nbPlaces = total;
+    }
+
+    /** Mélange des bits du code et du niveau (finaliseur de SplitMix64) */
+    private static long melanger(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+
+    /** Case du code dans un niveau de taille bits */
+    private static int position(long cle, int niveau, long taille) {
+        long h = melanger(cle + (niveau + 1) * 0x9E3779B97F4A7C15L);
+        return (int) (((h >>> 32) * taille) >>> 32);
+    }
+
+    /** Nombre de bits à 1 avant la position p */
+    private int rang(long p) {
+        int w = (int) (p >>> 6);
+        int r = rangsBlocs[w / MOTS_PAR_BLOC];
+        for (int i = w - w % MOTS_PAR_BLOC; i < w; i++) {
+            r += Long.bitCount(bits[i]);
+        }
+        return r + Long.bitCount(bits[w] & ((1L << p) - 1));
+    }
+
+    /**
+     * @param cle un code
+     * @return l'indice du code s'il fait partie de l'ensemble ; sinon un indice
+     *         quelconque entre 0 et n-1, ou -1
+     */
+    int indice(long cle) {
+        for (int k = 0; k < debuts.length - 1; k++) {
+            long p = debuts[k] + position(cle, k, debuts[k + 1] - debuts[k]);
+            if ((bits[(int) (p >>> 6)] & (1L << p)) != 0) {
+                return rang(p);
+            }
+        }
+        int i = Arrays.binarySearch(reste, cle);
+        return (i < 0) ? -1 : nbPlaces + i;
+    }
+
+    /**
+     * @return la place occupée par l'index, en octets
+     */
+    long empreinte() {
+        return 8L * bits.length + 4L * rangsBlocs.length + 8L * reste.length + 8L * debuts.length;
+    }
+}
@@ -0,0 +1,168 @@
+package fr.ufc.l3info.oprog;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Photographie immuable du contenu d'une scanette, transmise à la caisse lors
+ * de la connexion : codes EAN reconnus avec leur quantité et leur prix unitaire
+ * en centimes, codes non reconnus, et indication d'une relecture effectuée.
+ *
+ * Les données sont rangées dans des tableaux de types primitifs, ce qui permet à
+ * la caisse de les parcourir en une seule passe sans rappeler la scanette, et de
+ * sérialiser l'instantané pour une caisse distante.
+ */
+public final class InstantanePanier implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long[] codes;
+    private final int[] quantites;
+    private final long[] centimes;
+    /** Codes non reconnus, triés et sans doublon */
+    private final long[] inconnus;
+    private final boolean relectureEffectuee;
+    private final int nbArticles;
+
+
+    private InstantanePanier(long[] codes, int[] quantites, long[] centimes, long[] inconnus, boolean relectureEffectuee) {
+        this.codes = codes;
+        this.quantites = quantites;
+        this.centimes = centimes;
+        this.inconnus = inconnus;
+        this.relectureEffectuee = relectureEffectuee;
+        int nb = 0;
+        for (int q : quantites) {
+            nb += q;
+        }
+        this.nbArticles = nb;
+    }
+
+    /**
+     * Construit l'instantané d'un panier de scanette.
+     * @param panier le panier (codes, quantités et prix)
+     * @param nonReconnus les codes non reconnus, éventuellement répétés
+     * @param nbNonReconnus le nombre de codes non reconnus
+     * @param relectureEffectuee true si la scanette vient de réussir une relecture
+     * @return l'instantané
+     */
+    static InstantanePanier depuis(PanierEAN panier, long[] nonReconnus, int nbNonReconnus, boolean relectureEffectuee) {
+        int n = panier.taille();
+        long[] codes = new long[n];
+        int[] quantites = new int[n];
+        long[] centimes = new long[n];
+        int k = 0;
+        for (int i = 0; i < panier.capacite(); i++) {
+            if (panier.quantiteCase(i) > 0) {
+                codes[k] = panier.codeCase(i);
+                quantites[k] = panier.quantiteCase(i);
+                centimes[k] = panier.prixCase(i);
+                k++;
+            }
+        }
+        return new InstantanePanier(codes, quantites, centimes,
+                sansDoublon(Arrays.copyOf(nonReconnus, nbNonReconnus)), relectureEffectuee);
+    }
+
+    /**
+     * Construit l'instantané d'une scanette à partir de ses autres méthodes publiques
+     * (getArticles, quantite, getReferencesInconnues, relectureEffectuee), par exemple
+     * pour faire fournir à une scanette simulée un instantané cohérent avec celles-ci.
+     * @param s la scanette
+     * @return l'instantané
+     */
+    static InstantanePanier depuis(Scanette s) {
+        boolean relue = s.relectureEffectuee();
+        Set<Article> articles = s.getArticles();
+        int n = articles.size();
+        long[] codes = new long[n];
+        int[] quantites = new int[n];
+        long[] centimes = new long[n];
+        int k = 0;
+        for (Article a : articles) {
+            codes[k] = a.getCodeEAN13();
+            quantites[k] = s.quantite(a.getCodeEAN13());
+            centimes[k] = a.getPrixCentimes();
+            k++;
+        }
+        Set<Long> refs = s.getReferencesInconnues();
+        long[] inconnus = new long[refs.size()];
+        k = 0;
+        for (long l : refs) {
+            inconnus[k++] = l;
+        }
+        return new InstantanePanier(codes, quantites, centimes, sansDoublon(inconnus), relue);
+    }
+
+    private static long[] sansDoublon(long[] t) {
+        Arrays.sort(t);
+        int n = 0;
+        for (int i = 0; i < t.length; i++) {
+            if (n == 0 || t[i] != t[n - 1]) {
+                t[n++] = t[i];
+            }
+        }
+        return n == t.length ? t : Arrays.copyOf(t, n);
+    }
+
+    /**
+     * @return le nombre de codes reconnus distincts
+     */
+    public int nbCodes() {
+        return codes.length;
+    }
+
+    /**
+     * @param i un rang entre 0 et nbCodes()-1
+     * @return le code EAN de rang i
+     */
+    public long code(int i) {
+        return codes[i];
+    }
+
+    /**
+     * @param i un rang entre 0 et nbCodes()-1
+     * @return la quantité du code de rang i
+     */
+    public int quantite(int i) {
+        return quantites[i];
+    }
+
+    /**
+     * @param i un rang entre 0 et nbCodes()-1
+     * @return le prix unitaire en centimes du code de rang i
+     */
+    public long prixCentimes(int i) {
+        return centimes[i];
+    }
+
+    /**
+     * @return le nombre total d'articles reconnus (somme des quantités)
+     */
+    public int nbArticles() {
+        return nbArticles;
+    }
+
+    /**
+     * @return le nombre de codes non reconnus distincts
+     */
+    public int nbInconnus() {
+        return inconnus.length;
+    }
+
+    /**
+     * @param i un rang entre 0 et nbInconnus()-1
+     * @return le code non reconnu de rang i (par ordre croissant)
+     */
+    public long inconnu(int i) {
+        return inconnus[i];
+    }
+
+    /**
+     * @return true si la scanette venait de réussir une relecture
+     */
+    public boolean relectureEffectuee() {
+        return relectureEffectuee;
+    }
+}
@@ -1,7 +1,6 @@
 package fr.ufc.l3info.oprog;
 
 import java.io.IOException;
-import java.util.HashMap;
 
 
 public class MaCaisse implements Caisse {
@@ -15,17 +14,21 @@ public class MaCaisse implements Caisse {
 
     private ETAT_CAISSE etat;
     private ArticleDB produits;
-    private HashMap<Article, Integer> achats;
-    private double aPayer = 0;
+    /** Version de la base figée pour la transaction en cours */
+    private ArticleDB produitsPanier;
+    /** Achats en cours : quantité et prix unitaire par code EAN */
+    private PanierEAN achats;
+    /** Montant total des achats en centimes, tenu à jour à chaque ajout ou retrait */
+    private long aPayerCentimes = 0;
 
     public double THRESHOLD = 0.1;
     
 
     public MaCaisse(String pathToProductFile) throws ProductDBFailureException {
         try {
-            produits = new ArticleDB();
-            produits.init(pathToProductFile);
-            achats = new HashMap<Article, Integer>();
+            produits = ArticleDBCache.get(pathToProductFile);
+            produitsPanier = produits.instantane();
+            achats = new PanierEAN();
             etat = ETAT_CAISSE.EN_ATTENTE;
         }
         catch (IOException e) {
@@ -52,18 +55,24 @@ public class MaCaisse implements Caisse {
             return -1;
         }
 
+        InstantanePanier p = s.instantanePanier();
+
         // (1), (2), (3) remove 1 of the 3 conditions below
-        if (!s.relectureEffectuee() & s.getArticles().size() > 0 & demandeRelecture()) {
+        if (!p.relectureEffectuee() & p.nbCodes() > 0 & demandeRelecture()) {
             return 1;
         }
 
-        achats.clear();
-        for (Article a : s.getArticles()) {
-            achats.put(a, s.quantite(a.getCodeEAN13()));
+        achats.vider();
+        aPayerCentimes = 0;
+        produitsPanier = produits.instantane();
+        for (int i = 0; i < p.nbCodes(); i++) {
+            int qu = p.quantite(i);
+            achats.fixer(p.code(i), qu, p.prixCentimes(i));
+            aPayerCentimes += p.prixCentimes(i) * qu;  // (6) remove operand
         }
 
         // (4) remove second condition below
-        if (s.getReferencesInconnues().size() > 0 || s.getArticles().size() == 0) {
+        if (p.nbInconnus() > 0 || p.nbCodes() == 0) {
             this.etat = ETAT_CAISSE.ATTENTE_CAISSIER;
         }
         else {
@@ -93,13 +102,11 @@ public class MaCaisse implements Caisse {
         if (etat != ETAT_CAISSE.PAIEMENT) {
             return -42;
         }
-        // calcul du montant total des achats
-        aPayer = 0;
-        for (Article a : achats.keySet()) {
-            aPayer += a.getPrixUnitaire() * achats.get(a);  // (6) remove operand
-        }
+        // montant total des achats, tenu à jour par connexion, scanner et supprimer
+        double aPayer = aPayerCentimes / 100.0;
         if (aPayer - somme < 0.01) {
-            achats.clear();   // (7) remove this line
+            achats.vider();   // (7) remove this line
+            aPayerCentimes = 0;
             etat = ETAT_CAISSE.EN_ATTENTE;
         }
         return somme - aPayer;
@@ -110,7 +117,8 @@ public class MaCaisse implements Caisse {
      * Abandonne toute transaction en cours et replace la caisse en attente.
      */
     public void abandon() {
-        achats.clear();     // (8) remove this line
+        achats.vider();     // (8) remove this line
+        aPayerCentimes = 0;
         etat = ETAT_CAISSE.EN_ATTENTE;
     }
 
@@ -136,7 +144,7 @@ public class MaCaisse implements Caisse {
      */
     public int fermerSession() {
         if (etat == ETAT_CAISSE.AUTHENTIFIE) {
-            etat = achats.isEmpty() ?
+            etat = achats.estVide() ?
                     ETAT_CAISSE.EN_ATTENTE :   // (9) change to PAIEMENT
                     ETAT_CAISSE.PAIEMENT;
             return 0;
@@ -148,18 +156,19 @@ public class MaCaisse implements Caisse {
         if (etat != ETAT_CAISSE.AUTHENTIFIE) {
             return -1;   // (15) remove this line
         }
-        try {
-            Article a = produits.getArticle(ean13);
-            if (achats.containsKey(a)) {      // (10) stuck at false
-                achats.put(a, achats.get(a) + 1);
-            }
-            else {
-                achats.put(a, 1);
-            }
-        }
-        catch (ArticleNotFoundException e) {
+        Article a = produitsPanier.chercher(ean13);
+        if (a == null) {
             return -2;
         }
+        int nb = achats.quantite(ean13);
+        if (nb > 0) {      // (10) stuck at false
+            achats.fixer(ean13, nb + 1, achats.prixCentimes(ean13));
+            aPayerCentimes += achats.prixCentimes(ean13);
+        }
+        else {
+            achats.fixer(ean13, 1, a.getPrixCentimes());
+            aPayerCentimes += a.getPrixCentimes();
+        }
         return 0;
     }
 
@@ -167,17 +176,17 @@ public class MaCaisse implements Caisse {
         if (etat != ETAT_CAISSE.AUTHENTIFIE) {
             return -1;  // (14) remove this line
         }
-        for (Article a : achats.keySet()) {
-            if (a.getCodeEAN13() == ean13) {  // (12) stuck at false
-                int nb = achats.get(a);
-                if (nb > 1) {   // (11) stuck at false      // (13) stuck at true
-                    achats.put(a, nb-1);
-                }
-                else {
-                    achats.remove(a);
-                }
-                return 0;
+        int nb = achats.quantite(ean13);
+        if (nb > 0) {  // (12) stuck at false
+            long prix = achats.prixCentimes(ean13);
+            if (nb > 1) {   // (11) stuck at false      // (13) stuck at true
+                achats.fixer(ean13, nb-1, prix);
             }
+            else {
+                achats.retirer(ean13);
+            }
+            aPayerCentimes -= prix;
+            return 0;
         }
         return -2;
     }
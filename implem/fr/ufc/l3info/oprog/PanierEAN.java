@@ -0,0 +1,209 @@
+package fr.ufc.l3info.oprog;
+
+import java.util.Arrays;
+
+/**
+ * Panier indexé par code EAN : associe à chaque code une quantité et un prix
+ * unitaire en centimes, sans objet intermédiaire (ni Long, ni Article).
+ *
+ * Même principe que TableArticles (adressage ouvert, sondage linéaire, hachage
+ * de Fibonacci), mais avec suppression : la case libérée est comblée en
+ * ramenant les entrées suivantes de la même grappe, ce qui évite les marques
+ * de suppression et garde ajout, recherche et retrait en temps constant.
+ *
+ * Une quantité nulle désigne une case vide. La somme des quantités est tenue à
+ * jour à chaque modification, et vider le panier conserve les tableaux alloués :
+ * un panier réutilisé d'un client à l'autre n'alloue plus rien une fois sa
+ * taille de croisière atteinte.
+ */
+final class PanierEAN {
+
+    /** Capacité minimale de la table (puissance de 2) */
+    private static final int CAPACITE_MIN = 16;
+
+    /** Codes EAN, rangés selon leur position de hachage */
+    private long[] codes;
+    /** Quantités (0 = case vide) */
+    private int[] quantites;
+    /** Prix unitaires en centimes */
+    private long[] centimes;
+    /** Nombre de codes distincts */
+    private int taille;
+    /** Somme des quantités */
+    private int nbArticles;
+    /** Décalage appliqué au produit de hachage (64 - log2(capacité)) */
+    private int decalage;
+
+
+    PanierEAN() {
+        allouer(CAPACITE_MIN);
+    }
+
+    private void allouer(int capacite) {
+        codes = new long[capacite];
+        quantites = new int[capacite];
+        centimes = new long[capacite];
+        decalage = 64 - Integer.numberOfTrailingZeros(capacite);
+    }
+
+    /** @return la case du code, ou la case vide où il serait rangé */
+    private int chercher(long code) {
+        int masque = codes.length - 1;
+        int i = TableArticles.hacher(code, decalage);
+        while (quantites[i] != 0 && codes[i] != code) {
+            i = (i + 1) & masque;
+        }
+        return i;
+    }
+
+    /**
+     * @param code un code EAN
+     * @return la quantité associée au code (0 s'il n'est pas dans le panier)
+     */
+    int quantite(long code) {
+        return quantites[chercher(code)];
+    }
+
+    /**
+     * @param code un code EAN présent dans le panier
+     * @return le prix unitaire en centimes associé au code (0 s'il est absent)
+     */
+    long prixCentimes(long code) {
+        int i = chercher(code);
+        return quantites[i] == 0 ? 0 : centimes[i];
+    }
+
+    /**
+     * Fixe la quantité et le prix unitaire associés à un code.
+     * @param code le code EAN
+     * @param quantite la nouvelle quantité (0 retire le code du panier)
+     * @param prix le prix unitaire en centimes
+     */
+    void fixer(long code, int quantite, long prix) {
+        if (quantite < 0) {
+            throw new IllegalArgumentException("quantité négative : " + quantite);
+        }
+        if (quantite == 0) {
+            retirer(code);
+            return;
+        }
+        int i = chercher(code);
+        if (quantites[i] == 0) {
+            if (taille + 1 > codes.length - (codes.length >>> 2)) {
+                agrandir();
+                i = chercher(code);
+            }
+            codes[i] = code;
+            taille++;
+        }
+        nbArticles += quantite - quantites[i];
+        quantites[i] = quantite;
+        centimes[i] = prix;
+    }
+
+    /**
+     * Retire complètement un code du panier.
+     * @param code le code EAN
+     * @return la quantité qui était associée au code (0 s'il était absent)
+     */
+    int retirer(long code) {
+        int i = chercher(code);
+        int q = quantites[i];
+        if (q == 0) {
+            return 0;
+        }
+        taille--;
+        nbArticles -= q;
+        // comblement du trou : on remonte les entrées de la grappe qui ne sont
+        // plus accessibles depuis leur position de hachage
+        int masque = codes.length - 1;
+        int j = i;
+        while (true) {
+            j = (j + 1) & masque;
+            if (quantites[j] == 0) {
+                break;
+            }
+            int k = TableArticles.hacher(codes[j], decalage);
+            // k n'est pas dans l'intervalle circulaire ]i, j] : l'entrée peut descendre en i
+            if (i <= j ? (k <= i || k > j) : (k <= i && k > j)) {
+                codes[i] = codes[j];
+                quantites[i] = quantites[j];
+                centimes[i] = centimes[j];
+                i = j;
+            }
+        }
+        quantites[i] = 0;
+        return q;
+    }
+
+    private void agrandir() {
+        long[] anciensCodes = codes;
+        int[] anciennesQuantites = quantites;
+        long[] anciensCentimes = centimes;
+        allouer(codes.length << 1);
+        for (int j = 0; j < anciensCodes.length; j++) {
+            if (anciennesQuantites[j] != 0) {
+                int i = chercher(anciensCodes[j]);
+                codes[i] = anciensCodes[j];
+                quantites[i] = anciennesQuantites[j];
+                centimes[i] = anciensCentimes[j];
+            }
+        }
+    }
+
+    /**
+     * Vide le panier (la capacité est conservée).
+     */
+    void vider() {
+        if (taille > 0) {
+            Arrays.fill(quantites, 0);
+            taille = 0;
+            nbArticles = 0;
+        }
+    }
+
+    /**
+     * @return le nombre de codes distincts dans le panier
+     */
+    int taille() {
+        return taille;
+    }
+
+    /**
+     * @return la somme des quantités du panier
+     */
+    int nbArticles() {
+        return nbArticles;
+    }
+
+    /**
+     * @return true si le panier ne contient aucun code
+     */
+    boolean estVide() {
+        return taille == 0;
+    }
+
+    /**
+     * Parcours du panier : les cases vont de 0 à capacite()-1 et seules celles
+     * dont la quantité est non nulle sont occupées.
+     * @return le nombre de cases de la table
+     */
+    int capacite() {
+        return codes.length;
+    }
+
+    /** @return le code rangé dans une case (cf. capacite()) */
+    long codeCase(int i) {
+        return codes[i];
+    }
+
+    /** @return la quantité rangée dans une case, 0 si elle est vide (cf. capacite()) */
+    int quantiteCase(int i) {
+        return quantites[i];
+    }
+
+    /** @return le prix unitaire en centimes rangé dans une case (cf. capacite()) */
+    long prixCase(int i) {
+        return centimes[i];
+    }
+}
@@ -0,0 +1,218 @@
+package fr.ufc.l3info.oprog;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Résolution asynchrone, par lots, des codes absents de la base locale auprès
+ * d'un catalogue de second niveau (cf. CatalogueDistant).
+ *
+ * demander ne bloque jamais : le code est placé dans une file (s'il n'est ni déjà
+ * connu ni déjà demandé) et un fil d'exécution dédié interroge le catalogue distant
+ * par lots d'au plus {@link #getTailleLot()} codes, en attendant au plus
+ * {@link #DELAI_LOT_MS} ms que d'autres demandes complètent un lot commencé.
+ * Les réponses, y compris les codes inconnus du catalogue distant, sont gardées
+ * dans un cache dont les entrées les moins récemment utilisées sont évincées
+ * au-delà de sa capacité. Un lot dont la consultation échoue est abandonné :
+ * ses codes pourront être demandés de nouveau.
+ *
+ * Toutes les méthodes peuvent être appelées depuis n'importe quel fil.
+ */
+public class ResolveurInconnus {
+
+    /** Délai maximal d'attente de demandes supplémentaires pour compléter un lot */
+    static final long DELAI_LOT_MS = 20;
+
+    /** Nombre maximal de codes en attente ; au-delà, les demandes sont ignorées */
+    static final int FILE_MAX = 10000;
+
+    private final CatalogueDistant distant;
+    private final int tailleLot;
+
+    /** Réponses du catalogue distant (null pour un code inconnu), par ordre d'utilisation */
+    private final LinkedHashMap<Long, Article> cache;
+    /** Codes demandés dont la réponse n'est pas encore arrivée */
+    private final Set<Long> enAttente = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+    private final LinkedBlockingQueue<Long> file = new LinkedBlockingQueue<Long>(FILE_MAX);
+
+    private final Thread fil;
+    private volatile boolean arrete = false;
+    private volatile long nbLots = 0, nbEchecs = 0;
+
+
+    /**
+     * Crée un résolveur et démarre son fil d'exécution (démon).
+     * @param distant le catalogue de second niveau
+     * @param capaciteCache le nombre maximal de réponses gardées en cache
+     * @param tailleLot le nombre maximal de codes par consultation du catalogue distant
+     */
+    public ResolveurInconnus(CatalogueDistant distant, final int capaciteCache, int tailleLot) {
+        if (capaciteCache < 1 || tailleLot < 1) {
+            throw new IllegalArgumentException("Capacité ou taille de lot incorrecte");
+        }
+        this.distant = distant;
+        this.tailleLot = tailleLot;
+        this.cache = new LinkedHashMap<Long, Article>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Article> eldest) {
+                return size() > capaciteCache;
+            }
+        };
+        fil = new Thread(new Runnable() {
+            public void run() {
+                traiter();
+            }
+        }, "ResolveurInconnus");
+        fil.setDaemon(true);
+        fil.start();
+    }
+
+    /**
+     * Demande la résolution d'un code, sans attendre la réponse.
+     * @param ean13 le code absent de la base locale
+     */
+    public void demander(long ean13) {
+        synchronized (cache) {
+            if (cache.containsKey(ean13)) {
+                return;
+            }
+        }
+        if (!arrete && enAttente.add(ean13) && !file.offer(ean13)) {
+            // file pleine : la demande est abandonnée
+            enAttente.remove(ean13);
+        }
+    }
+
+    /**
+     * Consulte le cache, sans attendre.
+     * @param ean13 un code
+     * @return l'article trouvé par le catalogue distant, ou null si le code est inconnu
+     *         de celui-ci ou n'a pas (encore) été résolu
+     */
+    public Article chercher(long ean13) {
+        synchronized (cache) {
+            return cache.get(ean13);
+        }
+    }
+
+    /**
+     * @param ean13 un code
+     * @return true si la réponse du catalogue distant pour ce code est en cache
+     */
+    public boolean estResolu(long ean13) {
+        synchronized (cache) {
+            return cache.containsKey(ean13);
+        }
+    }
+
+    /**
+     * Attend que toutes les demandes en cours aient reçu une réponse (ou échoué).
+     * @param delaiMillis l'attente maximale, en millisecondes
+     * @return true si plus aucune demande n'est en cours
+     * @throws InterruptedException si l'attente est interrompue
+     */
+    public boolean attendre(long delaiMillis) throws InterruptedException {
+        long fin = System.currentTimeMillis() + delaiMillis;
+        synchronized (this) {
+            while (!enAttente.isEmpty()) {
+                long reste = fin - System.currentTimeMillis();
+                if (reste <= 0) {
+                    return false;
+                }
+                wait(reste);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Arrête le fil d'exécution ; les demandes ultérieures sont ignorées.
+     */
+    public void fermer() {
+        arrete = true;
+        fil.interrupt();
+    }
+
+    /** @return le nombre maximal de codes par consultation du catalogue distant */
+    public int getTailleLot() {
+        return tailleLot;
+    }
+
+    /** @return le nombre de consultations réussies du catalogue distant */
+    public long getNbLots() {
+        return nbLots;
+    }
+
+    /** @return le nombre de consultations qui ont échoué */
+    public long getNbEchecs() {
+        return nbEchecs;
+    }
+
+    /** @return le nombre de réponses en cache */
+    public int getTailleCache() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /** Boucle du fil d'exécution : constitution des lots et consultation */
+    private void traiter() {
+        ArrayList<Long> lot = new ArrayList<Long>(tailleLot);
+        while (!arrete) {
+            lot.clear();
+            try {
+                lot.add(file.take());
+                long fin = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DELAI_LOT_MS);
+                while (lot.size() < tailleLot) {
+                    file.drainTo(lot, tailleLot - lot.size());
+                    long reste = fin - System.nanoTime();
+                    if (lot.size() == tailleLot || reste <= 0) {
+                        break;
+                    }
+                    Long code = file.poll(reste, TimeUnit.NANOSECONDS);
+                    if (code == null) {
+                        break;
+                    }
+                    lot.add(code);
+                }
+            }
+            catch (InterruptedException e) {
+                break;
+            }
+            long[] codes = new long[lot.size()];
+            for (int i = 0; i < codes.length; i++) {
+                codes[i] = lot.get(i);
+            }
+            try {
+                Article[] articles = distant.resoudre(codes);
+                synchronized (cache) {
+                    for (int i = 0; i < codes.length; i++) {
+                        cache.put(codes[i], articles[i]);
+                    }
+                }
+                nbLots++;
+            }
+            catch (IOException e) {
+                nbEchecs++;
+            }
+            catch (RuntimeException e) {
+                nbEchecs++;
+            }
+            enAttente.removeAll(lot);
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+        enAttente.clear();
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+}
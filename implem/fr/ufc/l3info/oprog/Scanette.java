@@ -1,8 +1,7 @@
 package fr.ufc.l3info.oprog;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -22,14 +21,26 @@ public class Scanette {
 
     /** Base de données des produits */
     private ArticleDB produits;
+    /** Version de la base figée pour le panier en cours (prix cohérents pendant les courses) */
+    private ArticleDB produitsPanier;
 
 
     /** Données utiles pendant les courses */
 
-    /** Panier de l'utilisateur */
-    private HashMap<Long, Integer> panier;
+    /** Panier de l'utilisateur (quantité et prix en centimes par code) */
+    private PanierEAN panier;
     /** Articles non trouvés */
-    private ArrayList<Long> nonReconnus;
+    private long[] nonReconnus;
+    /** Nombre d'articles non trouvés */
+    private int nbNonReconnus;
+
+    /** Instantané du panier en cours de transmission à la caisse */
+    private InstantanePanier transmis;
+
+    /** Résolution des articles non trouvés auprès d'un catalogue de second niveau (facultative) */
+    private ResolveurInconnus resolveur;
+    /** Articles du panier en cours résolus par le catalogue de second niveau */
+    private TableArticles resolus;
 
 
     /** Données utiles pour la relecture */
@@ -39,7 +50,7 @@ public class Scanette {
     /** Nombre actuel de produits à rescanner */
     private int aRescanner = 0;
     /** Verification en cours (sorte de second achats) */
-    private HashMap<Long, Integer> verif;
+    private PanierEAN verif;
     
 
     /**
@@ -50,12 +61,13 @@ public class Scanette {
      */
     public Scanette(String pathToProductFile) throws ProductDBFailureException {
         try {
-            produits = new ArticleDB();
-            produits.init(pathToProductFile);
+            produits = ArticleDBCache.get(pathToProductFile);
+            produitsPanier = produits.instantane();
             etat = ETAT.BLOQUEE;
-            panier = new HashMap<Long, Integer>();
-            nonReconnus = new ArrayList<Long>();
-            verif = new HashMap<Long, Integer>();
+            panier = new PanierEAN();
+            nonReconnus = new long[8];
+            resolus = new TableArticles();
+            verif = new PanierEAN();
         }
         catch (FileFormatException e) {
             throw new ProductDBFailureException();
@@ -73,6 +85,7 @@ public class Scanette {
     public int debloquer() {
         if (etat == ETAT.BLOQUEE) {
             etat = ETAT.EN_COURSES;
+            produitsPanier = produits.instantane();
             return 0;
         }
         return -1;  // wrong state
@@ -90,25 +103,31 @@ public class Scanette {
      */
     public int scanner(long ean13) {
         if (etat == ETAT.EN_COURSES) {
-            try {
-                Article a = produits.getArticle(ean13);
-                int qu = quantite(ean13);
-                // (1) qu = 1;
-                qu++;
-                panier.put(ean13, qu);
-                return 0;
-            } catch (ArticleNotFoundException e) {
+            Article a = produitsPanier.chercher(ean13);
+            if (a == null) {
+                if (nbNonReconnus == nonReconnus.length) {
+                    nonReconnus = Arrays.copyOf(nonReconnus, nbNonReconnus * 2);
+                }
                 // (2) remove
-                nonReconnus.add(ean13);
+                nonReconnus[nbNonReconnus++] = ean13;
+                if (resolveur != null) {
+                    resolveur.demander(ean13);
+                }
                 return -2;
             }
+            int qu = quantite(ean13);
+            // (1) qu = 1;
+            qu++;
+            panier.fixer(ean13, qu, a.getPrixCentimes());
+            return 0;
         }
         if (etat == ETAT.RELECTURE) {
             // ajout aux articles relus
-            int qt = (verif.containsKey(ean13)) ? verif.get(ean13) : 0;
-            verif.put(ean13, qt + 1);
+            int qt = verif.quantite(ean13) + 1;
+            verif.fixer(ean13, qt, 0);
+            int qp = panier.quantite(ean13);
             // (6) stuck at false next condition
-            if (!panier.containsKey(ean13) /* (3) remove eol */ || verif.get(ean13) > panier.get(ean13)) {
+            if (qp == 0 /* (3) remove eol */ || qt > qp) {
                 etat = ETAT.RELECTURE_KO;
                 return -3; // (4) -2;
             } else {
@@ -145,11 +164,11 @@ public class Scanette {
         // (32) stuck at true
         if (qu == 1) {
             // (11) remove next line
-            panier.remove(ean13);
+            panier.retirer(ean13);
             return 0;
         }
         // (12) remove next line
-        panier.put(ean13, qu - 1);
+        panier.fixer(ean13, qu - 1, panier.prixCentimes(ean13));
         return 0;
     }
 
@@ -160,7 +179,7 @@ public class Scanette {
      */
     public int quantite(long ean13) {
         // (13) return achats.get(ean13);
-        return panier.containsKey(ean13) ? panier.get(ean13) : 0;
+        return panier.quantite(ean13);
     }
 
 
@@ -170,9 +189,10 @@ public class Scanette {
     public void abandon() {
         etat = ETAT.BLOQUEE;
         // (14) remove next line
-        panier.clear();
+        panier.vider();
         // (15) remove next line
-        nonReconnus.clear();
+        nbNonReconnus = 0;
+        resolus.vider();
     }
 
 
@@ -181,7 +201,11 @@ public class Scanette {
      * @return Un ensemble de codes EAN13 non reconnus.
      */
     public Set<Long> getReferencesInconnues() {
-        return new HashSet<Long>(nonReconnus); // (16) new HashSet<Long>();  // (19) nonReconnus
+        HashSet<Long> ret = new HashSet<Long>(); // (16) new HashSet<Long>();  // (19) nonReconnus
+        for (int i = 0; i < nbNonReconnus; i++) {
+            ret.add(nonReconnus[i]);
+        }
+        return ret;
     }
 
     
@@ -191,24 +215,41 @@ public class Scanette {
      */
     public Set<Article> getArticles() {
         HashSet<Article> ret = new HashSet<Article>();
-        for (long l : panier.keySet()) {
-            try {
-                // (17) if (ret.size() < 1)
-                // (18) if (ret.size() < achats.size() - 1)
-                ret.add(produits.getArticle(l));
+        for (int i = 0; i < panier.capacite(); i++) {
+            if (panier.quantiteCase(i) == 0) {
+                continue;
+            }
+            Article a = produitsPanier.chercher(panier.codeCase(i));
+            if (a == null) {
+                // article résolu par le catalogue de second niveau
+                a = resolus.get(panier.codeCase(i));
+            }
+            // (17) if (ret.size() < 1)
+            // (18) if (ret.size() < achats.size() - 1)
+            if (a != null) {    // should not happen
+                ret.add(a);
             }
-            catch (ArticleNotFoundException e) { /* should not happen */ }
         }
         return ret;
     }
 
 
-    private int getNbArticles() {
-        int nb = 0;
-        for (long l : panier.keySet()) {
-            nb += panier.get(l);
+    /**
+     * Fournit en une seule fois le contenu de la scanette (articles reconnus avec leur
+     * quantité et leur prix, références inconnues, relecture effectuée). Pendant une
+     * transmission, c'est l'instantané transmis à la caisse qui est renvoyé.
+     * @return un instantané immuable du panier
+     */
+    public InstantanePanier instantanePanier() {
+        if (transmis != null) {
+            return transmis;
         }
-        return nb;
+        return InstantanePanier.depuis(panier, nonReconnus, nbNonReconnus, relectureEffectuee());
+    }
+
+
+    private int getNbArticles() {
+        return panier.nbArticles();
     }
 
     /**
@@ -231,7 +272,18 @@ public class Scanette {
             return -1;
         }
 
-        int codeRetourCaisse = c.connexion(this);
+        long[] avantResolution = null;
+        if (resolveur != null) {
+            avantResolution = integrerResolus();
+        }
+        transmis = InstantanePanier.depuis(panier, nonReconnus, nbNonReconnus, relectureEffectuee());
+        int codeRetourCaisse;
+        try {
+            codeRetourCaisse = c.connexion(this);
+        }
+        finally {
+            transmis = null;
+        }
 
         // (25) uncomment next line
         // if (true) return codeRetourCaisse;
@@ -240,15 +292,16 @@ public class Scanette {
             // (24) remove next line
             etat = ETAT.BLOQUEE;
             // (22) remove next line
-            panier.clear();
+            panier.vider();
             // (23) remove next line
-            nonReconnus.clear();
+            nbNonReconnus = 0;
+            resolus.vider();
             return 0;
         }
         else if (etat == ETAT.EN_COURSES && codeRetourCaisse == 1) {
             etat = ETAT.RELECTURE;
             // (30) comment next line
-            verif.clear();
+            verif.vider();
             int nb = getNbArticles();
             // (26) uncomment next line
             // nb = 42;
@@ -260,9 +313,79 @@ public class Scanette {
             return 1;
         }
 
+        if (avantResolution != null) {
+            annulerResolus(avantResolution);
+        }
         return -1;
     }
 
+    /**
+     * Associe à la scanette un catalogue de second niveau : chaque article non trouvé
+     * dans la base locale y est recherché en arrière-plan (le scan renvoie toujours -2
+     * sans attendre), et les articles trouvés avant la transmission sont ajoutés au
+     * panier au lieu d'être signalés à la caisse comme inconnus. Si la caisse refuse
+     * la transmission, ils redeviennent inconnus jusqu'à la transmission suivante.
+     * @param r le résolveur, qui peut être partagé entre plusieurs scanettes, ou null
+     */
+    public void setResolveur(ResolveurInconnus r) {
+        resolveur = r;
+    }
+
+    /**
+     * Ajoute au panier les articles non trouvés qui ont été résolus depuis leur scan
+     * (sans attendre ceux qui ne l'ont pas encore été). Les articles résolus sont
+     * conservés par la scanette : ils restent dans le panier même si le résolveur
+     * les retire de son cache.
+     * @return les codes non trouvés avant l'ajout, ou null si aucun n'a été résolu
+     */
+    private long[] integrerResolus() {
+        long[] avant = null;
+        int restants = 0;
+        for (int i = 0; i < nbNonReconnus; i++) {
+            long ean13 = nonReconnus[i];
+            Article a = resolus.get(ean13);
+            if (a == null) {
+                a = resolveur.chercher(ean13);
+                if (a != null) {
+                    resolus.put(a);
+                }
+            }
+            if (a == null) {
+                nonReconnus[restants++] = ean13;
+            }
+            else {
+                if (avant == null) {
+                    avant = Arrays.copyOf(nonReconnus, nbNonReconnus);
+                }
+                panier.fixer(ean13, panier.quantite(ean13) + 1, a.getPrixCentimes());
+            }
+        }
+        nbNonReconnus = restants;
+        return avant;
+    }
+
+    /**
+     * Annule integrerResolus après un refus de la caisse : les articles résolus
+     * sont retirés du panier et redeviennent non trouvés (ils restent connus de
+     * la scanette pour la transmission suivante).
+     * @param avant les codes non trouvés avant l'ajout
+     */
+    private void annulerResolus(long[] avant) {
+        for (long ean13 : avant) {
+            if (resolus.get(ean13) != null) {
+                int qu = panier.quantite(ean13);
+                if (qu <= 1) {
+                    panier.retirer(ean13);
+                }
+                else {
+                    panier.fixer(ean13, qu - 1, panier.prixCentimes(ean13));
+                }
+            }
+        }
+        System.arraycopy(avant, 0, nonReconnus, 0, avant.length);
+        nbNonReconnus = avant.length;
+    }
+
     /**
      * Indique si la scanette vient de finir une relecture avec succès. 
      * @return true si la scanette est dans l'état RELECTURE_OK, false sinon.
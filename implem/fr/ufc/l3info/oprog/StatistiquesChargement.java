@@ -0,0 +1,164 @@
+package fr.ufc.l3info.oprog;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Relevé immuable d'un chargement de base de données d'articles (cf. ArticleDB.init) :
+ * durée, volume lu, lignes acceptées et rejetées (par motif), doublons et taille
+ * de la base obtenue.
+ *
+ * Les accesseurs suivent les conventions JavaBeans, ce qui permet de publier le
+ * relevé tel quel par JMX (cf. ChargementCatalogueMXBean).
+ */
+public final class StatistiquesChargement {
+
+    /** Motifs de rejet d'une ligne d'un fichier de produits */
+    public enum MotifRejet {
+        /** Nombre de colonnes différent de 3 ou 4 */
+        COLONNES,
+        /** Code ou prix non numérique */
+        NOMBRE,
+        /** Réduction qui n'est pas de la forme "N%" */
+        REDUCTION,
+        /** Prix négatif (éventuellement après réduction) ou infini */
+        PRIX_NEGATIF,
+        /** Clé de contrôle du code EAN13 incorrecte */
+        CLE_EAN13,
+        /** Ligne d'un fichier de modifications ne commençant ni par "+," ni par "-," */
+        MODIFICATION
+    }
+
+    private final String fichier;
+    private final boolean reussi;
+    private final long dureeNanos;
+    private final long octetsLus;
+    private final long octetsAnalyses;
+    private final long lignesLues;
+    private final long[] rejets;
+    private final long doublons;
+    private final int taille;
+    private final long empreinte;
+
+
+    private StatistiquesChargement(String fichier, boolean reussi, long dureeNanos, Compteurs c, long doublons, int taille, long empreinte) {
+        this.fichier = fichier;
+        this.reussi = reussi;
+        this.dureeNanos = dureeNanos;
+        this.octetsLus = c.octetsLus;
+        this.octetsAnalyses = c.octetsAnalyses;
+        this.lignesLues = c.lignes;
+        this.rejets = c.rejets.clone();
+        this.doublons = doublons;
+        this.taille = taille;
+        this.empreinte = empreinte;
+    }
+
+    /**
+     * Compteurs remplis au fil d'un chargement (cf. ChargeurCSV).
+     */
+    static final class Compteurs {
+        /** Octets du fichier (compressé le cas échéant) */
+        long octetsLus;
+        /** Octets analysés (après décompression) */
+        long octetsAnalyses;
+        /** Lignes analysées */
+        long lignes;
+        /** Lignes acceptées */
+        long articles;
+        /** Lignes rejetées, par motif */
+        final long[] rejets = new long[MotifRejet.values().length];
+
+        /**
+         * @return le relevé d'un chargement réussi
+         */
+        StatistiquesChargement reussite(String fichier, long dureeNanos, Catalogue c) {
+            return new StatistiquesChargement(fichier, true, dureeNanos, this, articles - c.taille(), c.taille(), c.empreinte());
+        }
+
+        /**
+         * @return le relevé d'un chargement qui a échoué
+         */
+        StatistiquesChargement echec(String fichier, long dureeNanos) {
+            return new StatistiquesChargement(fichier, false, dureeNanos, this, 0, 0, 0);
+        }
+    }
+
+    /** @return le fichier chargé */
+    public String getFichier() {
+        return fichier;
+    }
+
+    /** @return true si le chargement a réussi */
+    public boolean isReussi() {
+        return reussi;
+    }
+
+    /** @return la durée du chargement, en nanosecondes */
+    public long getDureeNanos() {
+        return dureeNanos;
+    }
+
+    /** @return le nombre d'octets du fichier (compressé le cas échéant) */
+    public long getOctetsLus() {
+        return octetsLus;
+    }
+
+    /** @return le nombre d'octets analysés, après décompression */
+    public long getOctetsAnalyses() {
+        return octetsAnalyses;
+    }
+
+    /** @return le nombre de lignes analysées (ou d'articles d'un catalogue compilé) */
+    public long getLignesLues() {
+        return lignesLues;
+    }
+
+    /** @return le nombre total de lignes rejetées */
+    public long getLignesRejetees() {
+        long total = 0;
+        for (long r : rejets) {
+            total += r;
+        }
+        return total;
+    }
+
+    /**
+     * @param motif un motif de rejet
+     * @return le nombre de lignes rejetées pour ce motif
+     */
+    public long getRejets(MotifRejet motif) {
+        return rejets[motif.ordinal()];
+    }
+
+    /** @return le nombre de lignes rejetées, par motif (dans l'ordre des motifs) */
+    public Map<String, Long> getRejetsParMotif() {
+        Map<String, Long> m = new LinkedHashMap<String, Long>();
+        for (MotifRejet motif : MotifRejet.values()) {
+            m.put(motif.name(), rejets[motif.ordinal()]);
+        }
+        return m;
+    }
+
+    /** @return le nombre d'articles remplacés par une ligne ultérieure de même code */
+    public long getDoublons() {
+        return doublons;
+    }
+
+    /** @return le nombre d'articles de la base obtenue (0 en cas d'échec) */
+    public int getTaille() {
+        return taille;
+    }
+
+    /** @return une estimation de la place occupée par la base dans le tas, en octets */
+    public long getEmpreinte() {
+        return empreinte;
+    }
+
+    @Override
+    public String toString() {
+        return fichier + (reussi ? " : " : " (échec) : ") + lignesLues + " lignes, " + getLignesRejetees()
+                + " rejetées, " + doublons + " doublons, " + taille + " articles, " + octetsLus + " octets lus, "
+                + empreinte + " octets en mémoire, " + (dureeNanos / 1000000) + " ms";
+    }
+}
@@ -0,0 +1,205 @@
+package fr.ufc.l3info.oprog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Table de hachage à adressage ouvert associant un code EAN (long) à un article.
+ *
+ * Les clés sont stockées directement dans un tableau de long, sans boxing, et la
+ * recherche se fait par sondage linéaire à partir d'une position obtenue par
+ * hachage de Fibonacci. Le taux de remplissage est maintenu sous 3/4, si bien
+ * qu'une recherche se termine en général dès la première case examinée.
+ *
+ * L'ordre d'insertion est conservé (comme avec un LinkedHashMap) : une clé
+ * insérée une seconde fois garde sa position et voit sa valeur remplacée.
+ */
+final class TableArticles implements Catalogue {
+
+    /** Multiplicateur du hachage de Fibonacci (2^64 / nombre d'or) */
+    private static final long FIBONACCI = 0x9E3779B97F4A7C15L;
+
+    /** Capacité minimale de la table (puissance de 2) */
+    private static final int CAPACITE_MIN = 16;
+
+    /** Clés, rangées selon leur position de hachage */
+    private long[] cles;
+    /** Articles, rangés comme les clés (null = case vide) */
+    private Article[] valeurs;
+    /** Cases occupées, dans l'ordre d'insertion */
+    private int[] ordre;
+    /** Rang d'insertion de l'article de chaque case */
+    private int[] rangs;
+    /** Nombre d'entrées */
+    private int taille;
+    /** Décalage appliqué au produit de hachage (64 - log2(capacité)) */
+    private int decalage;
+
+
+    TableArticles() {
+        this(0);
+    }
+
+    /**
+     * @param attendu nombre d'entrées attendu, pour éviter les redimensionnements
+     */
+    TableArticles(int attendu) {
+        allouer(capacitePour(attendu));
+    }
+
+    private static int capacitePour(int nb) {
+        int cap = CAPACITE_MIN;
+        while (cap - (cap >>> 2) <= nb) {
+            cap <<= 1;
+        }
+        return cap;
+    }
+
+    private void allouer(int capacite) {
+        cles = new long[capacite];
+        valeurs = new Article[capacite];
+        rangs = new int[capacite];
+        ordre = new int[capacite - (capacite >>> 2)];
+        decalage = 64 - Integer.numberOfTrailingZeros(capacite);
+    }
+
+    private int position(long cle) {
+        return hacher(cle, decalage);
+    }
+
+    /**
+     * Hachage de Fibonacci d'un code, partagé avec le format binaire (cf. CatalogueBinaire).
+     * @param cle le code à hacher
+     * @param decalage 64 - log2(nombre de cases)
+     * @return une position entre 0 et 2^(64 - decalage) - 1
+     */
+    static int hacher(long cle, int decalage) {
+        return (int) ((cle * FIBONACCI) >>> decalage);
+    }
+
+    /**
+     * Recherche l'article associé à un code.
+     * @param cle le code EAN recherché
+     * @return l'article associé, ou null s'il n'existe pas
+     */
+    public Article get(long cle) {
+        int masque = cles.length - 1;
+        for (int i = position(cle); ; i = (i + 1) & masque) {
+            Article a = valeurs[i];
+            if (a == null || cles[i] == cle) {
+                return a;
+            }
+        }
+    }
+
+    public int rang(long cle) {
+        int masque = cles.length - 1;
+        for (int i = position(cle); ; i = (i + 1) & masque) {
+            if (valeurs[i] == null) {
+                return -1;
+            }
+            if (cles[i] == cle) {
+                return rangs[i];
+            }
+        }
+    }
+
+    /**
+     * Ajoute un article, ou remplace celui qui possède le même code.
+     * @param a l'article à ajouter (non null)
+     */
+    void put(Article a) {
+        if (taille == ordre.length) {
+            agrandir();
+        }
+        long cle = a.codeEAN13;
+        int masque = cles.length - 1;
+        int i = position(cle);
+        while (valeurs[i] != null) {
+            if (cles[i] == cle) {
+                valeurs[i] = a;
+                return;
+            }
+            i = (i + 1) & masque;
+        }
+        cles[i] = cle;
+        valeurs[i] = a;
+        rangs[i] = taille;
+        ordre[taille++] = i;
+    }
+
+    /**
+     * Vide la table (la capacité est conservée) : O(nombre d'entrées).
+     */
+    void vider() {
+        for (int i = 0; i < taille; i++) {
+            valeurs[ordre[i]] = null;
+        }
+        taille = 0;
+    }
+
+    private void agrandir() {
+        long[] anciennesCles = cles;
+        Article[] anciennesValeurs = valeurs;
+        int[] ancienOrdre = ordre;
+        int nb = taille;
+        allouer(cles.length << 1);
+        taille = 0;
+        for (int k = 0; k < nb; k++) {
+            int j = ancienOrdre[k];
+            long cle = anciennesCles[j];
+            int masque = cles.length - 1;
+            int i = position(cle);
+            while (valeurs[i] != null) {
+                i = (i + 1) & masque;
+            }
+            cles[i] = cle;
+            valeurs[i] = anciennesValeurs[j];
+            rangs[i] = taille;
+            ordre[taille++] = i;
+        }
+    }
+
+    /**
+     * @return le nombre d'articles de la table
+     */
+    public int taille() {
+        return taille;
+    }
+
+    /**
+     * @param rang rang d'insertion, entre 0 et taille()-1
+     * @return l'article inséré au rang donné
+     */
+    public Article article(int rang) {
+        return valeurs[ordre[rang]];
+    }
+
+    /**
+     * La table n'est pas triée : parcours de tous les articles (O(n)), puis tri de ceux de la plage.
+     */
+    public List<Article> entre(long min, long max) {
+        ArrayList<Article> l = new ArrayList<Article>();
+        for (int i = 0; i < taille; i++) {
+            Article a = valeurs[ordre[i]];
+            if (a.codeEAN13 >= min && a.codeEAN13 < max) {
+                l.add(a);
+            }
+        }
+        Collections.sort(l);
+        return Collections.unmodifiableList(l);
+    }
+
+    /**
+     * Estimation : tableaux de la table, plus environ 80 octets par article (objet
+     * Article et chaîne du nom) et un octet par caractère du nom.
+     */
+    public long empreinte() {
+        long total = 20L * cles.length + 4L * ordre.length;
+        for (int i = 0; i < taille; i++) {
+            total += 80 + valeurs[ordre[i]].nom.length();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,42 @@
+package fr.ufc.l3info.oprog;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Plage de rangs d'un catalogue rangé par ordre croissant de code (par exemple
+ * tous les produits d'un même préfixe d'entreprise GS1, cf. Catalogue.entre),
+ * vue comme une liste non modifiable.
+ *
+ * Rien n'est recopié : chaque lecture d'un élément construit l'article de ce rang
+ * (cf. Catalogue.article), si bien que seuls les articles effectivement lus sont
+ * construits, et que deux lectures du même élément renvoient deux objets égaux.
+ */
+final class VueTriee extends AbstractList<Article> implements RandomAccess {
+
+    private final Catalogue catalogue;
+    private final int debut, fin;
+
+
+    /**
+     * @param c un catalogue dont les rangs suivent l'ordre croissant des codes
+     * @param debut le rang du premier article de la plage
+     * @param fin le rang suivant le dernier article de la plage (vide si fin <= debut)
+     */
+    VueTriee(Catalogue c, int debut, int fin) {
+        this.catalogue = c;
+        this.debut = debut;
+        this.fin = Math.max(debut, fin);
+    }
+
+    public Article get(int i) {
+        if (i < 0 || i >= size()) {
+            throw new IndexOutOfBoundsException("Indice : " + i + ", taille : " + size());
+        }
+        return catalogue.article(debut + i);
+    }
+
+    public int size() {
+        return fin - debut;
+    }
+}
@@ -0,0 +1,25 @@
+#!/usr/bin/env bash
+
+# Rebuilds ScanetteTestReplay.jar (here and in ../lib) from the sources in src/.
+# The replay classes are compiled against the reference scanette.jar, so that they
+# only use its public API and can be run on every scanette-mu*.jar mutant.
+# Run it from this directory after any change in src/ (requires a JDK >= 9).
+set -e
+
+BUILD=$(mktemp -d)
+trap 'rm -rf "$BUILD"' EXIT
+
+mkdir "$BUILD/classes"
+javac --release 8 -encoding UTF-8 -nowarn \
+    -cp "scanette.jar:../lib/json-simple.jar:../lib/junit-4.12.jar" \
+    -d "$BUILD/classes" src/*.java
+
+cat > "$BUILD/MANIFEST.MF" <<EOF
+Class-Path: junit-4.12.jar json-simple.jar
+Main-Class: fr.philae.ScanetteTraceExecutor
+EOF
+cp ../lib/junit-4.12.jar ../lib/json-simple.jar "$BUILD/classes"
+
+jar cfm ScanetteTestReplay.jar "$BUILD/MANIFEST.MF" -C "$BUILD/classes" .
+cp ScanetteTestReplay.jar ../lib/ScanetteTestReplay.jar
+echo "ScanetteTestReplay.jar rebuilt (and copied into ../lib)"
@@ -15,7 +15,8 @@ For each <input>.csv file, the detailed outputs of the individual mutation runs
 go into a subdirectory called <input>. 
 
 NOTE: you need to run it in this directory, as the script relies on finding:
- * all the necessary *.jar files in ../lib
+ * all the necessary *.jar files in ../lib (ScanetteTestReplay.jar is rebuilt from src/
+   by ./build_replay_jar.sh, which also copies it there)
  * all the Scanette *.class files either in ../out/production/scanette (IntelliJ puts them there
    when you build the project) or in ../implem (if you compile them yourself with javac)
  * all the Scanette JUnit test *.class files either in ../out/test/scanette (IntelliJ)
@@ -102,7 +103,7 @@ def retChar(returnCode: int) -> str:
     return rc
 
 def executeCsvFile(jar_name: str, csv_file: Path, output_dir: Path) -> str:
-    """Execute jar_name (typically a mutant) on test case csv_file.
+    """Execute jar_name (typically a mutant) on test case csv_file (or its compiled trace).
 
     Returns a letter corresponding to the return code ('.' means mutant was killed.)
     Detailed results (stdout and stderr) are stored in `output_dir` directory.
@@ -118,6 +119,39 @@ def executeCsvFile(jar_name: str, csv_file: Path, output_dir: Path) -> str:
             return retChar(returnCode)
 
 
+def compile_trace(csv_file: Path, output_dir: Path) -> Path:
+    """Compile csv_file once into a binary trace (see fr.philae.TraceCompiler).
+
+    The mutant runs then replay the compiled trace instead of parsing the CSV text
+    again each time. The compiled trace records a checksum of csv_file, so it is
+    rejected if it gets out of date.
+    Returns the compiled trace (in `output_dir`), or csv_file itself if it could not be
+    compiled (e.g. with an older ScanetteTestReplay.jar, without TraceCompiler: rebuild
+    it with build_replay_jar.sh). A warning is printed in that case, as every mutant
+    run then parses the CSV text again.
+    """
+    compiled = output_dir / (csv_file.name + ".ctrace")
+    cp = CLASSPATH_SEP.join(otherJarsNames)
+    args = ["java", "-cp", cp, "fr.philae.TraceCompiler", str(csv_file), str(compiled)]
+    log = output_dir / "result_compile.txt"
+    with open(log, "w") as results:
+        proc = subprocess.Popen(args, stderr=subprocess.STDOUT, stdout=results)
+        proc.communicate()
+    if proc.returncode == 0 and compiled.exists():
+        return compiled
+    output = log.read_text()
+    if "TraceCompiler" in output and ("ClassNotFoundException" in output
+                                      or "Could not find or load main class" in output):
+        reason = ("fr.philae.TraceCompiler is missing from ScanetteTestReplay.jar (stale jar?); "
+                  "run ./build_replay_jar.sh to rebuild it")
+    else:
+        reason = f"TraceCompiler failed with return code {proc.returncode}, see {log}"
+    print(f"\nWARNING: {csv_file} could not be compiled into a binary trace: {reason}.", flush=True)
+    print(f"WARNING: falling back to replaying {csv_file} as text on every mutant (slower, same results).",
+          flush=True)
+    return csv_file
+
+
 # %%
 
 def parse_jumble_results(output: str, name: str) -> Tuple[int, int, str, List[str]]:
@@ -376,9 +410,10 @@ def run_mutants(name: str, csv_file: Path, outdir: Path) -> Tuple[int, int]:
         total = HAND_MUTANTS
         if USE_HAND:
             summary = []
+            trace = compile_trace(csv_file, outdir)  # parsed once for all the mutants
             for m in range(1, total + 1):
                 mutant = f"scanette-mu{m}.jar"
-                result = executeCsvFile(mutant, csv_file, outdir)
+                result = executeCsvFile(mutant, trace, outdir)
                 summary.append(result)
                 if result in [".", "r"]:
                     score += 1
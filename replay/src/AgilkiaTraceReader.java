@@ -0,0 +1,213 @@
+package fr.philae;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ContentHandler;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+
+/**
+ * Pull-style reader of Agilkia trace sets:
+ * <pre>{ ..., "traces": [ { ..., "events": [ {event}, {event}, ... ] }, ... ] }</pre>
+ * Events are returned one at a time, as soon as they have been read. Only the
+ * current event is built in memory (as a JSONObject), whatever the size of the file.
+ *
+ * The json-simple SAX-like parser is used with its resume mode: the handler
+ * suspends the parsing at the end of each event, and the next call resumes it.
+ */
+final class AgilkiaTraceReader implements Closeable {
+
+    private final Reader reader;
+    private final JSONParser parser = new JSONParser();
+    private final Handler handler = new Handler();
+    private boolean started = false;
+
+
+    /**
+     * @param reader the content of the trace set (closed by close())
+     */
+    AgilkiaTraceReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Reads the next event of the trace set.
+     * @return the event, or null at the end of the trace set
+     * @throws IOException if the trace set cannot be read
+     * @throws ParseException if it is not valid JSON
+     */
+    JSONObject nextEvent() throws IOException, ParseException {
+        while (handler.event == null && !handler.finished) {
+            parser.parse(reader, handler, started);
+            started = true;
+        }
+        JSONObject e = handler.event;
+        handler.event = null;
+        return e;
+    }
+
+    /**
+     * @return the number of traces started so far (the current trace included)
+     */
+    int getTraceCount() {
+        return handler.traces;
+    }
+
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Extracts the data of an event replayed by ScanetteAdapter.
+     * @param event an event
+     * @return the object, the action, the input parameter (null if none),
+     *         the output status ("?" if none) and the session (null if none)
+     */
+    static String[] fields(JSONObject event) {
+        String op = event.get("action").toString();
+        String input  = null;
+        JSONObject inputs = (JSONObject) event.get("inputs");
+        if (! inputs.isEmpty()) {
+            input = inputs.get("param").toString();
+        }
+        String output = "?";
+        JSONObject outputs = (JSONObject) event.get("outputs");
+        if (! outputs.isEmpty()) {
+            output = outputs.get("Status").toString();
+        }
+        JSONObject meta = (JSONObject) event.get("meta_data");
+        String objet = meta.get("object").toString();
+        Object session = meta.get("sessionID");
+        return new String[] { objet, op, input, output, (session == null) ? null : session.toString() };
+    }
+
+
+    /**
+     * Follows the path from the root to the current value, and builds the events
+     * found at traces[].events[].
+     */
+    private static final class Handler implements ContentHandler {
+
+        /** Path outside of the events: keys of the enclosing entries, ARRAY for array elements */
+        private final ArrayList<String> path = new ArrayList<String>();
+        /** Containers of the event being built (empty outside of an event) */
+        private final ArrayList<Object> containers = new ArrayList<Object>();
+        /** Keys of the entries of the event being built */
+        private final ArrayList<String> keys = new ArrayList<String>();
+
+        private static final String ARRAY = "[]";
+
+        JSONObject event;
+        boolean finished = false;
+        int traces = 0;
+
+        /** @return true if the path is traces[], then events[] if inTrace */
+        private boolean at(boolean inTrace) {
+            int n = inTrace ? 4 : 2;
+            return path.size() == n && path.get(0).equals("traces") && path.get(1) == ARRAY
+                    && (!inTrace || (path.get(2).equals("events") && path.get(3) == ARRAY));
+        }
+
+        private boolean building() {
+            return !containers.isEmpty();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void attach(Object value) {
+            Object parent = containers.get(containers.size() - 1);
+            if (parent instanceof JSONObject) {
+                ((JSONObject) parent).put(keys.get(keys.size() - 1), value);
+            }
+            else {
+                ((JSONArray) parent).add(value);
+            }
+        }
+
+        public void startJSON() {
+        }
+
+        public void endJSON() {
+            finished = true;
+        }
+
+        public boolean startObject() {
+            if (building()) {
+                JSONObject o = new JSONObject();
+                attach(o);
+                containers.add(o);
+            }
+            else if (at(true)) {
+                containers.add(new JSONObject());
+            }
+            else if (at(false)) {
+                traces++;
+            }
+            return true;
+        }
+
+        public boolean endObject() {
+            if (building()) {
+                Object o = containers.remove(containers.size() - 1);
+                if (!building()) {
+                    event = (JSONObject) o;
+                    return false;   // suspend: the event is ready
+                }
+            }
+            return true;
+        }
+
+        public boolean startObjectEntry(String key) {
+            if (building()) {
+                keys.add(key);
+            }
+            else {
+                path.add(key);
+            }
+            return true;
+        }
+
+        public boolean endObjectEntry() {
+            if (building()) {
+                keys.remove(keys.size() - 1);
+            }
+            else {
+                path.remove(path.size() - 1);
+            }
+            return true;
+        }
+
+        public boolean startArray() {
+            if (building()) {
+                JSONArray a = new JSONArray();
+                attach(a);
+                containers.add(a);
+            }
+            else {
+                path.add(ARRAY);
+            }
+            return true;
+        }
+
+        public boolean endArray() {
+            if (building()) {
+                containers.remove(containers.size() - 1);
+            }
+            else {
+                path.remove(path.size() - 1);
+            }
+            return true;
+        }
+
+        public boolean primitive(Object value) {
+            if (building()) {
+                attach(value);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,423 @@
+package fr.philae;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Compiled trace: a CSV or Agilkia JSON trace turned into a compact binary stream
+ * by TraceCompiler, so that it can be replayed many times (e.g. once per mutant)
+ * without being parsed again.
+ *
+ * Header: magic, version, source format, then the path, length, modification time
+ * and CRC-32 of the source trace, to detect a compiled trace that is stale.
+ * Body: a sequence of records, each starting with a tag:
+ * <ul>
+ *     <li>NAME: a new object or cashier name (UTF), whose index is the number of names so far;</li>
+ *     <li>PROGRESS: a new session (CSV) or trace (JSON), for the progress dots;</li>
+ *     <li>EVENT: opcode (see Operation), line increment, object index, parameter
+ *         (EAN code, cashier index or amount, depending on the operation) and expected
+ *         result (zigzag varint, or double for payer);</li>
+ *     <li>RAW: an event that cannot be compiled (unknown operation, parameter or result
+ *         that is not a number...), kept as strings to be replayed as in the source;</li>
+ *     <li>END, followed by the CRC-32 of everything before it.</li>
+ * </ul>
+ * A compiled trace is entirely checked (CRC-32) when it is opened, before any replay.
+ */
+final class CompiledTrace implements Closeable {
+
+    /** Extension of compiled traces */
+    static final String EXTENSION = ".ctrace";
+
+    private static final int MAGIC = 0x53435452;   // "SCTR"
+    private static final int VERSION = 1;
+
+    /** Formats of the source trace */
+    static final int CSV = 0, JSON = 1;
+
+    /** Record tags */
+    static final int END = 0, NAME = 1, PROGRESS = 2, EVENT = 3, RAW = 4;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+
+    private final DataInputStream in;
+    private final int format;
+    private final File source;
+    private final long sourceLength, sourceModified;
+    private final int sourceChecksum;
+    private final ArrayList<String> names = new ArrayList<String>();
+
+    /** Current record (EVENT or RAW) */
+    int line;
+    Operation operation;
+    String object;
+    /** Index of the object among the names of the trace (EVENT records) */
+    int objectIndex;
+    long code;
+    String name;
+    /** Index of the cashier among the names of the trace (EVENT records of transmission) */
+    int nameIndex;
+    double amount;
+    double result;
+    String rawOperation;
+    String[] rawParams;
+    String rawResult;
+
+
+    private CompiledTrace(DataInputStream in) throws IOException {
+        this.in = in;
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not a compiled trace");
+        }
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("unsupported compiled trace version " + version);
+        }
+        format = in.readUnsignedByte();
+        source = new File(in.readUTF());
+        sourceLength = in.readLong();
+        sourceModified = in.readLong();
+        sourceChecksum = in.readInt();
+    }
+
+    /**
+     * Opens a compiled trace, after checking its CRC-32.
+     * @param f the compiled trace
+     * @return the trace, positioned on its first record
+     * @throws IOException if the file cannot be read, or is not a valid compiled trace
+     */
+    static CompiledTrace open(File f) throws IOException {
+        long length = f.length();
+        if (length < 4) {
+            throw new IOException(f + " is not a compiled trace");
+        }
+        CRC32 crc = new CRC32();
+        DataInputStream check = new DataInputStream(new FileInputStream(f));
+        try {
+            byte[] buf = new byte[BUFFER_SIZE];
+            long remaining = length - 4;
+            while (remaining > 0) {
+                int n = check.read(buf, 0, (int) Math.min(buf.length, remaining));
+                if (n < 0) {
+                    throw new EOFException();
+                }
+                crc.update(buf, 0, n);
+                remaining -= n;
+            }
+            if (check.readInt() != (int) crc.getValue()) {
+                throw new IOException(f + " is corrupted (wrong checksum)");
+            }
+        }
+        finally {
+            check.close();
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), BUFFER_SIZE));
+        try {
+            return new CompiledTrace(in);
+        }
+        catch (IOException e) {
+            in.close();
+            throw new IOException(f + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return CSV or JSON
+     */
+    int getFormat() {
+        return format;
+    }
+
+    /**
+     * @return the trace this one has been compiled from
+     */
+    File getSource() {
+        return source;
+    }
+
+    /**
+     * Tells whether the source trace has changed since the compilation. The source
+     * is only read again (to compute its checksum) if its length or modification
+     * time has changed.
+     * @return true if the source exists and its content differs from the compiled one
+     * @throws IOException if the source cannot be read
+     */
+    boolean isStale() throws IOException {
+        if (!source.isFile()) {
+            return false;   // cannot be checked
+        }
+        if (source.length() == sourceLength && source.lastModified() == sourceModified) {
+            return false;
+        }
+        return source.length() != sourceLength || checksum(source) != sourceChecksum;
+    }
+
+    /**
+     * Reads the next record. NAME records are handled here; for EVENT and RAW
+     * records, the fields of the event are updated.
+     * @return the tag of the record: PROGRESS, EVENT, RAW, or END at the end of the trace
+     * @throws IOException if the trace cannot be read
+     */
+    int next() throws IOException {
+        while (true) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case NAME:
+                    names.add(in.readUTF());
+                    break;
+                case PROGRESS:
+                case END:
+                    return tag;
+                case EVENT:
+                    operation = Operation.of(in.readUnsignedByte());
+                    if (operation == null) {
+                        throw new IOException("unknown opcode in compiled trace");
+                    }
+                    line += readVarInt(in);
+                    objectIndex = readVarInt(in);
+                    object = names.get(objectIndex);
+                    if (operation.hasCode()) {
+                        code = in.readLong();
+                    }
+                    else if (operation == Operation.TRANSMISSION) {
+                        nameIndex = readVarInt(in);
+                        name = names.get(nameIndex);
+                    }
+                    else if (operation == Operation.PAYER) {
+                        amount = in.readDouble();
+                    }
+                    if (operation == Operation.PAYER) {
+                        result = in.readDouble();
+                    }
+                    else if (operation != Operation.ABANDON) {
+                        int z = readVarInt(in);
+                        result = (z >>> 1) ^ -(z & 1);
+                    }
+                    return tag;
+                case RAW:
+                    line += readVarInt(in);
+                    object = in.readUTF();
+                    rawOperation = in.readUTF();
+                    rawParams = new String[readVarInt(in)];
+                    for (int i = 0; i < rawParams.length; i++) {
+                        rawParams[i] = in.readUTF();
+                    }
+                    rawResult = in.readUTF();
+                    return tag;
+                default:
+                    throw new IOException("unknown record in compiled trace");
+            }
+        }
+    }
+
+    /**
+     * @return the number of names (objects and cashiers) read so far
+     */
+    int getNameCount() {
+        return names.size();
+    }
+
+    /**
+     * @param i an index of name, lower than getNameCount()
+     * @return the name
+     */
+    String getName(int i) {
+        return names.get(i);
+    }
+
+    /**
+     * @return the parameter of the current EVENT record as written in a trace, or null if none
+     */
+    String param() {
+        if (operation.hasCode()) {
+            return Long.toString(code);
+        }
+        if (operation == Operation.TRANSMISSION) {
+            return name;
+        }
+        if (operation == Operation.PAYER) {
+            return Double.toString(amount);
+        }
+        return null;
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+
+
+    /**
+     * @param f a file
+     * @return the CRC-32 of its content
+     * @throws IOException if it cannot be read
+     */
+    static int checksum(File f) throws IOException {
+        CRC32 crc = new CRC32();
+        InputStream is = new FileInputStream(f);
+        try {
+            byte[] buf = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = is.read(buf)) > 0) {
+                crc.update(buf, 0, n);
+            }
+        }
+        finally {
+            is.close();
+        }
+        return (int) crc.getValue();
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int v = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (b & 0x7f) << shift;
+            if (b < 0x80) {
+                return v;
+            }
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, int v) throws IOException {
+        while ((v & ~0x7f) != 0) {
+            out.writeByte((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+
+    /**
+     * Writer of compiled traces.
+     */
+    static final class Writer implements Closeable {
+
+        private final CRC32 crc = new CRC32();
+        private final DataOutputStream out;
+        private final HashMap<String, Integer> names = new HashMap<String, Integer>();
+        private int line = 0;
+
+        /**
+         * Creates a compiled trace and writes its header.
+         * @param dest the compiled trace
+         * @param source the source trace
+         * @param format CSV or JSON
+         * @throws IOException if the compiled trace cannot be written, or the source read
+         */
+        Writer(File dest, File source, int format) throws IOException {
+            out = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(dest), BUFFER_SIZE), crc));
+            try {
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                out.writeByte(format);
+                out.writeUTF(source.getCanonicalPath());
+                out.writeLong(source.length());
+                out.writeLong(source.lastModified());
+                out.writeInt(checksum(source));
+            }
+            catch (IOException e) {
+                out.close();
+                throw e;
+            }
+        }
+
+        /** Index of a name, written in a NAME record on its first use */
+        private int name(String s) throws IOException {
+            Integer i = names.get(s);
+            if (i == null) {
+                i = names.size();
+                names.put(s, i);
+                out.writeByte(NAME);
+                out.writeUTF(s);
+            }
+            return i;
+        }
+
+        /**
+         * Writes a PROGRESS record.
+         */
+        void progress() throws IOException {
+            out.writeByte(PROGRESS);
+        }
+
+        /**
+         * Writes an EVENT record. Only the parameter used by the operation is written.
+         * @param line the line of the event in the source
+         * @param op the operation
+         * @param obj the object
+         * @param code the EAN code (scanner, ajouter, supprimer)
+         * @param cashier the cashier (transmission)
+         * @param amount the amount (payer)
+         * @param result the expected result (an int, except for payer)
+         */
+        void event(int line, Operation op, String obj, long code, String cashier, double amount, double result) throws IOException {
+            int o = name(obj);
+            int c = (op == Operation.TRANSMISSION) ? name(cashier) : 0;
+            out.writeByte(EVENT);
+            out.writeByte(op.ordinal());
+            writeVarInt(out, line - this.line);
+            this.line = line;
+            writeVarInt(out, o);
+            if (op.hasCode()) {
+                out.writeLong(code);
+            }
+            else if (op == Operation.TRANSMISSION) {
+                writeVarInt(out, c);
+            }
+            else if (op == Operation.PAYER) {
+                out.writeDouble(amount);
+            }
+            if (op == Operation.PAYER) {
+                out.writeDouble(result);
+            }
+            else if (op != Operation.ABANDON) {
+                int r = (int) result;
+                writeVarInt(out, (r << 1) ^ (r >> 31));
+            }
+        }
+
+        /**
+         * Writes a RAW record.
+         */
+        void raw(int line, String obj, String op, String[] params, String res) throws IOException {
+            out.writeByte(RAW);
+            writeVarInt(out, line - this.line);
+            this.line = line;
+            out.writeUTF(obj);
+            out.writeUTF(op);
+            writeVarInt(out, params.length);
+            for (String p : params) {
+                out.writeUTF(p);
+            }
+            out.writeUTF(res);
+        }
+
+        /**
+         * Writes the END record and the checksum, and closes the compiled trace.
+         */
+        public void close() throws IOException {
+            try {
+                out.writeByte(END);
+                out.flush();
+                out.writeInt((int) crc.getValue());
+            }
+            finally {
+                out.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package fr.philae;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reader of CSV traces that tokenises the bytes of the file in place, one line
+ * at a time, into a reusable TraceEvent.
+ *
+ * Plain files are memory-mapped by windows of WINDOW_SIZE bytes (a window starts
+ * at the beginning of a line, so traces larger than 2 GB are supported);
+ * gzip-compressed files (.gz) are inflated into a buffer that is refilled in place.
+ * No String is created per line, apart from names seen for the first time.
+ */
+final class CsvTraceReader implements Closeable {
+
+    /** Size of the mapped windows of plain files */
+    static final int WINDOW_SIZE = 64 << 20;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long size;
+    private final InputStream gzip;
+    private final InternTable names = new InternTable();
+
+    private ByteBuffer buf;
+    /** Position in the file of the first byte of buf (plain files) */
+    private long windowStart = 0;
+    /** Start of the next line in buf */
+    private int pos = 0;
+    private int lineNumber = 0;
+
+
+    /**
+     * Opens a trace.
+     * @param f the trace file, possibly gzip-compressed (.gz)
+     * @throws IOException if the file cannot be opened
+     */
+    CsvTraceReader(File f) throws IOException {
+        if (f.getName().endsWith(ScanetteTraceExecutor.GZIP_SUFFIX)) {
+            file = null;
+            channel = null;
+            size = -1;
+            FileInputStream in = new FileInputStream(f);
+            try {
+                gzip = new GZIPInputStream(in, ScanetteTraceExecutor.GZIP_BUFFER_SIZE);
+            }
+            catch (IOException e) {
+                in.close();
+                throw e;
+            }
+            buf = ByteBuffer.allocate(ScanetteTraceExecutor.GZIP_BUFFER_SIZE);
+            buf.limit(0);
+        }
+        else {
+            gzip = null;
+            file = new RandomAccessFile(f, "r");
+            channel = file.getChannel();
+            size = channel.size();
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(WINDOW_SIZE, size));
+        }
+    }
+
+    /**
+     * Reads the next line of the trace.
+     * @param e the record to fill
+     * @return false at the end of the trace
+     * @throws IOException if the trace cannot be read
+     * @throws IllegalArgumentException if the line is malformed (see TraceEvent.parse)
+     */
+    boolean next(TraceEvent e) throws IOException {
+        int eol = pos;
+        while (true) {
+            while (eol < buf.limit() && buf.get(eol) != '\n') {
+                eol++;
+            }
+            if (eol < buf.limit()) {
+                break;
+            }
+            int scanned = eol - pos;
+            if (!fill()) {
+                if (pos >= buf.limit()) {
+                    return false;
+                }
+                eol = buf.limit();  // last line, without a line feed
+                break;
+            }
+            eol = pos + scanned;
+        }
+        int end = (eol > pos && buf.get(eol - 1) == '\r') ? eol - 1 : eol;
+        int start = pos;
+        pos = eol + 1;
+        e.parse(buf, start, end, ++lineNumber, names);
+        return true;
+    }
+
+    /**
+     * Makes more bytes available after the unread bytes [pos, limit[, which are
+     * moved to the start of the buffer.
+     * @return false if the end of the trace has been reached
+     */
+    private boolean fill() throws IOException {
+        int unread = buf.limit() - pos;
+        if (gzip != null) {
+            ByteBuffer dest = buf;
+            if (pos == 0 && buf.limit() == buf.capacity()) {
+                // line longer than the buffer
+                dest = ByteBuffer.allocate(buf.capacity() * 2);
+            }
+            System.arraycopy(buf.array(), pos, dest.array(), 0, unread);
+            buf = dest;
+            pos = 0;
+            buf.limit(buf.capacity());
+            int n = gzip.read(buf.array(), unread, buf.capacity() - unread);
+            buf.limit(unread + Math.max(n, 0));
+            return n > 0;
+        }
+        long newStart = windowStart + pos;
+        if (windowStart + buf.limit() >= size) {
+            return false;
+        }
+        long length = Math.min(Math.max(WINDOW_SIZE, 2L * unread), size - newStart);
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Line too long (line " + (lineNumber + 1) + ")");
+        }
+        buf = channel.map(FileChannel.MapMode.READ_ONLY, newStart, length);
+        windowStart = newStart;
+        pos = 0;
+        return true;
+    }
+
+    public void close() throws IOException {
+        if (gzip != null) {
+            gzip.close();
+        }
+        else {
+            file.close();
+        }
+    }
+}
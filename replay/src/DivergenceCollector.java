@@ -0,0 +1,285 @@
+package fr.philae;
+
+import org.json.simple.JSONValue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Non-fatal replay (see ScanetteTraceExecutor.COLLECT_FLAG): every divergence is
+ * recorded, and the replay goes on with the events it cannot have influenced.
+ *
+ * When an event diverges (wrong result or error), its session is quarantined with
+ * all the objects it has used, since their states may now differ from the recorded
+ * ones. An event is skipped if its session is quarantined or if it uses a quarantined
+ * object; in the latter case its session is quarantined in turn, so that no divergence
+ * caused by a skipped event is reported. A quarantined object is released at the next
+ * resynchronisation point of a non-quarantined session, where its recorded state is
+ * known to be the initial one: a scanette unlocked successfully (debloquer returns 0),
+ * or a caisse receiving a successful transmission (0 or 1) from a scanette that is
+ * not quarantined, since connexion only succeeds when the caisse is waiting with an
+ * empty basket. It is then replaced by a new instance.
+ */
+final class DivergenceCollector {
+
+    /** Adapter replaying the events (unknown operations are not fatal) */
+    final ScanetteAdapter adapter = new ScanetteAdapter(false);
+
+    private final HashMap<String, Session> sessions = new HashMap<String, Session>();
+    /** Sessions with divergences or skipped events, in order of first occurrence */
+    private final ArrayList<Session> affected = new ArrayList<Session>();
+    /** Quarantined objects, by handle */
+    private boolean[] quarantined = new boolean[16];
+
+    private long events = 0, skipped = 0, divergences = 0, errors = 0;
+
+
+    /**
+     * Report of a session.
+     */
+    private static final class Session {
+        final String id;
+        /** Handles of the objects used by the session */
+        int[] objects = new int[4];
+        int nbObjects = 0;
+        boolean quarantined = false;
+        /** Quarantined object that has caused the quarantine of the session (null if it has diverged itself) */
+        String quarantinedBy;
+        long skipped = 0;
+        final ArrayList<Map<String, Object>> divergences = new ArrayList<Map<String, Object>>();
+        boolean reported = false;
+
+        Session(String id) {
+            this.id = id;
+        }
+
+        void use(int h) {
+            for (int i = 0; i < nbObjects; i++) {
+                if (objects[i] == h) {
+                    return;
+                }
+            }
+            if (nbObjects == objects.length) {
+                objects = Arrays.copyOf(objects, nbObjects * 2);
+            }
+            objects[nbObjects++] = h;
+        }
+    }
+
+
+    private Session session(String id) {
+        if (id == null) {
+            id = "?";
+        }
+        Session s = sessions.get(id);
+        if (s == null) {
+            s = new Session(id);
+            sessions.put(id, s);
+        }
+        return s;
+    }
+
+    private boolean isQuarantined(int h) {
+        return h >= 0 && h < quarantined.length && quarantined[h];
+    }
+
+    private void setQuarantined(int h, boolean q) {
+        if (h >= quarantined.length) {
+            quarantined = Arrays.copyOf(quarantined, Math.max(h + 1, quarantined.length * 2));
+        }
+        quarantined[h] = q;
+    }
+
+    private void quarantine(Session s, String by) {
+        s.quarantined = true;
+        s.quarantinedBy = by;
+        for (int i = 0; i < s.nbObjects; i++) {
+            setQuarantined(s.objects[i], true);
+        }
+        report(s);
+    }
+
+    private void report(Session s) {
+        if (!s.reported) {
+            s.reported = true;
+            affected.add(s);
+        }
+    }
+
+    /** Expected result of an operation returning an int, or -1 if it cannot be read */
+    private static int result(String res) {
+        if (res == null) {
+            return -1;
+        }
+        try {
+            return ScanetteAdapter.parseResult(res);
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Decides whether an event is replayed.
+     * @param session the session of the event
+     * @param op the operation (null if unknown)
+     * @param obj the handle of the object
+     * @param caisse the handle of the caisse for transmission, -1 otherwise
+     * @param res the expected result
+     * @return true if the event has to be replayed, false if it is skipped
+     */
+    boolean admit(String session, Operation op, int obj, int caisse, String res) {
+        events++;
+        Session s = session(session);
+        s.use(obj);
+        if (caisse >= 0) {
+            s.use(caisse);
+        }
+        if (!s.quarantined && isQuarantined(obj) && op == Operation.DEBLOQUER && result(res) == 0) {
+            // resynchronisation point of the scanette
+            adapter.reset(obj, true);
+            setQuarantined(obj, false);
+        }
+        if (!s.quarantined && !isQuarantined(obj) && isQuarantined(caisse) && op == Operation.TRANSMISSION) {
+            // resynchronisation point of the caisse
+            int r = result(res);
+            if (r == 0 || r == 1) {
+                adapter.reset(caisse, false);
+                setQuarantined(caisse, false);
+            }
+        }
+        if (!s.quarantined) {
+            if (isQuarantined(obj)) {
+                quarantine(s, adapter.names[obj]);
+            }
+            else if (isQuarantined(caisse)) {
+                quarantine(s, adapter.names[caisse]);
+            }
+        }
+        if (s.quarantined) {
+            // the recorded states of the objects now differ from the replayed ones
+            setQuarantined(obj, true);
+            if (caisse >= 0) {
+                setQuarantined(caisse, true);
+            }
+            s.skipped++;
+            skipped++;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Records the divergence of an event, which quarantines its session.
+     * @param line the line of the event (or its number in a JSON trace)
+     * @param session the session
+     * @param object the object
+     * @param operation the operation
+     * @param param the parameter (null if none)
+     * @param res the expected result, as written in the trace
+     * @param t the assertion failure or the error
+     */
+    void diverged(int line, String session, String object, String operation, String param, String res, Throwable t) {
+        Session s = session(session);
+        boolean assertion = t instanceof AssertionError;
+        if (assertion) {
+            divergences++;
+        }
+        else {
+            errors++;
+        }
+        LinkedHashMap<String, Object> d = new LinkedHashMap<String, Object>();
+        d.put("line", line);
+        d.put("session", s.id);
+        d.put("object", object);
+        d.put("operation", operation);
+        d.put("param", param);
+        d.put("expected", Double.isNaN(adapter.expected) ? res : format(adapter.expected));
+        d.put("actual", Double.isNaN(adapter.actual) ? null : format(adapter.actual));
+        d.put("kind", assertion ? "assertion" : "error");
+        d.put("message", t.toString());
+        s.divergences.add(d);
+        System.err.println("line " + line + ", session " + s.id + ": " + object + ", " + operation + ", [" + (param == null ? "" : param) + "], "
+                + (assertion ? "expected " + d.get("expected") + " but was " + d.get("actual") : t));
+        if (!s.quarantined) {
+            quarantine(s, null);
+        }
+    }
+
+    /**
+     * Records an event that cannot be read (it is not replayed). If its session is
+     * known, the session is quarantined; otherwise, the events that depend on it may
+     * diverge in turn.
+     * @param line the line of the event
+     * @param session its session, or null if unknown
+     * @param obj the handle of its object, or -1 if unknown
+     * @param message the description of the error
+     */
+    void malformed(int line, String session, int obj, String message) {
+        events++;
+        skipped++;
+        errors++;
+        Session s = session(session);
+        if (obj >= 0) {
+            s.use(obj);
+        }
+        LinkedHashMap<String, Object> d = new LinkedHashMap<String, Object>();
+        d.put("line", line);
+        d.put("session", s.id);
+        d.put("kind", "format");
+        d.put("message", message);
+        s.divergences.add(d);
+        s.skipped++;
+        if (session != null && !s.quarantined) {
+            quarantine(s, null);
+        }
+        report(s);
+        System.err.println("line " + line + ": " + message);
+    }
+
+    private static String format(double d) {
+        return (d == (long) d) ? Long.toString((long) d) : Double.toString(d);
+    }
+
+    /**
+     * @return 0 if no event has diverged, 1 if some results were wrong, -1 if there were only errors
+     */
+    int exitCode() {
+        return (divergences > 0) ? 1 : (errors > 0) ? -1 : 0;
+    }
+
+    /**
+     * @param trace the name of the trace
+     * @return the summary of the replay, as a JSON object
+     */
+    String summary(String trace) {
+        LinkedHashMap<String, Object> r = new LinkedHashMap<String, Object>();
+        r.put("trace", trace);
+        r.put("events", events);
+        r.put("replayed", events - skipped);
+        r.put("skipped", skipped);
+        r.put("divergences", divergences);
+        r.put("errors", errors);
+        ArrayList<String> q = new ArrayList<String>();
+        for (int h = 0; h < quarantined.length; h++) {
+            if (quarantined[h]) {
+                q.add(adapter.names[h]);
+            }
+        }
+        r.put("quarantined", q);
+        ArrayList<Map<String, Object>> ss = new ArrayList<Map<String, Object>>();
+        for (Session s : affected) {
+            LinkedHashMap<String, Object> m = new LinkedHashMap<String, Object>();
+            m.put("session", s.id);
+            m.put("quarantinedBy", s.quarantinedBy);
+            m.put("skipped", s.skipped);
+            m.put("divergences", s.divergences);
+            ss.add(m);
+        }
+        r.put("sessions", ss);
+        return JSONValue.toJSONString(r);
+    }
+}
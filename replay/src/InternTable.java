@@ -0,0 +1,86 @@
+package fr.philae;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Canonical strings for byte ranges (object names, operations, session ids of a trace).
+ * A name is decoded once, on its first occurrence; later occurrences are found by
+ * hashing and comparing the bytes in place, without allocating.
+ */
+final class InternTable {
+
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    private byte[][] keys = new byte[64][];
+    private String[] values = new String[64];
+    private int[] hashes = new int[64];
+    private int size = 0;
+
+    /**
+     * @param buf the buffer holding the name
+     * @param start the first byte of the name
+     * @param end the byte following the name
+     * @return the canonical string for the bytes [start, end[
+     */
+    String intern(ByteBuffer buf, int start, int end) {
+        int h = 1;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + buf.get(i);
+        }
+        int mask = keys.length - 1;
+        for (int i = (h * 0x9E3779B9) >>> 1 & mask; ; i = (i + 1) & mask) {
+            byte[] k = keys[i];
+            if (k == null) {
+                byte[] bytes = new byte[end - start];
+                for (int j = 0; j < bytes.length; j++) {
+                    bytes[j] = buf.get(start + j);
+                }
+                String s = new String(bytes, CHARSET);
+                keys[i] = bytes;
+                values[i] = s;
+                hashes[i] = h;
+                if (++size * 2 > keys.length) {
+                    grow();
+                }
+                return s;
+            }
+            if (hashes[i] == h && sameBytes(k, buf, start, end)) {
+                return values[i];
+            }
+        }
+    }
+
+    private static boolean sameBytes(byte[] k, ByteBuffer buf, int start, int end) {
+        if (k.length != end - start) {
+            return false;
+        }
+        for (int j = 0; j < k.length; j++) {
+            if (k[j] != buf.get(start + j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void grow() {
+        byte[][] oldKeys = keys;
+        String[] oldValues = values;
+        int[] oldHashes = hashes;
+        keys = new byte[oldKeys.length * 2][];
+        values = new String[keys.length];
+        hashes = new int[keys.length];
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != null) {
+                int i = (oldHashes[j] * 0x9E3779B9) >>> 1 & mask;
+                while (keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+                hashes[i] = oldHashes[j];
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package fr.philae;
+
+import java.util.HashMap;
+
+/**
+ * Operations of the traces. The ordinal of an operation is its opcode in
+ * compiled traces (see CompiledTrace): new operations must be added at the end.
+ */
+enum Operation {
+    DEBLOQUER("debloquer"),
+    SCANNER("scanner"),
+    TRANSMISSION("transmission"),
+    OUVRIR_SESSION("ouvrirSession"),
+    FERMER_SESSION("fermerSession"),
+    AJOUTER("ajouter"),
+    PAYER("payer"),
+    ABANDON("abandon"),
+    SUPPRIMER("supprimer");
+
+    private static final Operation[] VALUES = values();
+    private static final HashMap<String, Operation> BY_NAME = new HashMap<String, Operation>();
+    static {
+        for (Operation op : VALUES) {
+            BY_NAME.put(op.name, op);
+        }
+    }
+
+    /** Name of the operation in the traces */
+    final String name;
+
+    Operation(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param name the name of an operation in a trace
+     * @return the operation, or null if it is unknown
+     */
+    static Operation of(String name) {
+        return BY_NAME.get(name);
+    }
+
+    /**
+     * @param opcode an opcode of a compiled trace
+     * @return the operation, or null if the opcode is unknown
+     */
+    static Operation of(int opcode) {
+        return (opcode >= 0 && opcode < VALUES.length) ? VALUES[opcode] : null;
+    }
+
+    /** @return true if the parameter of the operation is an EAN code */
+    boolean hasCode() {
+        return this == SCANNER || this == AJOUTER || this == SUPPRIMER;
+    }
+}
@@ -4,6 +4,7 @@ import fr.ufc.l3info.oprog.*;
 
 import org.junit.Assert;
 
+import java.util.Arrays;
 import java.util.HashMap;
 
 import static org.junit.Assert.assertEquals;
@@ -21,167 +22,293 @@ public class ScanetteAdapter {
     final String PRODUCTS_SCANETTE = "resources/produitsScanette.csv";
     final String PRODUCTS_CAISSE = "resources/produitsCaisse.csv";
 
-    /** Set of scanettes */
-    HashMap<String, Scanette> scanettes;
+    /** Handles of the objects: dense indexes in the following arrays, by (trimmed) name */
+    HashMap<String, Integer> handles;
 
-    /** Set of caisses */
-    HashMap<String, Caisse> caisses;
+    /** Names of the objects, by handle */
+    String[] names;
+
+    /** Set of scanettes, by handle (null if the object is not a scanette) */
+    Scanette[] scanettes;
+
+    /** Set of caisses, by handle (null if the object is not a caisse) */
+    Caisse[] caisses;
+
+    /** If false, an unknown operation throws an exception instead of ending the program */
+    final boolean fatal;
+
+    /** Expected and actual results of the last checked event (NaN if it has not been checked) */
+    double expected, actual;
 
     
     public ScanetteAdapter() {
+        this(true);
+    }
+
+    /**
+     * @param fatal false to report unknown operations by an IllegalArgumentException
+     *              instead of ending the program (see DivergenceCollector)
+     */
+    ScanetteAdapter(boolean fatal) {
+        this.fatal = fatal;
         // initialize maps
-        scanettes = new HashMap<String, Scanette>();
-        caisses = new HashMap<String, Caisse>();
+        handles = new HashMap<String, Integer>();
+        names = new String[16];
+        scanettes = new Scanette[16];
+        caisses = new Caisse[16];
     }
 
-    public void process(int line, String obj, String op, String[] params, String res) throws Exception {
-        if (op.equals("debloquer")) {
-            execDebloquer(obj, res);
-            return;
-        }
-        if (op.equals("scanner")) {
-            execScanner(obj, params, res);
-            return;
-        }
-        if (op.equals("transmission")) {
-            execTransmission(obj, params, res);
-            return;
+    /**
+     * Handle of an object, allocated on its first use.
+     * @param obj the name of the object (trimmed here)
+     * @return an index in scanettes and caisses
+     */
+    int handle(String obj) {
+        obj = obj.trim();
+        Integer h = handles.get(obj);
+        if (h == null) {
+            h = handles.size();
+            if (h == names.length) {
+                names = Arrays.copyOf(names, h * 2);
+                scanettes = Arrays.copyOf(scanettes, h * 2);
+                caisses = Arrays.copyOf(caisses, h * 2);
+            }
+            names[h] = obj;
+            handles.put(obj, h);
         }
-        if (op.equals("ouvrirSession")) {
-            execOuvrirSession(obj, res);
+        return h;
+    }
+
+    public void process(int line, String obj, String op, String[] params, String res) throws Exception {
+        expected = actual = Double.NaN;
+        Operation o = Operation.of(op);
+        if (o == null) {
+            unknownOperation(op, line);
             return;
         }
-        if (op.equals("fermerSession")) {
-            execFermerSession(obj, res);
-            return;
+        switch (o) {
+            case SCANNER:
+            case AJOUTER:
+            case SUPPRIMER:
+                process(o, handle(obj), Long.parseLong(params[0]), -1, 0, parseResult(res));
+                return;
+            case TRANSMISSION:
+                process(o, handle(obj), 0, handle(params[0]), 0, parseResult(res));
+                return;
+            case PAYER:
+                process(o, handle(obj), 0, -1, Double.parseDouble(params[0]), Double.parseDouble(res));
+                return;
+            case ABANDON:
+                // cas particulier : le résultat attendu n'est pas vérifié
+                process(o, handle(obj), 0, -1, 0, 0);
+                return;
+            default:
+                process(o, handle(obj), 0, -1, 0, parseResult(res));
         }
-        if (op.equals("ajouter")) {
-            execAjouter(obj, params, res);
+    }
+
+    /**
+     * Same as process(line, obj, op, params, res), for an event read in place by
+     * CsvTraceReader: the EAN codes and the expected results are parsed from the
+     * trace buffer directly into primitives, without intermediate strings.
+     */
+    void process(TraceEvent e) throws Exception {
+        expected = actual = Double.NaN;
+        Operation o = e.op;
+        if (o == null) {
+            unknownOperation(e.operation, e.line);
             return;
         }
-        if (op.equals("payer")) {
-            execPayer(obj, params, res);
-            return;
+        switch (o) {
+            case SCANNER:
+            case AJOUTER:
+            case SUPPRIMER:
+                process(o, handle(e.object), e.longParam(0), -1, 0, e.intResult());
+                return;
+            case TRANSMISSION:
+                process(o, handle(e.object), 0, handle(e.nameParam(0)), 0, e.intResult());
+                return;
+            case PAYER:
+                process(o, handle(e.object), 0, -1, e.doubleParam(0), e.doubleResult());
+                return;
+            case ABANDON:
+                process(o, handle(e.object), 0, -1, 0, 0);
+                return;
+            default:
+                process(o, handle(e.object), 0, -1, 0, e.intResult());
         }
+    }
 
-        // cas particuliers (opérations qui existent dans les deux objets Scanette et Caisse)
-        if (op.equals("abandon")) {
-            execAbandon(obj);
-            return;
-        }
-        if (op.equals("supprimer")) {
-            execSupprimer(obj, params, res);
-            return;
+    /**
+     * Replays an event on the objects designated by their handles (see handle(String)):
+     * only the parameter used by the operation is meaningful.
+     * @param op the operation
+     * @param obj the handle of the object
+     * @param code the EAN code (scanner, ajouter, supprimer)
+     * @param caisse the handle of the caisse (transmission)
+     * @param amount the amount (payer)
+     * @param res the expected result (an int, except for payer)
+     */
+    void process(Operation op, int obj, long code, int caisse, double amount, double res) throws Exception {
+        expected = actual = Double.NaN;
+        switch (op) {
+            case DEBLOQUER:
+                check((int) res, scanette(obj).debloquer());
+                return;
+            case SCANNER:
+                check((int) res, scanette(obj).scanner(code));
+                return;
+            case TRANSMISSION:
+                execTransmission(obj, caisse, (int) res);
+                return;
+            case OUVRIR_SESSION:
+                check((int) res, caisse(obj).ouvrirSession());
+                return;
+            case FERMER_SESSION:
+                check((int) res, caisse(obj).fermerSession());
+                return;
+            case AJOUTER:
+                check((int) res, caisse(obj).scanner(code));
+                return;
+            case PAYER:
+                expected = res;
+                actual = caisse(obj).payer(amount);
+                assertEquals(expected, actual, 0.01);
+                return;
+            case ABANDON:
+                execAbandon(obj);
+                return;
+            case SUPPRIMER:
+                execSupprimer(obj, code, (int) res);
+                return;
         }
+    }
 
+    /** Checks the result of an operation, keeping both values for the reports */
+    private void check(int expected, int actual) {
+        this.expected = expected;
+        this.actual = actual;
+        assertEquals(expected, actual);
+    }
+
+    private void unknownOperation(String op, int line) {
+        if (!fatal) {
+            throw new IllegalArgumentException("Unknown operation: " + op + " (line " + line + ")");
+        }
         System.err.println("Unknown operation: " + op + " (line " + line + ")");
         System.exit(-1);
-
     }
 
-
-    /*
-     *  Specifiques à la scanette
+    /**
+     * Forgets the scanette or the caisse of a handle: a new one will be created on
+     * its next use.
+     * @param h a handle
+     * @param scanette true for the scanette, false for the caisse
      */
-    private void execDebloquer(String sc, String res) throws Exception {
-        sc = sc.trim();
-        if (! scanettes.containsKey(sc)) {
-            scanettes.put(sc, new Scanette(PRODUCTS_SCANETTE));
+    void reset(int h, boolean scanette) {
+        if (scanette) {
+            scanettes[h] = null;
         }
-        int r = scanettes.get(sc).debloquer();
-        assertEquals((int)Double.parseDouble(res), r);
-    }
-    private void execScanner(String sc, String[] params, String res) throws Exception {
-        sc = sc.trim();
-        if (! scanettes.containsKey(sc)) {
-            scanettes.put(sc, new Scanette(PRODUCTS_SCANETTE));
+        else {
+            caisses[h] = null;
         }
-        int r = scanettes.get(sc).scanner(Long.valueOf(params[0]));
-        assertEquals((int)Double.parseDouble(res), r);
     }
 
-    private void execTransmission(String sc, String[] params, String res) throws Exception {
-        sc = sc.trim();
-        if (! scanettes.containsKey(sc)) {
-            scanettes.put(sc, new Scanette(PRODUCTS_SCANETTE));
+    /**
+     * Expected result of an operation returning an int, as (int) Double.parseDouble(res),
+     * without going through a double for the usual values (0, -1, 1.0...).
+     */
+    static int parseResult(String res) {
+        int n = res.length(), i = 0, v = 0;
+        boolean negative = n > 1 && res.charAt(0) == '-';
+        if (negative) {
+            i++;
         }
-        params[0] = params[0].trim();
-        if (! caisses.containsKey(params[0])) {
-            caisses.put(params[0], new MaCaisse(PRODUCTS_CAISSE));
+        int digits = 0;
+        for (; i < n && digits < 9; i++, digits++) {
+            char c = res.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            v = v * 10 + (c - '0');
         }
-        int resI = (int)Double.parseDouble(res);
-        ((MaCaisse) caisses.get(params[0])).THRESHOLD = (resI == 1) ? 1 : 0;
-        int r = scanettes.get(sc).transmission((MaCaisse) caisses.get(params[0]));
-        assertEquals(resI, r);
+        if (digits > 0 && (i == n || (i < n - 1 && res.charAt(i) == '.' && zeros(res, i + 1)))) {
+            return negative ? -v : v;
+        }
+        return (int) Double.parseDouble(res);
     }
 
-    /*
-     *  Specifiques à la caisse
-     */
-    private void execOuvrirSession(String c, String res) throws Exception {
-        c = c.trim();
-        if (! caisses.containsKey(c)) {
-            caisses.put(c, new MaCaisse(PRODUCTS_CAISSE));
+    private static boolean zeros(String s, int from) {
+        for (int i = from; i < s.length(); i++) {
+            if (s.charAt(i) != '0') {
+                return false;
+            }
         }
-        int r = caisses.get(c).ouvrirSession();
-        assertEquals((int)Double.parseDouble(res), r);
+        return true;
     }
-    private void execFermerSession(String c, String res) throws Exception {
-        c = c.trim();
-        if (! caisses.containsKey(c)) {
-            caisses.put(c, new MaCaisse(PRODUCTS_CAISSE));
+
+
+    /** Scanette of a handle, created on its first use */
+    private Scanette scanette(int h) throws Exception {
+        Scanette s = scanettes[h];
+        if (s == null) {
+            s = new Scanette(PRODUCTS_SCANETTE);
+            scanettes[h] = s;
         }
-        int r = caisses.get(c).fermerSession();
-        assertEquals((int)Double.parseDouble(res), r);
+        return s;
     }
-    private void execAjouter(String c, String[] params, String res) throws Exception {
-        c = c.trim();
-        if (! caisses.containsKey(c)) {
-            caisses.put(c, new MaCaisse(PRODUCTS_CAISSE));
+
+    /** Caisse of a handle, created on its first use */
+    private Caisse caisse(int h) throws Exception {
+        Caisse c = caisses[h];
+        if (c == null) {
+            c = new MaCaisse(PRODUCTS_CAISSE);
+            caisses[h] = c;
         }
-        int r = caisses.get(c).scanner(Long.valueOf(params[0]));
-        assertEquals((int)Double.parseDouble(res), r);
+        return c;
     }
-    private void execPayer(String c, String[] params, String res) throws Exception {
-        c = c.trim();
-        if (! caisses.containsKey(c)) {
-            caisses.put(c, new MaCaisse(PRODUCTS_CAISSE));
-        }
-        double r = caisses.get(c).payer(Double.valueOf(params[0]));
-        assertEquals(Double.parseDouble(res), r, 0.01);
+
+
+    /*
+     *  Specifiques à la scanette
+     */
+    private void execTransmission(int sc, int caisse, int res) throws Exception {
+        Scanette s = scanette(sc);
+        MaCaisse c = (MaCaisse) caisse(caisse);
+        c.THRESHOLD = (res == 1) ? 1 : 0;
+        int r = s.transmission(c);
+        check(res, r);
     }
 
     /*
      *  Communes à la caisse et à la scanette
      */
-    private void execAbandon(String c) throws Exception {
-        c = c.trim();
-        if (! scanettes.containsKey(c) && c.startsWith("s")) {
-            scanettes.put(c, new Scanette(PRODUCTS_SCANETTE));
+    private void execAbandon(int c) throws Exception {
+        if (scanettes[c] == null && names[c].startsWith("s")) {
+            scanette(c);
         }
-        if (scanettes.containsKey(c)) {
-            scanettes.get(c).abandon();
+        if (scanettes[c] != null) {
+            scanettes[c].abandon();
             return;
         }
-        if (! caisses.containsKey(c) && c.startsWith("c")) {
-            caisses.put(c, new MaCaisse(PRODUCTS_CAISSE));
+        if (caisses[c] == null && names[c].startsWith("c")) {
+            caisse(c);
         }
-        if (caisses.containsKey(c)) {
-            caisses.get(c).abandon();
+        if (caisses[c] != null) {
+            caisses[c].abandon();
             return;
         }
         Assert.fail();
     }
-    private void execSupprimer(String c, String[] params, String res) throws Exception {
-        c = c.trim();
-        if (scanettes.containsKey(c)) {
-            int r = scanettes.get(c).supprimer(Long.parseLong(params[0]));
-            assertEquals((int)Double.parseDouble(res), r);
+    private void execSupprimer(int c, long ean13, int res) throws Exception {
+        if (scanettes[c] != null) {
+            int r = scanettes[c].supprimer(ean13);
+            check(res, r);
             return;
         }
-        if (caisses.containsKey(c)) {
-            int r = caisses.get(c).supprimer(Long.parseLong(params[0]));
-            assertEquals((int)Double.parseDouble(res), r);
+        if (caisses[c] != null) {
+            int r = caisses[c].supprimer(ean13);
+            check(res, r);
             return;
         }
         Assert.fail();
@@ -1,15 +1,23 @@
 package fr.philae;
 
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Created with IntelliJ IDEA.
@@ -19,152 +27,601 @@ import java.util.HashSet;
  */
 public class ScanetteTraceExecutor {
 
+    /** Suffix of gzip-compressed trace files (trace.csv.gz, agilkia_trace.json.gz) */
+    static final String GZIP_SUFFIX = ".gz";
+
+    /** Size of the decompression and character buffers for compressed traces */
+    static final int GZIP_BUFFER_SIZE = 1 << 20;
+
+    /** Command-line flag selecting the parallel replay of CSV traces (see readFromCSVParallel) */
+    static final String PARALLEL_FLAG = "--parallel";
+
+    /** Command-line flag selecting the replay that collects all the divergences (see readCollectingDivergences) */
+    static final String COLLECT_FLAG = "--all";
 
     public static void main(String[] args) throws IOException {
 
         // args = new String[]{"/Users/fred/recherche/projets/PHILAE.ANR/git/scanette/replay/log_split.json"};
 
-        if (args.length != 1) {
-            System.err.println("Wrong number of arguments.\nUsage: [run command] trace.csv or [run command] agilkia_trace.json");
+        boolean parallel = args.length == 2 && args[0].equals(PARALLEL_FLAG);
+        boolean collect = args.length == 2 && args[0].equals(COLLECT_FLAG);
+        if (args.length != 1 && !parallel && !collect) {
+            System.err.println("Wrong number of arguments.\nUsage: [run command] [" + PARALLEL_FLAG + "|" + COLLECT_FLAG + "] trace.csv[.gz] or [run command] [" + COLLECT_FLAG + "] agilkia_trace.json[.gz] or [run command] compiled" + CompiledTrace.EXTENSION);
             System.exit(-1);
         }
-        File f = new File(args[0]);
+        File f = new File(args[args.length - 1]);
         if (!f.exists()) {
             System.err.println("Error: file does not exist");
             System.exit(-1);
         }
 
-        if (f.getName().endsWith(".csv")) {
-            readFromCSV(f);
+        String name = f.getName();
+        if (name.endsWith(CompiledTrace.EXTENSION)) {
+            if (collect) {
+                System.err.println("Error: " + COLLECT_FLAG + " needs the session identifiers of the source trace, replay " + f + " without it");
+                System.exit(-1);
+            }
+            readFromCompiled(f);
+            return;
+        }
+        if (name.endsWith(GZIP_SUFFIX)) {
+            name = name.substring(0, name.length() - GZIP_SUFFIX.length());
+        }
+        if (collect && (name.endsWith(".csv") || name.endsWith(".json"))) {
+            readCollectingDivergences(f, name.endsWith(".json"));
+            return;
+        }
+        if (name.endsWith(".csv")) {
+            if (parallel) {
+                readFromCSVParallel(f);
+            }
+            else {
+                readFromCSV(f);
+            }
             return;
         }
-        if (f.getName().endsWith(".json")) {
+        if (name.endsWith(".json")) {
             readFromJSON(f);
             return;
         }
 
-        System.err.println("Wrong file extension.\nUsage: [run command] trace.csv or [run command] agilkia_trace.json");
+        System.err.println("Wrong file extension.\nUsage: [run command] trace.csv[.gz] or [run command] agilkia_trace.json[.gz] or [run command] compiled" + CompiledTrace.EXTENSION);
         System.exit(-1);
 
     }
 
 
+    /**
+     * Opens a trace file for reading. Files ending in .gz are decompressed on the
+     * fly, through large buffers, instead of being inflated to disk first.
+     * @param f the trace file
+     * @return a reader on the (decompressed) content, in the platform charset
+     * @throws IOException if the file cannot be opened or is not in gzip format
+     */
+    static Reader open(File f) throws IOException {
+        if (f.getName().endsWith(GZIP_SUFFIX)) {
+            FileInputStream in = new FileInputStream(f);
+            try {
+                return new BufferedReader(new InputStreamReader(new GZIPInputStream(in, GZIP_BUFFER_SIZE)), GZIP_BUFFER_SIZE);
+            }
+            catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+        return new FileReader(f);
+    }
+
+
     /**
      *
-     * @param csvFile
+     * @param csvFile trace file, possibly gzip-compressed (.csv.gz)
      * @throws IOException
      */
     public static void readFromCSV(File csvFile) throws IOException {
 
         // File reading variables
-        BufferedReader br = new BufferedReader(new FileReader(csvFile));
-        String line;
+        CsvTraceReader reader = new CsvTraceReader(csvFile);
+        TraceEvent e = new TraceEvent();
 
         // Re-executor
         ScanetteAdapter adapter = new ScanetteAdapter();
 
         // debug info
-        int l = 0;
         HashSet<String> sessions = new HashSet<String>();
 
-        while ((line = br.readLine()) != null) {
-            l++;
-            String[] tokens = line.split(",");
-            if (tokens.length != 7) {
-                System.err.println("Error in CSV file format (line " + l + ").\nExpected: #LineID, #Timestamp, #SessionID, #Object, #Operation, #ArrayOfParameters, #ExpectedResult");
+        try {
+            while (next(reader, e, sessions)) {
+                // send to processor
+                try {
+                    adapter.process(e);
+                } catch (Exception ex) {
+                    fail(e, ex);
+                }
+                catch (AssertionError ex) {
+                    fail(e, ex);
+                }
+            }
+        }
+        finally {
+            reader.close();
+        }
+        System.out.println();
+    }
+
+
+    /**
+     * Reads the next event of a CSV trace, reporting format errors and printing a
+     * progress dot for each new session.
+     * @param reader the trace
+     * @param e the record to fill
+     * @param sessions the sessions seen so far (updated)
+     * @return false at the end of the trace
+     * @throws IOException if the trace cannot be read, or if a line has too few fields
+     */
+    private static boolean next(CsvTraceReader reader, TraceEvent e, HashSet<String> sessions) throws IOException {
+        boolean read;
+        try {
+            read = reader.next(e);
+        }
+        catch (IllegalArgumentException ex) {
+            System.err.println("Error in CSV file format (line " + e.line + ").\nExpected: #LineID, #Timestamp, #SessionID, #Object, #Operation, #ArrayOfParameters, #ExpectedResult");
+            throw new IOException(ex.getMessage());
+        }
+        if (read) {
+            if (e.fieldCount() != TraceEvent.FIELDS) {
+                System.err.println("Error in CSV file format (line " + e.line + ").\nExpected: #LineID, #Timestamp, #SessionID, #Object, #Operation, #ArrayOfParameters, #ExpectedResult");
             }
             // display progress info
-            if (!sessions.contains(tokens[2])) {
+            if (sessions.add(e.session)) {
                 System.out.print(".");
-                sessions.add(tokens[2]);
-            }
-            // extract data
-            String obj = tokens[3].trim();
-            String op = tokens[4].trim();
-            tokens[5] = tokens[5].trim();
-            String[] params = tokens[5].substring(1, tokens[5].length()-1).split(",");
-            String res = tokens[6].trim();
-            // send to processor
+            }
+        }
+        return read;
+    }
+
+    /**
+     * Replays a whole trace without stopping at the first divergence (see
+     * DivergenceCollector). Each divergence is described on the error output as it
+     * occurs, and a summary (counts, then the divergences and skipped events of each
+     * affected session) is printed in JSON on the standard output at the end.
+     * Exits with 0 if no event has diverged, 1 if some results were wrong, -1 if there
+     * were only errors.
+     * @param f trace file, possibly gzip-compressed
+     * @param json true for an Agilkia JSON trace (events are then numbered from 1 in place of lines)
+     * @throws IOException
+     */
+    public static void readCollectingDivergences(File f, boolean json) throws IOException {
+        DivergenceCollector collector = collectDivergences(f, json);
+        System.out.println(collector.summary(f.getPath()));
+        System.exit(collector.exitCode());
+    }
+
+    /**
+     * Replays a whole trace without stopping at the first divergence.
+     * @param f trace file, possibly gzip-compressed
+     * @param json true for an Agilkia JSON trace
+     * @return the divergences and skipped events of the replay
+     * @throws IOException
+     */
+    static DivergenceCollector collectDivergences(File f, boolean json) throws IOException {
+        DivergenceCollector collector = new DivergenceCollector();
+        ScanetteAdapter adapter = collector.adapter;
+        if (json) {
+            AgilkiaTraceReader reader = new AgilkiaTraceReader(open(f));
+            int n = 0;
             try {
-                adapter.process(l, obj, op, params, res);
-            } catch (Exception e) {
-                System.err.println(line + " (line " + l + ")");
-                e.printStackTrace();
-                System.exit(-1);
+                JSONObject event;
+                while ((event = reader.nextEvent()) != null) {
+                    n++;
+                    String[] fields;
+                    try {
+                        fields = AgilkiaTraceReader.fields(event);
+                    }
+                    catch (RuntimeException ex) {
+                        collector.malformed(n, null, -1, "Malformed event: " + event);
+                        continue;
+                    }
+                    String objet = fields[0], op = fields[1], input = fields[2], output = fields[3], session = fields[4];
+                    Operation o = Operation.of(op);
+                    int obj = adapter.handle(objet);
+                    int caisse = (o == Operation.TRANSMISSION && input != null) ? adapter.handle(input) : -1;
+                    if (!collector.admit(session, o, obj, caisse, output)) {
+                        continue;
+                    }
+                    String[] tInput = (input == null) ? new String[0] : new String[]{ input };
+                    try {
+                        adapter.process(n, objet, op, tInput, output);
+                    } catch (Exception ex) {
+                        collector.diverged(n, session, objet, op, input, output, ex);
+                    }
+                    catch (AssertionError ex) {
+                        collector.diverged(n, session, objet, op, input, output, ex);
+                    }
+                }
+            }
+            catch (ParseException e) {
+                collector.malformed(n + 1, null, -1, "JSON error, the rest of the trace is ignored: " + e);
+            }
+            finally {
+                reader.close();
+            }
+        }
+        else {
+            CsvTraceReader reader = new CsvTraceReader(f);
+            TraceEvent e = new TraceEvent();
+            try {
+                while (true) {
+                    try {
+                        if (!reader.next(e)) {
+                            break;
+                        }
+                    }
+                    catch (IllegalArgumentException ex) {
+                        // with all its fields, the line has been read up to its parameters
+                        boolean known = e.fieldCount() >= TraceEvent.FIELDS;
+                        collector.malformed(e.line, known ? e.session : null, known ? adapter.handle(e.object) : -1, ex.getMessage());
+                        continue;
+                    }
+                    int obj = adapter.handle(e.object);
+                    int caisse = (e.op == Operation.TRANSMISSION) ? adapter.handle(e.nameParam(0)) : -1;
+                    if (!collector.admit(e.session, e.op, obj, caisse, e.result())) {
+                        continue;
+                    }
+                    try {
+                        adapter.process(e);
+                    } catch (Exception ex) {
+                        collector.diverged(e.line, e.session, e.object, e.operation, e.params()[0], e.result(), ex);
+                    }
+                    catch (AssertionError ex) {
+                        collector.diverged(e.line, e.session, e.object, e.operation, e.params()[0], e.result(), ex);
+                    }
+                }
+            }
+            finally {
+                reader.close();
             }
-            catch (AssertionError e) {
-                System.out.println("F");
-                System.err.println(line + " (line " + l + ")");
-                e.printStackTrace();
-                System.exit(1);
+        }
+        return collector;
+    }
+
+
+    /**
+     * Reports the failure of an event and exits: with status 1 for a verdict
+     * (assertion) failure, -1 for any other error.
+     */
+    private static void fail(TraceEvent e, Throwable t) {
+        fail(e.text(), e.line, t);
+    }
+
+    private static void fail(String text, int line, Throwable t) {
+        if (t instanceof AssertionError) {
+            System.out.println("F");
+        }
+        System.err.println(text + " (line " + line + ")");
+        t.printStackTrace();
+        System.exit((t instanceof AssertionError) ? 1 : -1);
+    }
+
+
+    /**
+     * Replays a CSV trace in parallel. Objects only interact when a scanner
+     * transmits to a cashier, so the trace is split into the connected components
+     * of the "transmits to" graph (computed with a union-find over object names).
+     * Each component is replayed by its own ScanetteAdapter on a work-stealing
+     * pool, in the original order of its events.
+     *
+     * The verdict is the same as with readFromCSV: sequential replay stops at the
+     * first failing event of the trace, which is also the first failing event of
+     * its component, so the failure with the smallest line number is reported.
+     * Unknown operations are failures like the others (with exit status -1).
+     * @param csvFile trace file, possibly gzip-compressed (.csv.gz)
+     * @throws IOException
+     */
+    public static void readFromCSVParallel(File csvFile) throws IOException {
+        // read the trace and link each scanner to the cashiers it transmits to
+        ArrayList<TraceEvent> events = new ArrayList<TraceEvent>();
+        HashMap<String, Integer> ids = new HashMap<String, Integer>();
+        ArrayList<Integer> parents = new ArrayList<Integer>();
+        CsvTraceReader reader = new CsvTraceReader(csvFile);
+        try {
+            HashSet<String> sessions = new HashSet<String>();
+            TraceEvent e = new TraceEvent();
+            while (next(reader, e, sessions)) {
+                events.add(e.copy());
+                int o = id(e.object, ids, parents);
+                if (e.op == Operation.TRANSMISSION) {
+                    union(o, id(e.nameParam(0), ids, parents), parents);
+                }
             }
         }
+        finally {
+            reader.close();
+        }
+
+        // split the events by component, keeping their order
+        HashMap<Integer, ArrayList<TraceEvent>> byRoot = new HashMap<Integer, ArrayList<TraceEvent>>();
+        ArrayList<ArrayList<TraceEvent>> components = new ArrayList<ArrayList<TraceEvent>>();
+        for (TraceEvent e : events) {
+            int root = find(ids.get(e.object), parents);
+            ArrayList<TraceEvent> c = byRoot.get(root);
+            if (c == null) {
+                c = new ArrayList<TraceEvent>();
+                byRoot.put(root, c);
+                components.add(c);
+            }
+            c.add(e);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool();
+        Failure first = null;
+        try {
+            ArrayList<ForkJoinTask<Failure>> tasks = new ArrayList<ForkJoinTask<Failure>>();
+            for (final ArrayList<TraceEvent> c : components) {
+                tasks.add(pool.submit(new Callable<Failure>() {
+                    public Failure call() {
+                        return replay(c);
+                    }
+                }));
+            }
+            for (ForkJoinTask<Failure> t : tasks) {
+                Failure f = t.join();
+                if (f != null && (first == null || f.event.line < first.event.line)) {
+                    first = f;
+                }
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+        if (first != null) {
+            fail(first.event, first.error);
+        }
         System.out.println();
     }
 
+    /** First failing event of a component, with its error */
+    private static final class Failure {
+        final TraceEvent event;
+        final Throwable error;
+
+        Failure(TraceEvent event, Throwable error) {
+            this.event = event;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Replays the events of one component, up to the first failure.
+     * @return null if all events pass, otherwise the first failure
+     */
+    private static Failure replay(ArrayList<TraceEvent> component) {
+        // an unknown operation must not end the program before the earlier failures are known
+        ScanetteAdapter adapter = new ScanetteAdapter(false);
+        for (TraceEvent e : component) {
+            try {
+                adapter.process(e);
+            }
+            catch (Exception ex) {
+                return new Failure(e, ex);
+            }
+            catch (AssertionError ex) {
+                return new Failure(e, ex);
+            }
+        }
+        return null;
+    }
+
+    /** Identifier of an object in the union-find, created on first use */
+    private static int id(String obj, HashMap<String, Integer> ids, ArrayList<Integer> parents) {
+        Integer i = ids.get(obj);
+        if (i == null) {
+            i = parents.size();
+            ids.put(obj, i);
+            parents.add(i);
+        }
+        return i;
+    }
+
+    private static int find(int i, ArrayList<Integer> parents) {
+        while (parents.get(i) != i) {
+            parents.set(i, parents.get(parents.get(i)));   // path halving
+            i = parents.get(i);
+        }
+        return i;
+    }
+
+    private static void union(int a, int b, ArrayList<Integer> parents) {
+        int ra = find(a, parents), rb = find(b, parents);
+        if (ra != rb) {
+            parents.set(Math.max(ra, rb), Math.min(ra, rb));
+        }
+    }
+
 
     /**
-     * 
-     * @param f
+     * Replays an Agilkia trace set. The events are streamed (see AgilkiaTraceReader):
+     * each one is replayed as soon as it is read, in bounded memory.
+     * @param f trace file, possibly gzip-compressed (.json.gz)
      */
     private static void readFromJSON(File f) throws IOException {
-        //JSON parser object to parse read file
-        JSONParser jsonParser = new JSONParser();
+        //JSON reader, one event at a time
+        AgilkiaTraceReader reader = new AgilkiaTraceReader(open(f));
 
         // Re-executor
         ScanetteAdapter adapter = new ScanetteAdapter();
 
         try {
-            FileReader reader = new FileReader(f);
-
-            //Read JSON file
-            JSONObject obj = (JSONObject) jsonParser.parse(reader);
+            int traces = 0;
+            JSONObject event;
+            while ((event = reader.nextEvent()) != null) {
+                for (; traces < reader.getTraceCount(); traces++) {
+                    System.out.print(".");
+                }
+                String[] fields = AgilkiaTraceReader.fields(event);
+                String objet = fields[0], op = fields[1], input = fields[2], output = fields[3];
+                //System.out.println(objet + "," + op + ", " + input + ", " + output);
 
-            // retrieve traces
-            JSONArray traces = (JSONArray) obj.get("traces");
+                String[] tInput = (input == null) ? new String[0] : new String[]{ input };
 
-            // explore the traces
-            for (int i=0; i < traces.size(); i++) {
-                JSONArray events = (JSONArray) ((JSONObject) traces.get(i)).get("events");
+                // send to processor
+                try {
+                    adapter.process(0, objet, op, tInput, output);
+                } catch (Exception e) {
+                    failJSON(objet + "," + op + ", " + input + ", " + output, e);
+                }
+                catch (AssertionError e) {
+                    failJSON(objet + "," + op + ", " + input + ", " + output, e);
+                }
+            }
+            // traces without events
+            for (; traces < reader.getTraceCount(); traces++) {
                 System.out.print(".");
-                for (int j=0; j < events.size(); j++) {
-                    JSONObject event = (JSONObject) events.get(j);
-                    String op = event.get("action").toString();
-                    String input  = null;
-                    if (! event.get("inputs").toString().equals("{}")) {
-                        input = ((JSONObject)event.get("inputs")).get("param").toString();
-                    }
-                    String output = "?";
-                    if (! event.get("outputs").toString().equals("{}")) {
-                        output = ((JSONObject)event.get("outputs")).get("Status").toString();
-                    }
-                    String objet = ((JSONObject) event.get("meta_data")).get("object").toString();
-                    //System.out.println(objet + "," + op + ", " + input + ", " + output);
+            }
+            System.out.println();
 
-                    String[] tInput = (input == null) ? new String[0] : new String[]{ input };
+        }
+        catch (ParseException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        finally {
+            reader.close();
+        }
+    }
 
-                    // send to processor
-                    try {
-                        adapter.process(0, objet, op, tInput, output);
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                        System.exit(-1);
+    /**
+     * Reports the failure of an event of an Agilkia trace and exits: with status 1
+     * for a verdict (assertion) failure, -1 for any other error.
+     */
+    private static void failJSON(String event, Throwable t) {
+        if (t instanceof AssertionError) {
+            System.out.println("F");
+            System.out.println(event);
+        }
+        t.printStackTrace();
+        System.exit((t instanceof AssertionError) ? 1 : -1);
+    }
+
+
+    /**
+     * Replays a compiled trace (see TraceCompiler), after checking that it is intact
+     * and not older than its source. Progress dots and failure reports are the same
+     * as for the source trace.
+     * @param f compiled trace
+     */
+    private static void readFromCompiled(File f) throws IOException {
+        CompiledTrace trace = null;
+        try {
+            trace = CompiledTrace.open(f);
+            if (trace.isStale()) {
+                System.err.println("Error: " + f + " is out of date with " + trace.getSource() + ", compile it again with fr.philae.TraceCompiler");
+                System.exit(-1);
+            }
+        }
+        catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(-1);
+        }
+
+        // Re-executor
+        ScanetteAdapter adapter = new ScanetteAdapter();
+
+        try {
+            // handles of the names of the trace in the adapter, by index
+            int[] handles = new int[0];
+            int record;
+            while ((record = trace.next()) != CompiledTrace.END) {
+                if (record == CompiledTrace.PROGRESS) {
+                    System.out.print(".");
+                    continue;
+                }
+                try {
+                    if (record == CompiledTrace.EVENT) {
+                        handles = handles(adapter, trace, handles);
+                        adapter.process(trace.operation, handles[trace.objectIndex], trace.code,
+                                (trace.operation == Operation.TRANSMISSION) ? handles[trace.nameIndex] : -1,
+                                trace.amount, trace.result);
                     }
-                    catch (AssertionError e) {
-                        System.out.println("F");
-                        System.out.println(objet + "," + op + ", " + input + ", " + output);
-                        e.printStackTrace();
-                        System.exit(1);
+                    else {
+                        adapter.process(trace.line, trace.object, trace.rawOperation, trace.rawParams, trace.rawResult);
                     }
+                } catch (Exception ex) {
+                    failCompiled(trace, record, ex);
+                }
+                catch (AssertionError ex) {
+                    failCompiled(trace, record, ex);
                 }
             }
-            System.out.println();
+        }
+        finally {
+            trace.close();
+        }
+        System.out.println();
+    }
 
+    /**
+     * Extends the handles of the names of a compiled trace to the names read since the last call.
+     * @return the handles, by index of name
+     */
+    private static int[] handles(ScanetteAdapter adapter, CompiledTrace trace, int[] handles) {
+        int n = handles.length;
+        if (n == trace.getNameCount()) {
+            return handles;
         }
-        catch (ParseException e) {
-            e.printStackTrace();
-            System.exit(-1);
+        handles = Arrays.copyOf(handles, trace.getNameCount());
+        for (int i = n; i < handles.length; i++) {
+            handles[i] = adapter.handle(trace.getName(i));
+        }
+        return handles;
+    }
+
+    /**
+     * Reports the failure of the current event of a compiled trace as for its source:
+     * the line of a CSV trace is read again from the source, if it is still there.
+     */
+    private static void failCompiled(CompiledTrace trace, int record, Throwable t) {
+        String op, param, res;
+        if (record == CompiledTrace.EVENT) {
+            op = trace.operation.name;
+            param = trace.param();
+            res = (trace.operation == Operation.PAYER || trace.getFormat() == CompiledTrace.JSON)
+                    ? Double.toString(trace.result) : Integer.toString((int) trace.result);
+            if (trace.operation == Operation.ABANDON) {
+                res = "?";
+            }
+        }
+        else {
+            op = trace.rawOperation;
+            param = (trace.rawParams.length == 0) ? null : trace.rawParams[0];
+            res = trace.rawResult;
+        }
+        if (trace.getFormat() == CompiledTrace.JSON) {
+            failJSON(trace.object + "," + op + ", " + param + ", " + res, t);
+        }
+        String text = trace.object + ", " + op + ", [" + (param == null ? "" : param) + "], " + res;
+        try {
+            CsvTraceReader reader = new CsvTraceReader(trace.getSource());
+            try {
+                TraceEvent e = new TraceEvent();
+                while (reader.next(e)) {
+                    if (e.line == trace.line) {
+                        text = e.text();
+                        break;
+                    }
+                }
+            }
+            finally {
+                reader.close();
+            }
+        }
+        catch (IOException e) {
+            // source not available: the event is described from the compiled trace
+        }
+        catch (IllegalArgumentException e) {
+            // idem
         }
+        fail(text, trace.line, t);
     }
 
 }
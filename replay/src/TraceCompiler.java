@@ -0,0 +1,158 @@
+package fr.philae;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+
+/**
+ * Compiles a CSV or Agilkia JSON trace into a compiled trace (see CompiledTrace),
+ * which ScanetteTraceExecutor replays without parsing text:
+ *
+ * java fr.philae.TraceCompiler trace.csv[.gz] [trace.csv.ctrace]
+ *
+ * The default output file is the trace file (without .gz) followed by .ctrace.
+ */
+public class TraceCompiler {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1 && args.length != 2) {
+            System.err.println("Wrong number of arguments.\nUsage: [run command] trace.csv[.gz]|agilkia_trace.json[.gz] [compiled" + CompiledTrace.EXTENSION + "]");
+            System.exit(-1);
+        }
+        File f = new File(args[0]);
+        if (!f.exists()) {
+            System.err.println("Error: file does not exist");
+            System.exit(-1);
+        }
+        String name = f.getPath();
+        if (name.endsWith(ScanetteTraceExecutor.GZIP_SUFFIX)) {
+            name = name.substring(0, name.length() - ScanetteTraceExecutor.GZIP_SUFFIX.length());
+        }
+        if (!name.endsWith(".csv") && !name.endsWith(".json")) {
+            System.err.println("Wrong file extension.\nUsage: [run command] trace.csv[.gz]|agilkia_trace.json[.gz] [compiled" + CompiledTrace.EXTENSION + "]");
+            System.exit(-1);
+        }
+        File dest = new File(args.length == 2 ? args[1] : name + CompiledTrace.EXTENSION);
+        try {
+            compile(f, dest);
+        }
+        catch (ParseException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Compiles a trace. The destination is deleted if the compilation fails.
+     * @param source a CSV or Agilkia JSON trace, possibly gzip-compressed
+     * @param dest the compiled trace
+     * @throws IOException if the source cannot be read or is malformed, or if the destination cannot be written
+     * @throws ParseException if the source is not valid JSON
+     */
+    public static void compile(File source, File dest) throws IOException, ParseException {
+        String name = source.getName();
+        if (name.endsWith(ScanetteTraceExecutor.GZIP_SUFFIX)) {
+            name = name.substring(0, name.length() - ScanetteTraceExecutor.GZIP_SUFFIX.length());
+        }
+        boolean json = name.endsWith(".json");
+        CompiledTrace.Writer w = new CompiledTrace.Writer(dest, source, json ? CompiledTrace.JSON : CompiledTrace.CSV);
+        boolean ok = false;
+        try {
+            if (json) {
+                compileJSON(source, w);
+            }
+            else {
+                compileCSV(source, w);
+            }
+            ok = true;
+        }
+        finally {
+            w.close();
+            if (!ok) {
+                dest.delete();
+            }
+        }
+    }
+
+    private static void compileCSV(File source, CompiledTrace.Writer w) throws IOException {
+        CsvTraceReader reader = new CsvTraceReader(source);
+        try {
+            TraceEvent e = new TraceEvent();
+            HashSet<String> sessions = new HashSet<String>();
+            while (true) {
+                try {
+                    if (!reader.next(e)) {
+                        break;
+                    }
+                }
+                catch (IllegalArgumentException ex) {
+                    throw new IOException(ex.getMessage());
+                }
+                if (e.fieldCount() != TraceEvent.FIELDS) {
+                    System.err.println("Error in CSV file format (line " + e.line + ").\nExpected: #LineID, #Timestamp, #SessionID, #Object, #Operation, #ArrayOfParameters, #ExpectedResult");
+                }
+                if (sessions.add(e.session)) {
+                    w.progress();
+                }
+                Operation op = Operation.of(e.operation);
+                if (op != null) {
+                    try {
+                        long code = op.hasCode() ? e.longParam(0) : 0;
+                        String cashier = (op == Operation.TRANSMISSION) ? e.nameParam(0) : null;
+                        double amount = (op == Operation.PAYER) ? e.doubleParam(0) : 0;
+                        double result = (op == Operation.ABANDON) ? 0 : (op == Operation.PAYER) ? e.doubleResult() : e.intResult();
+                        w.event(e.line, op, e.object, code, cashier, amount, result);
+                        continue;
+                    }
+                    catch (RuntimeException ex) {
+                        // not compilable: replayed as in the source, with the same error
+                    }
+                }
+                w.raw(e.line, e.object, e.operation, e.params(), e.result());
+            }
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    private static void compileJSON(File source, CompiledTrace.Writer w) throws IOException, ParseException {
+        AgilkiaTraceReader reader = new AgilkiaTraceReader(ScanetteTraceExecutor.open(source));
+        try {
+            int traces = 0;
+            JSONObject event;
+            while ((event = reader.nextEvent()) != null) {
+                for (; traces < reader.getTraceCount(); traces++) {
+                    w.progress();
+                }
+                String[] fields = AgilkiaTraceReader.fields(event);
+                String objet = fields[0], input = fields[2], output = fields[3];
+                Operation op = Operation.of(fields[1]);
+                if (op != null) {
+                    try {
+                        long code = op.hasCode() ? Long.valueOf(input) : 0;
+                        String cashier = (op == Operation.TRANSMISSION) ? input.trim() : null;
+                        double amount = (op == Operation.PAYER) ? Double.valueOf(input) : 0;
+                        double result = (op == Operation.ABANDON) ? 0 : (op == Operation.PAYER) ? Double.parseDouble(output) : (int) Double.parseDouble(output);
+                        w.event(0, op, objet, code, cashier, amount, result);
+                        continue;
+                    }
+                    catch (RuntimeException ex) {
+                        // not compilable: replayed as in the source, with the same error
+                    }
+                }
+                String[] tInput = (input == null) ? new String[0] : new String[]{ input };
+                w.raw(0, objet, fields[1], tInput, output);
+            }
+            for (; traces < reader.getTraceCount(); traces++) {
+                w.progress();
+            }
+        }
+        finally {
+            reader.close();
+        }
+    }
+}
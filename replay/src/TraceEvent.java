@@ -0,0 +1,259 @@
+package fr.philae;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * One event (line) of a CSV trace, read in place by CsvTraceReader:
+ * <pre>#LineID, #Timestamp, #SessionID, #Object, #Operation, [#Parameters], #ExpectedResult</pre>
+ * The record is reused for every line: the session, object and operation are
+ * canonical strings (see InternTable), the parameters and the expected result are
+ * kept as byte ranges of the trace buffer and parsed on demand into primitives.
+ * Fields are split on every comma and trimmed, as String.split(",") and trim() did.
+ */
+final class TraceEvent {
+
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    /** Number of fields of a well-formed line */
+    static final int FIELDS = 7;
+
+    /** Line number in the trace (from 1) */
+    int line;
+    String session;
+    String object;
+    String operation;
+    /** The operation, or null if it is unknown */
+    Operation op;
+
+    private ByteBuffer buf;
+    private int start, end;
+    private int fieldCount;
+    /** Bounds of the (trimmed) fields */
+    private final int[] fieldStart = new int[FIELDS];
+    private final int[] fieldEnd = new int[FIELDS];
+    /** Bounds of the parameters (inside the brackets, not trimmed) */
+    private int paramCount;
+    private int[] paramStart = new int[2];
+    private int[] paramEnd = new int[2];
+    private InternTable names;
+
+
+    /**
+     * Reads the line [start, end[ of buf into this record.
+     * @throws IllegalArgumentException if the line has fewer than FIELDS fields
+     *         or if its parameter field is not bracketed
+     */
+    void parse(ByteBuffer buf, int start, int end, int line, InternTable names) {
+        this.buf = buf;
+        this.start = start;
+        this.end = end;
+        this.line = line;
+        this.names = names;
+        fieldCount = 1;
+        int s = start;
+        for (int i = start; i < end; i++) {
+            if (buf.get(i) == ',') {
+                if (fieldCount <= FIELDS) {
+                    setField(fieldCount - 1, s, i);
+                }
+                fieldCount++;
+                s = i + 1;
+            }
+        }
+        if (fieldCount <= FIELDS) {
+            setField(fieldCount - 1, s, end);
+        }
+        if (fieldCount < FIELDS) {
+            throw new IllegalArgumentException("Missing fields (line " + line + ")");
+        }
+        session = names.intern(buf, fieldStart[2], fieldEnd[2]);
+        object = names.intern(buf, fieldStart[3], fieldEnd[3]);
+        operation = names.intern(buf, fieldStart[4], fieldEnd[4]);
+        op = Operation.of(operation);
+
+        // parameters, between the brackets of field 5
+        int ps = fieldStart[5] + 1, pe = fieldEnd[5] - 1;
+        if (pe < ps) {
+            throw new IllegalArgumentException("Malformed parameters (line " + line + ")");
+        }
+        paramCount = 0;
+        s = ps;
+        for (int i = ps; i <= pe; i++) {
+            if (i == pe || buf.get(i) == ',') {
+                if (paramCount == paramStart.length) {
+                    paramStart = java.util.Arrays.copyOf(paramStart, paramCount * 2);
+                    paramEnd = java.util.Arrays.copyOf(paramEnd, paramCount * 2);
+                }
+                paramStart[paramCount] = s;
+                paramEnd[paramCount++] = i;
+                s = i + 1;
+            }
+        }
+    }
+
+    private void setField(int f, int s, int e) {
+        while (s < e && (buf.get(s) & 0xff) <= ' ') s++;
+        while (e > s && (buf.get(e - 1) & 0xff) <= ' ') e--;
+        fieldStart[f] = s;
+        fieldEnd[f] = e;
+    }
+
+    /**
+     * @return the number of comma-separated fields of the line (FIELDS if well-formed)
+     */
+    int fieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * @return the number of parameters (1 for "[]", as with split)
+     */
+    int paramCount() {
+        return paramCount;
+    }
+
+    /**
+     * @param i a parameter index
+     * @return the parameter as a long, e.g. an EAN code (same rules as Long.parseLong)
+     * @throws NumberFormatException if it is not an integer
+     */
+    long longParam(int i) {
+        return parseLong(paramStart[i], paramEnd[i]);
+    }
+
+    /**
+     * @param i a parameter index
+     * @return the parameter as a double, e.g. an amount (as Double.parseDouble)
+     */
+    double doubleParam(int i) {
+        return Double.parseDouble(decode(paramStart[i], paramEnd[i]));
+    }
+
+    /**
+     * @param i a parameter index
+     * @return the parameter as a (trimmed) name, e.g. a cashier
+     */
+    String nameParam(int i) {
+        int s = paramStart[i], e = paramEnd[i];
+        while (s < e && (buf.get(s) & 0xff) <= ' ') s++;
+        while (e > s && (buf.get(e - 1) & 0xff) <= ' ') e--;
+        return names.intern(buf, s, e);
+    }
+
+    /**
+     * @return the expected result truncated to an int, as (int) Double.parseDouble(result)
+     */
+    int intResult() {
+        int s = fieldStart[6], e = fieldEnd[6];
+        if (e - s > 0 && e - s < 10) {
+            try {
+                return (int) parseLong(s, e);
+            }
+            catch (NumberFormatException ex) {
+                // not a plain integer: general case below
+            }
+        }
+        return (int) doubleResult();
+    }
+
+    /**
+     * @return the expected result, as Double.parseDouble(result)
+     */
+    double doubleResult() {
+        return Double.parseDouble(decode(fieldStart[6], fieldEnd[6]));
+    }
+
+    /**
+     * @return the expected result as written in the trace
+     */
+    String result() {
+        return decode(fieldStart[6], fieldEnd[6]);
+    }
+
+    /**
+     * @return the parameters as written in the trace
+     */
+    String[] params() {
+        String[] p = new String[paramCount];
+        for (int i = 0; i < paramCount; i++) {
+            p[i] = decode(paramStart[i], paramEnd[i]);
+        }
+        return p;
+    }
+
+    /**
+     * @return the whole line, decoded (for error reports)
+     */
+    String text() {
+        return decode(start, end);
+    }
+
+    /**
+     * @return a copy of this event that does not depend on the trace buffer,
+     *         which the reader reuses for the next lines
+     */
+    TraceEvent copy() {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buf.get(start + i);
+        }
+        TraceEvent c = new TraceEvent();
+        c.buf = ByteBuffer.wrap(bytes);
+        c.start = 0;
+        c.end = bytes.length;
+        c.line = line;
+        c.session = session;
+        c.object = object;
+        c.operation = operation;
+        c.op = op;
+        c.names = names;
+        c.fieldCount = fieldCount;
+        for (int f = 0; f < FIELDS; f++) {
+            c.fieldStart[f] = fieldStart[f] - start;
+            c.fieldEnd[f] = fieldEnd[f] - start;
+        }
+        c.paramCount = paramCount;
+        c.paramStart = new int[paramCount];
+        c.paramEnd = new int[paramCount];
+        for (int i = 0; i < paramCount; i++) {
+            c.paramStart[i] = paramStart[i] - start;
+            c.paramEnd[i] = paramEnd[i] - start;
+        }
+        return c;
+    }
+
+    private String decode(int s, int e) {
+        byte[] bytes = new byte[e - s];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buf.get(s + i);
+        }
+        return new String(bytes, CHARSET);
+    }
+
+    /** Long.parseLong on the bytes [s, e[ */
+    private long parseLong(int s, int e) {
+        if (s == e) {
+            throw new NumberFormatException("For input string: \"\"");
+        }
+        boolean negative = false;
+        int i = s;
+        byte c = buf.get(i);
+        if (c == '-' || c == '+') {
+            negative = (c == '-');
+            if (++i == e) {
+                throw new NumberFormatException("For input string: \"" + decode(s, e) + "\"");
+            }
+        }
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long v = 0;     // accumulated negatively, as Long.parseLong
+        for (; i < e; i++) {
+            int digit = buf.get(i) - '0';
+            if (digit < 0 || digit > 9 || v < limit / 10 || v * 10 < limit + digit) {
+                throw new NumberFormatException("For input string: \"" + decode(s, e) + "\"");
+            }
+            v = v * 10 - digit;
+        }
+        return negative ? v : -v;
+    }
+}
@@ -0,0 +1,110 @@
+package fr.philae;
+
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Replays of small crafted traces with --all (see DivergenceCollector).
+ * To be run from the replay directory, where the "resources" directory is located.
+ */
+public class TestDivergenceCollector {
+
+    /** Article of both product files, at 1.94 */
+    static final String POULET = "3560070976478";
+
+    /** Replays the given lines as a CSV trace and returns the summary of the replay */
+    private static JSONObject collect(String... lines) throws IOException {
+        File f = File.createTempFile("trace", ".csv");
+        f.deleteOnExit();
+        FileWriter w = new FileWriter(f);
+        try {
+            for (int i = 0; i < lines.length; i++) {
+                w.write((i + 1) + ", " + (1000 + i) + ", " + lines[i] + "\n");
+            }
+        }
+        finally {
+            w.close();
+        }
+        DivergenceCollector c = ScanetteTraceExecutor.collectDivergences(f, false);
+        return (JSONObject) JSONValue.parse(c.summary(f.getPath()));
+    }
+
+    @Test
+    public void noDivergence() throws IOException {
+        JSONObject r = collect(
+                "client0, scan0, debloquer, [], 0",
+                "client0, scan0, scanner, [" + POULET + "], 0",
+                "client0, scan0, transmission, [caisse0], 0",
+                "client0, caisse0, payer, [2], 0.06");
+        assertEquals(4L, r.get("replayed"));
+        assertEquals(0L, r.get("skipped"));
+        assertTrue(((List<?>) r.get("sessions")).isEmpty());
+    }
+
+    /**
+     * A caisse quarantined by a divergent session is released by the successful
+     * transmission of a clean session: only the events of the divergent session are skipped
+     */
+    @Test
+    public void caisseReleasedByTransmission() throws IOException {
+        JSONObject r = collect(
+                "client0, scan0, debloquer, [], 0",
+                "client0, scan0, scanner, [" + POULET + "], -2",        // divergence
+                "client0, scan0, transmission, [caisse0], 0",           // skipped, caisse0 quarantined
+                "client0, caisse0, payer, [2], 0.06",                   // skipped
+                "client1, scan1, debloquer, [], 0",
+                "client1, scan1, scanner, [" + POULET + "], 0",
+                "client1, scan1, transmission, [caisse0], 0",           // caisse0 released
+                "client1, caisse0, payer, [2], 0.06",
+                "client2, scan0, debloquer, [], 0",                     // scan0 released
+                "client2, scan0, scanner, [" + POULET + "], 0");
+        assertEquals(1L, r.get("divergences"));
+        assertEquals(2L, r.get("skipped"));
+        assertTrue(((List<?>) r.get("quarantined")).isEmpty());
+        List<?> sessions = (List<?>) r.get("sessions");
+        assertEquals(1, sessions.size());
+        assertEquals("client0", ((JSONObject) sessions.get(0)).get("session"));
+    }
+
+    /**
+     * Opening a cashier session does not release a quarantined caisse: its recorded
+     * state (holding a transmitted basket) is not the initial one
+     */
+    @Test
+    public void caisseNotReleasedByOuvrirSession() throws IOException {
+        JSONObject r = collect(
+                "client0, scan0, debloquer, [], 0",
+                "client0, scan0, scanner, [" + POULET + "], -2",        // divergence
+                "client0, scan0, transmission, [caisse0], 0",           // skipped, caisse0 quarantined
+                "client1, caisse0, ouvrirSession, [], 0",               // skipped
+                "client1, caisse0, fermerSession, [], 0");              // skipped
+        assertEquals(1L, r.get("divergences"));
+        assertEquals(3L, r.get("skipped"));
+        List<?> sessions = (List<?>) r.get("sessions");
+        assertEquals(2, sessions.size());
+        assertEquals("caisse0", ((JSONObject) sessions.get(1)).get("quarantinedBy"));
+    }
+
+    /**
+     * A transmission refused in the trace does not release the caisse
+     */
+    @Test
+    public void caisseNotReleasedByRefusedTransmission() throws IOException {
+        JSONObject r = collect(
+                "client0, scan0, debloquer, [], 0",
+                "client0, scan0, scanner, [" + POULET + "], -2",        // divergence
+                "client0, scan0, transmission, [caisse0], 0",           // skipped, caisse0 quarantined
+                "client1, scan1, debloquer, [], 0",
+                "client1, scan1, transmission, [caisse0], -1");         // skipped
+        assertEquals(2L, r.get("skipped"));
+        assertTrue(((List<?>) r.get("quarantined")).contains("caisse0"));
+    }
+}
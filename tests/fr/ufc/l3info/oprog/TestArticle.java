@@ -134,4 +134,19 @@ public class TestArticle {
         assertTrue(hs.contains(a3));
         assertTrue(hs.contains(new Article(2, 1, "toto")));
     }
-}
\ No newline at end of file
+
+    /**
+     * Ordre total sur les codes, cohérent avec equals (y compris pour des codes
+     * dont la différence des hashCode déborde)
+     */
+    @Test
+    public void testCompareTo() {
+        Article petit = new Article(-3474377910731L, 0, "");
+        Article grand = new Article(Long.MAX_VALUE, 0, "");
+        assertTrue(art.compareTo(grand) < 0);
+        assertTrue(grand.compareTo(art) > 0);
+        assertTrue(petit.compareTo(art) < 0);
+        assertEquals(0, art.compareTo(new Article(3474377910731L, 2, "Autre")));
+        assertTrue(new Article(1L << 32, 0, "").compareTo(new Article(1, 0, "")) > 0);
+    }
+}
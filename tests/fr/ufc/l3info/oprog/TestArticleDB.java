@@ -10,6 +10,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.List;
 
 import static org.junit.Assert.*;
 
@@ -302,6 +303,96 @@ public class TestArticleDB {
         assertEquals(1.67, db.getArticle(3017620402678l).getPrixUnitaire(), 0.01);
         assertEquals(52.24, db.getArticle(45496420598l).getPrixUnitaire(), 0.01);
     }
-    
-}
 
+    /**
+     * Recherche sans exception (article existant et inexistant)
+     */
+    @Test
+    public void testArticleDB17() throws IOException, FileFormatException {
+        db.init(TestScanette.PATH_TO_CSV + "validFile.csv");
+        assertEquals(3474377910731L, db.chercher(3474377910731L).getCodeEAN13());
+        assertNull(db.chercher(3474377910730L));
+    }
+
+    /**
+     * Recherche avec le filtre des codes absents
+     */
+    @Test
+    public void testArticleDB18() throws IOException, FileFormatException, ArticleNotFoundException {
+        db.init(TestScanette.PATH_TO_CSV + "produits.csv");
+        db.setFiltreNegatif(true);
+        assertTrue(db.getFiltreNegatif());
+        assertEquals(2.15, db.getArticle(5410188006711L).getPrixUnitaire(), 0.01);
+        assertNull(db.chercher(5410188006712L));
+        db.appliquer(new Delta().ajouter(new Article(5410188006711L, 1, "")).ajouter(new Article(3474377910731L, 1, "")));
+        assertTrue(db.getFiltreNegatif());
+        assertNotNull(db.chercher(3474377910731L));
+        db.setFiltreNegatif(false);
+        assertFalse(db.getFiltreNegatif());
+        assertNotNull(db.chercher(3474377910731L));
+    }
+
+    /**
+     * Recherche par plage de codes et par préfixe
+     */
+    @Test
+    public void testArticleDB19() throws IOException, FileFormatException {
+        db.init(TestScanette.PATH_TO_CSV + "produits.csv");
+        List<Article> l = db.getArticlesEntre(3017000000000L, 3018000000000L);
+        assertEquals(2, l.size());
+        assertEquals(3017620402678L, l.get(0).getCodeEAN13());
+        assertEquals(3017800238592L, l.get(1).getCodeEAN13());
+        assertEquals(4, db.getArticlesPrefixe("356007").size());
+        assertEquals(3, db.getArticlesPrefixe("3560070").size());
+        assertEquals(1, db.getArticlesPrefixe("3560070139675").size());
+        assertEquals(45496420598L, db.getArticlesPrefixe("0045496").get(0).getCodeEAN13());
+        assertEquals(0, db.getArticlesPrefixe("45496").size());
+        assertEquals(17, db.getArticlesPrefixe("").size());
+        assertEquals(0, db.getArticlesEntre(3018000000000L, 3017000000000L).size());
+        // les recherches par plage suivent les modifications de la base
+        db.appliquer(new Delta().supprimer(3017620402678L));
+        assertEquals(1, db.getArticlesPrefixe("3017").size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testArticleDB20() throws IOException, FileFormatException {
+        db.init(TestScanette.PATH_TO_CSV + "produits.csv");
+        db.getArticlesPrefixe("30a7");
+    }
+
+    /**
+     * Le filtre des codes absents reçoit les codes ajoutés sans être reconstruit,
+     * sauf lorsque la surcouche est fusionnée dans la base
+     */
+    @Test
+    public void testArticleDB21() {
+        Delta initial = new Delta();
+        for (int i = 0; i < 1000; i++) {
+            initial.ajouter(new Article(TestConcurrence.code(i), 1, "Produit " + i));
+        }
+        db.appliquer(initial);
+        db.setFiltreNegatif(true);
+        FiltreBloom filtre = db.filtre();
+        long nouveau = TestChargeurCSV.ean13(400000000000L);
+        db.appliquer(new Delta().ajouter(new Article(nouveau, 2, "Nouveau")).supprimer(TestConcurrence.code(0)));
+        assertSame(filtre, db.filtre());
+        assertNotNull(db.chercher(nouveau));
+        assertNull(db.chercher(TestConcurrence.code(0)));
+
+        // une surcharge a son propre filtre
+        ArticleDB magasin = db.surcharger(new Delta().ajouter(new Article(TestChargeurCSV.ean13(400000000001L), 3, "Local")));
+        assertNotSame(filtre, magasin.filtre());
+        assertNotNull(magasin.chercher(TestChargeurCSV.ean13(400000000001L)));
+        assertNotNull(magasin.chercher(nouveau));
+
+        // fusion de la surcouche : nouveau filtre
+        Delta gros = new Delta();
+        for (int i = 1; i < 200; i++) {
+            gros.supprimer(TestConcurrence.code(i));
+        }
+        db.appliquer(gros);
+        assertNotSame(filtre, db.filtre());
+        assertNotNull(db.chercher(nouveau));
+        assertEquals(801, db.getTailleDB());
+    }
+}
@@ -0,0 +1,264 @@
+/**
+ *  This work is licensed under the Creative Commons Attribution-NonCommercial-NoDerivatives 4.0 International License.
+ *  To view a copy of this license, visit http://creativecommons.org/licenses/by-nc-nd/4.0/ or send a letter to Creative
+ *  Commons, PO Box 1866, Mountain View, CA 94042, USA.
+ */
+package fr.ufc.l3info.oprog;
+
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests du registre des bases de données partagées.
+ */
+public class TestArticleDBCache {
+
+    @Before
+    public void setUp() {
+        ArticleDBCache.vider();
+    }
+
+    /**
+     * Un même fichier n'est chargé qu'une seule fois
+     */
+    @Test
+    public void memeInstancePourMemeFichier() throws IOException, FileFormatException {
+        ArticleDB db1 = ArticleDBCache.get(TestScanette.PATH_TO_CSV + "produitsOK.csv");
+        ArticleDB db2 = ArticleDBCache.get("./" + TestScanette.PATH_TO_CSV + "produitsOK.csv");
+        assertSame(db1, db2);
+        assertEquals(1, ArticleDBCache.getNbChargements());
+        assertEquals(1, ArticleDBCache.getNbEchecs());
+        assertEquals(1, ArticleDBCache.getNbSucces());
+        assertEquals(1, ArticleDBCache.getTaille());
+    }
+
+    /**
+     * Les scanettes et les caisses partagent la base
+     */
+    @Test
+    public void partageEntreScanettesEtCaisses() throws ProductDBFailureException {
+        new Scanette(TestScanette.PATH_TO_CSV + "produitsOK.csv");
+        new Scanette(TestScanette.PATH_TO_CSV + "produitsOK.csv");
+        new MaCaisse(TestScanette.PATH_TO_CSV + "produitsOK.csv");
+        assertEquals(1, ArticleDBCache.getNbChargements());
+        assertEquals(2, ArticleDBCache.getNbSucces());
+    }
+
+    /**
+     * Une base partagée ne peut pas être réinitialisée
+     */
+    @Test(expected = IllegalStateException.class)
+    public void basePartageeEnLectureSeule() throws IOException, FileFormatException {
+        ArticleDB db = ArticleDBCache.get(TestScanette.PATH_TO_CSV + "produitsOK.csv");
+        assertTrue(db.estLectureSeule());
+        db.init(TestScanette.PATH_TO_CSV + "validFile.csv");
+    }
+
+    /**
+     * Les erreurs de chargement ne sont pas mises en cache
+     */
+    @Test
+    public void erreurNonMiseEnCache() throws IOException {
+        for (int i = 0; i < 2; i++) {
+            try {
+                ArticleDBCache.get(TestScanette.PATH_TO_CSV + "produitsKO.csv");
+                fail();
+            }
+            catch (FileFormatException e) { }
+        }
+        assertEquals(0, ArticleDBCache.getNbChargements());
+        assertEquals(2, ArticleDBCache.getNbEchecs());
+        assertEquals(0, ArticleDBCache.getTaille());
+    }
+
+    /**
+     * Un fichier modifié est rechargé
+     */
+    @Test
+    public void rechargementFichierModifie() throws IOException, FileFormatException, ArticleNotFoundException {
+        File f = File.createTempFile("produits", ".csv");
+        f.deleteOnExit();
+        FileWriter w = new FileWriter(f);
+        w.write("3474377910731, 1.10, Marker");
+        w.close();
+        ArticleDB db1 = ArticleDBCache.get(f.getPath());
+        assertEquals(1, db1.getTailleDB());
+
+        w = new FileWriter(f);
+        w.write("3474377910731, 1.10, Marker\n3760244111005, 2.50, Brosse");
+        w.close();
+        ArticleDB db2 = ArticleDBCache.get(f.getPath());
+        assertNotSame(db1, db2);
+        assertEquals(1, db1.getTailleDB());
+        assertEquals(2, db2.getTailleDB());
+        assertEquals(2.5, db2.getArticle(3760244111005L).getPrixUnitaire(), 0.001);
+        assertEquals(2, ArticleDBCache.getNbChargements());
+        assertEquals(1, ArticleDBCache.getTaille());
+    }
+
+    private static File fichier(String contenu) throws IOException {
+        File f = File.createTempFile("catalogue", ".csv");
+        f.deleteOnExit();
+        FileWriter w = new FileWriter(f);
+        w.write(contenu);
+        w.close();
+        return f;
+    }
+
+    /**
+     * Deux fichiers de même contenu partagent la même base
+     */
+    @Test
+    public void memeContenuMemeBase() throws IOException, FileFormatException {
+        String contenu = "3474377910731,1.10,Marker\n3760244111005,2.50,Brosse\n";
+        ArticleDB db1 = ArticleDBCache.get(fichier(contenu).getPath());
+        assertEquals(0, ArticleDBCache.getNbEmpreintes());
+        ArticleDB db2 = ArticleDBCache.get(fichier(contenu).getPath());
+        assertSame(db1, db2);
+        assertEquals(1, ArticleDBCache.getNbChargements());
+        assertEquals(1, ArticleDBCache.getNbPartages());
+        assertEquals(2, ArticleDBCache.getNbEmpreintes());
+        assertEquals(2, ArticleDBCache.getTaille());
+
+        // une base partagée n'est pas modifiable : les modifications passent par une surcouche
+        Delta d = new Delta().supprimer(3474377910731L);
+        try {
+            db1.appliquer(d);
+            fail();
+        }
+        catch (IllegalStateException e) {
+            // attendu
+        }
+        ArticleDB propre = db1.surcharger(d);
+        assertEquals(1, propre.getTailleDB());
+        assertEquals(2, db2.getTailleDB());
+        assertSame(db1, ArticleDBCache.get(fichier(contenu).getPath()));
+    }
+
+    /**
+     * Aucun appareil ne peut modifier la base partagée
+     */
+    @Test
+    public void basePartageeNonModifiable() throws IOException, FileFormatException {
+        ArticleDB db = ArticleDBCache.get(TestScanette.PATH_TO_CSV + "produitsOK.csv");
+        assertTrue(db.estLectureSeule());
+        try {
+            db.setFiltreNegatif(!db.getFiltreNegatif());
+            fail();
+        }
+        catch (IllegalStateException e) {
+            // attendu
+        }
+        try {
+            db.compresser();
+            fail();
+        }
+        catch (IllegalStateException e) {
+            // attendu
+        }
+        try {
+            db.appliquer(new Delta().supprimer(5410188006711L));
+            fail();
+        }
+        catch (IllegalStateException e) {
+            // attendu
+        }
+        assertNotNull(db.chercher(5410188006711L));
+    }
+
+    /**
+     * Les surcouches de même contenu sur une même base donnent la même instance,
+     * sans modifier la base commune
+     */
+    @Test
+    public void surcouchesPartagees() throws IOException, FileFormatException, ArticleNotFoundException {
+        String base = TestScanette.PATH_TO_CSV + "produitsOK.csv";
+        String modifs = "+,3474377910731,1.10,Marker\n-,5410188006711\n+,8715700110622,1.00,Ketchup\n";
+        ArticleDB m1 = ArticleDBCache.get(base, fichier(modifs).getPath());
+        ArticleDB m2 = ArticleDBCache.get(base, fichier(modifs).getPath());
+        ArticleDB m3 = ArticleDBCache.get(base, fichier("-,8715700110622\n").getPath());
+        assertSame(m1, m2);
+        assertNotSame(m1, m3);
+        assertTrue(m1.estLectureSeule());
+
+        ArticleDB commune = ArticleDBCache.get(base);
+        assertEquals(commune.getTailleDB(), m1.getTailleDB());
+        assertEquals(commune.getTailleDB() - 1, m3.getTailleDB());
+        assertNull(m1.chercher(5410188006711L));
+        assertNotNull(commune.chercher(5410188006711L));
+        assertEquals(1.0, m1.getArticle(8715700110622L).getPrixUnitaire(), 0);
+        assertEquals(0.96, commune.getArticle(8715700110622L).getPrixUnitaire(), 0);
+        assertEquals(1, ArticleDBCache.getNbChargements());
+    }
+
+    /**
+     * Un fichier de surcouche déjà lu avec la même base n'est relu que s'il a changé
+     */
+    @Test
+    public void surcoucheNonRelue() throws IOException, FileFormatException {
+        String base = TestScanette.PATH_TO_CSV + "produitsOK.csv";
+        File modifs = fichier("-,5410188006711\n");
+        ArticleDB m1 = ArticleDBCache.get(base, modifs.getPath());
+        ArticleDB m2 = ArticleDBCache.get(base, modifs.getParent() + "/./" + modifs.getName());
+        assertSame(m1, m2);
+        assertEquals(0, ArticleDBCache.getNbPartages());
+
+        // même contenu, date changée : relu, puis partagé par empreinte
+        assertTrue(modifs.setLastModified(modifs.lastModified() - 10000));
+        assertSame(m1, ArticleDBCache.get(base, modifs.getPath()));
+        assertEquals(1, ArticleDBCache.getNbPartages());
+
+        // contenu changé
+        FileWriter w = new FileWriter(modifs);
+        w.write("-,8715700110622\n-,5410188006711\n");
+        w.close();
+        ArticleDB m3 = ArticleDBCache.get(base, modifs.getPath());
+        assertNotSame(m1, m3);
+        assertEquals(m1.getTailleDB() - 1, m3.getTailleDB());
+        assertEquals(1, ArticleDBCache.getNbChargements());
+    }
+
+    /**
+     * L'empreinte d'un fichier n'est calculée que si un fichier de même taille a déjà été chargé
+     */
+    @Test
+    public void empreinteSeulementSiMemeTaille() throws IOException, FileFormatException {
+        ArticleDB db1 = ArticleDBCache.get(fichier("3474377910731,1.10,Marker\n").getPath());
+        ArticleDB db2 = ArticleDBCache.get(fichier("3474377910731,1.10,Marker\n3760244111005,2.50,Brosse\n").getPath());
+        assertEquals(0, ArticleDBCache.getNbEmpreintes());
+        ArticleDB db3 = ArticleDBCache.get(fichier("3474377910731,1.20,Marker\n").getPath());
+        assertEquals(2, ArticleDBCache.getNbEmpreintes());
+        assertNotSame(db1, db3);
+        assertNotSame(db2, db3);
+        assertEquals(3, ArticleDBCache.getNbChargements());
+        assertEquals(0, ArticleDBCache.getNbPartages());
+    }
+
+    /**
+     * Un catalogue compilé ouvert par le registre est projeté en mémoire sans être lu en entier
+     */
+    @Test
+    public void catalogueCompileNonLu() throws IOException, FileFormatException {
+        File compile = File.createTempFile("produits", CatalogueBinaire.EXTENSION);
+        compile.deleteOnExit();
+        File copie = File.createTempFile("produits", CatalogueBinaire.EXTENSION);
+        copie.deleteOnExit();
+        CompilateurCatalogue.compiler(TestScanette.PATH_TO_CSV + "produitsOK.csv", compile.getPath());
+        CompilateurCatalogue.compiler(TestScanette.PATH_TO_CSV + "produitsOK.csv", copie.getPath());
+        ArticleDB db = ArticleDBCache.get(compile.getPath());
+        assertSame(db, ArticleDBCache.get(compile.getPath()));
+        ArticleDB db2 = ArticleDBCache.get(copie.getPath());
+        assertEquals(5, db.getTailleDB());
+        assertEquals(5, db2.getTailleDB());
+        assertTrue(db.getStatistiquesChargement().isReussi());
+        assertEquals(0, ArticleDBCache.getNbEmpreintes());
+        assertEquals(2, ArticleDBCache.getNbChargements());
+    }
+}
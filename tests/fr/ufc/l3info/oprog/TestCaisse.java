@@ -36,6 +36,7 @@ public class TestCaisse {
     public void setUp() throws ProductDBFailureException {
         maCaisse = Mockito.spy(new MaCaisse(TestScanette.PATH_TO_CSV + "produitsOK.csv"));
         maScanette = Mockito.mock(Scanette.class);
+        TestMaCaisse.simulerInstantane(maScanette);
     }
 
     @Test
@@ -0,0 +1,187 @@
+/**
+ *  This work is licensed under the Creative Commons Attribution-NonCommercial-NoDerivatives 4.0 International License.
+ *  To view a copy of this license, visit http://creativecommons.org/licenses/by-nc-nd/4.0/ or send a letter to Creative
+ *  Commons, PO Box 1866, Mountain View, CA 94042, USA.
+ */
+package fr.ufc.l3info.oprog;
+
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests du catalogue compilé projeté en mémoire.
+ */
+public class TestCatalogueBinaire {
+
+    File compile;
+
+    @Before
+    public void setUp() throws IOException {
+        compile = File.createTempFile("produits", CatalogueBinaire.EXTENSION);
+        compile.deleteOnExit();
+    }
+
+    /**
+     * Le catalogue compilé contient exactement les articles du fichier CSV
+     */
+    @Test
+    public void compilationEtLecture() throws IOException, FileFormatException, ArticleNotFoundException {
+        assertEquals(17, CompilateurCatalogue.compiler(TestScanette.PATH_TO_CSV + "produits.csv", compile.getPath()));
+        ArticleDB csv = new ArticleDB();
+        csv.init(TestScanette.PATH_TO_CSV + "produits.csv");
+        ArticleDB bin = new ArticleDB();
+        bin.init(compile.getPath());
+
+        assertEquals(csv.getTailleDB(), bin.getTailleDB());
+        for (int i = 0; i < csv.getTailleDB(); i++) {
+            Article a = csv.catalogue().article(i);
+            Article b = bin.getArticle(a.getCodeEAN13());
+            assertEquals(a, b);
+            assertEquals(a.getNom(), b.getNom());
+            assertEquals(a.getPrixUnitaire(), b.getPrixUnitaire(), 0.001);
+        }
+    }
+
+    /**
+     * Les réductions sont appliquées avant la compilation
+     */
+    @Test
+    public void reductions() throws IOException, FileFormatException, ArticleNotFoundException {
+        assertEquals(5, CompilateurCatalogue.compiler(TestScanette.PATH_TO_CSV + "produitsOK.csv", compile.getPath()));
+        ArticleDB bin = new ArticleDB();
+        bin.init(compile.getPath());
+        assertEquals(52.24, bin.getArticle(45496420598L).getPrixUnitaire(), 0.001);
+        assertEquals(1.67, bin.getArticle(3017620402678L).getPrixUnitaire(), 0.001);
+    }
+
+    /**
+     * Les articles compilés sont rangés par code croissant
+     */
+    @Test
+    public void ordreCroissant() throws IOException, FileFormatException {
+        CompilateurCatalogue.compiler(TestScanette.PATH_TO_CSV + "produitsOK.csv", compile.getPath());
+        Catalogue c = CatalogueBinaire.ouvrir(compile.getPath());
+        for (int i = 1; i < c.taille(); i++) {
+            assertTrue(c.article(i - 1).getCodeEAN13() < c.article(i).getCodeEAN13());
+        }
+        assertEquals(c.taille(), c.entre(0, Long.MAX_VALUE).size());
+        assertEquals(c.article(1).getNom(), c.entre(c.article(1).getCodeEAN13(), c.article(2).getCodeEAN13()).get(0).getNom());
+        assertEquals(0, c.entre(c.article(1).getCodeEAN13() + 1, c.article(2).getCodeEAN13()).size());
+    }
+
+    @Test(expected = ArticleNotFoundException.class)
+    public void articleInexistant() throws IOException, FileFormatException, ArticleNotFoundException {
+        CompilateurCatalogue.compiler(TestScanette.PATH_TO_CSV + "validFile.csv", compile.getPath());
+        ArticleDB bin = new ArticleDB();
+        bin.init(compile.getPath());
+        bin.getArticle(3474377910730L);
+    }
+
+    @Test
+    public void catalogueVide() throws IOException, FileFormatException {
+        CompilateurCatalogue.compiler(TestScanette.PATH_TO_CSV + "emptyFile.csv", compile.getPath());
+        ArticleDB bin = new ArticleDB();
+        bin.init(compile.getPath());
+        assertEquals(0, bin.getTailleDB());
+    }
+
+    /**
+     * Un fichier qui n'est pas un catalogue compilé est refusé
+     */
+    @Test(expected = FileFormatException.class)
+    public void fichierIncorrect() throws IOException, FileFormatException {
+        FileWriter w = new FileWriter(compile);
+        w.write("3474377910731, 1.10, Marker");
+        w.close();
+        new ArticleDB().init(compile.getPath());
+    }
+
+    /**
+     * Remplace un entier du fichier compilé de produitsOK.csv (5 articles)
+     * @param position position de l'entier, en octets depuis le début du fichier
+     * @param valeur la nouvelle valeur
+     */
+    private void corrompre(long position, int valeur) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(compile, "rw");
+        try {
+            raf.seek(position);
+            raf.writeInt(valeur);
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    /** Position des débuts de noms dans le fichier compilé de produitsOK.csv */
+    private static final long DEBUTS = 16 + 5 * 8 + 5 * 4;
+    /** Position de l'index dans le fichier compilé de produitsOK.csv */
+    private static final long INDEX = DEBUTS + 6 * 4;
+
+    private void ouvrirCorrompu() throws IOException {
+        try {
+            CatalogueBinaire.ouvrir(compile.getPath());
+            fail();
+        }
+        catch (FileFormatException e) {
+            // attendu
+        }
+    }
+
+    /**
+     * Un fichier tronqué est refusé à l'ouverture
+     */
+    @Test
+    public void fichierTronque() throws IOException, FileFormatException {
+        CompilateurCatalogue.compiler(TestScanette.PATH_TO_CSV + "produitsOK.csv", compile.getPath());
+        RandomAccessFile raf = new RandomAccessFile(compile, "rw");
+        raf.setLength(raf.length() - 3);
+        raf.close();
+        ouvrirCorrompu();
+    }
+
+    /**
+     * Un index qui désigne un rang inexistant est refusé à l'ouverture
+     */
+    @Test
+    public void indexHorsLimites() throws IOException, FileFormatException {
+        CompilateurCatalogue.compiler(TestScanette.PATH_TO_CSV + "produitsOK.csv", compile.getPath());
+        assertEquals(5, CatalogueBinaire.ouvrir(compile.getPath()).taille());
+        corrompre(INDEX + 4 * 3, 6);
+        ouvrirCorrompu();
+        corrompre(INDEX + 4 * 3, -1);
+        ouvrirCorrompu();
+    }
+
+    /**
+     * Un index sans case vide (recherche d'un code absent sans fin) est refusé à l'ouverture
+     */
+    @Test
+    public void indexSansCaseVide() throws IOException, FileFormatException {
+        CompilateurCatalogue.compiler(TestScanette.PATH_TO_CSV + "produitsOK.csv", compile.getPath());
+        for (int i = 0; i < 16; i++) {
+            corrompre(INDEX + 4 * i, 1 + i % 5);
+        }
+        ouvrirCorrompu();
+    }
+
+    /**
+     * Des débuts de noms décroissants sont refusés à l'ouverture
+     */
+    @Test
+    public void debutsNomsDecroissants() throws IOException, FileFormatException {
+        CompilateurCatalogue.compiler(TestScanette.PATH_TO_CSV + "produitsOK.csv", compile.getPath());
+        assertEquals(5, CatalogueBinaire.ouvrir(compile.getPath()).taille());
+        corrompre(DEBUTS + 4 * 2, 1 << 20);
+        ouvrirCorrompu();
+        corrompre(DEBUTS + 4 * 2, -5);
+        ouvrirCorrompu();
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ *  This work is licensed under the Creative Commons Attribution-NonCommercial-NoDerivatives 4.0 International License.
+ *  To view a copy of this license, visit http://creativecommons.org/licenses/by-nc-nd/4.0/ or send a letter to Creative
+ *  Commons, PO Box 1866, Mountain View, CA 94042, USA.
+ */
+package fr.ufc.l3info.oprog;
+
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests du catalogue rangé par colonnes.
+ */
+public class TestCatalogueCompact {
+
+    @Test
+    public void catalogueVide() {
+        Catalogue c = CatalogueCompact.compacter(new TableArticles());
+        assertEquals(0, c.taille());
+        assertNull(c.get(3474377910731L));
+    }
+
+    /**
+     * Même contenu que le catalogue d'origine, rangé par ordre croissant des codes
+     */
+    @Test
+    public void memeContenu() throws IOException, FileFormatException {
+        TableArticles t = ChargeurCSV.charger(TestScanette.PATH_TO_CSV + "produits.csv");
+        Catalogue c = CatalogueCompact.compacter(t);
+        assertEquals(t.taille(), c.taille());
+        for (int i = 0; i < t.taille(); i++) {
+            Article a = t.article(i);
+            Article b = c.get(a.getCodeEAN13());
+            assertEquals(a, b);
+            assertEquals(a.getNom(), b.getNom());
+            assertEquals(a.getPrixCentimes(), b.getPrixCentimes());
+            assertEquals(a.getPrixUnitaire(), b.getPrixUnitaire(), 0);
+        }
+        for (int i = 1; i < c.taille(); i++) {
+            assertTrue(c.article(i - 1).getCodeEAN13() < c.article(i).getCodeEAN13());
+        }
+        assertNull(c.get(5410188006712L));
+        assertNull(c.get(0));
+        assertNull(c.get(Long.MAX_VALUE));
+    }
+
+    /**
+     * Recherche par plage : localisée par dichotomie, les articles n'étant construits qu'à la lecture
+     */
+    @Test
+    public void plage() throws IOException, FileFormatException {
+        Catalogue c = CatalogueCompact.compacter(ChargeurCSV.charger(TestScanette.PATH_TO_CSV + "produits.csv"));
+        List<Article> l = c.entre(3560070000000L, 3560080000000L);
+        assertEquals(4, l.size());
+        for (int i = 1; i < l.size(); i++) {
+            assertTrue(l.get(i - 1).getCodeEAN13() < l.get(i).getCodeEAN13());
+        }
+        assertEquals(l.get(0), l.get(0));
+        assertNotSame(l.get(0), l.get(0));
+        assertEquals(c.taille(), c.entre(Long.MIN_VALUE, Long.MAX_VALUE).size());
+        assertEquals(0, c.entre(3560080000000L, 3560070000000L).size());
+        assertEquals(0, CatalogueCompact.compacter(new TableArticles()).entre(0, Long.MAX_VALUE).size());
+        try {
+            l.get(4);
+            fail();
+        }
+        catch (IndexOutOfBoundsException e) {
+            // attendu
+        }
+    }
+
+    /**
+     * Codes regroupés par préfixes, extrêmes et négatifs : toutes les recherches
+     * donnent le même résultat que la table de hachage
+     */
+    @Test
+    public void codesRegroupes() {
+        Random r = new Random(7);
+        TableArticles t = new TableArticles();
+        for (int i = 0; i < 50000; i++) {
+            long prefixe = (i % 3 == 0) ? 3560070000000L : (i % 3 == 1) ? 8715700000000L : 45496000000L;
+            t.put(new Article(prefixe + r.nextInt(10000000), r.nextInt(100000) / 100.0, "Produit " + i));
+        }
+        t.put(new Article(Long.MAX_VALUE, 1, "Max"));
+        t.put(new Article(-5, 1, "Négatif"));
+        CatalogueCompact c = (CatalogueCompact) CatalogueCompact.compacter(t);
+        assertEquals(t.taille(), c.taille());
+        for (int i = 0; i < t.taille(); i++) {
+            Article a = t.article(i);
+            assertEquals(a.getNom(), c.get(a.getCodeEAN13()).getNom());
+            assertEquals(a.getPrixCentimes(), c.prixCentimes(c.rang(a.getCodeEAN13())));
+        }
+        for (int i = 0; i < 50000; i++) {
+            long code = 3560070000000L + r.nextInt(10000000);
+            assertEquals(t.get(code) == null, c.get(code) == null);
+        }
+        assertNull(c.get(Long.MIN_VALUE));
+    }
+
+    /**
+     * Un prix trop élevé pour le format : le catalogue est laissé tel quel
+     */
+    @Test
+    public void prixTropEleve() {
+        TableArticles t = new TableArticles();
+        t.put(Article.enCentimes(3474377910731L, 1L << 40, "Cher"));
+        assertSame(t, CatalogueCompact.compacter(t));
+    }
+
+    /**
+     * Place occupée : une vingtaine d'octets par article hors noms
+     */
+    @Test
+    public void empreinte() {
+        TableArticles t = new TableArticles();
+        for (int i = 0; i < 100000; i++) {
+            t.put(new Article(TestChargeurCSV.ean13(200000000000L + 7 * i), 1.5, "Produit"));
+        }
+        CatalogueCompact c = (CatalogueCompact) CatalogueCompact.compacter(t);
+        assertTrue(c.empreinte() < 100000L * (24 + "Produit".length()));
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ *  This work is licensed under the Creative Commons Attribution-NonCommercial-NoDerivatives 4.0 International License.
+ *  To view a copy of this license, visit http://creativecommons.org/licenses/by-nc-nd/4.0/ or send a letter to Creative
+ *  Commons, PO Box 1866, Mountain View, CA 94042, USA.
+ */
+package fr.ufc.l3info.oprog;
+
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests du catalogue formé d'une base et d'une surcouche de modifications.
+ */
+public class TestCatalogueEnCouches {
+
+    /** Vérifie que le catalogue contient exactement les articles attendus, avec des rangs cohérents */
+    private static void verifier(LinkedHashMap<Long, Article> attendu, Catalogue c) {
+        assertEquals(attendu.size(), c.taille());
+        HashSet<Long> vus = new HashSet<Long>();
+        for (int i = 0; i < c.taille(); i++) {
+            Article a = c.article(i);
+            assertTrue(vus.add(a.getCodeEAN13()));
+            assertEquals(i, c.rang(a.getCodeEAN13()));
+            assertEquals(attendu.get(a.getCodeEAN13()).getNom(), a.getNom());
+        }
+        for (Article a : attendu.values()) {
+            assertEquals(a.getNom(), c.get(a.getCodeEAN13()).getNom());
+        }
+        // recherches par plage
+        TreeMap<Long, Article> tries = new TreeMap<Long, Article>(attendu);
+        long[][] plages = { { Long.MIN_VALUE, Long.MAX_VALUE }, { 1000, 2000 }, { 2999, 3001 }, { 5, 5 } };
+        for (long[] p : plages) {
+            List<Article> l = c.entre(p[0], p[1]);
+            assertEquals(tries.subMap(p[0], p[1]).size(), l.size());
+            int i = 0;
+            for (Article a : tries.subMap(p[0], p[1]).values()) {
+                assertEquals(a.getCodeEAN13(), l.get(i).getCodeEAN13());
+                assertEquals(a.getNom(), l.get(i++).getNom());
+            }
+        }
+    }
+
+    @Test
+    public void remplacementsAjoutsSuppressions() {
+        TableArticles base = new TableArticles();
+        base.put(new Article(1, 1, "un"));
+        base.put(new Article(2, 2, "deux"));
+        base.put(new Article(3, 3, "trois"));
+        CatalogueEnCouches c = CatalogueEnCouches.empiler(base,
+                new Delta().supprimer(1).ajouter(new Article(2, 20, "DEUX")).ajouter(new Article(4, 4, "quatre")).supprimer(5));
+        assertEquals(3, c.taille());
+        assertNull(c.get(1));
+        assertEquals("DEUX", c.get(2).getNom());
+        assertEquals("DEUX", c.article(0).getNom());
+        assertEquals("trois", c.article(1).getNom());
+        assertEquals("quatre", c.article(2).getNom());
+        assertEquals(-1, c.rang(1));
+        assertEquals(-1, c.rang(5));
+        assertEquals(3, base.taille());
+        assertEquals("deux", base.get(2).getNom());
+
+        // une seconde modification est fusionnée avec la surcouche, sur la même base
+        CatalogueEnCouches c2 = CatalogueEnCouches.empiler(c, new Delta().ajouter(new Article(1, 1, "UN")).supprimer(4));
+        assertSame(base, c2.base());
+        assertEquals(4, c2.tailleSurcouche());
+        assertEquals(3, c2.taille());
+        assertEquals("UN", c2.get(1).getNom());
+        assertNull(c2.get(4));
+        assertEquals(3, c.taille());
+    }
+
+    /**
+     * Suite aléatoire de modifications empilées, comparée à l'application directe
+     */
+    @Test
+    public void modificationsAleatoires() {
+        Random r = new Random(3);
+        TableArticles t = new TableArticles();
+        LinkedHashMap<Long, Article> attendu = new LinkedHashMap<Long, Article>();
+        for (int i = 0; i < 2000; i++) {
+            Article a = new Article(r.nextInt(3000), 1, "base " + i);
+            t.put(a);
+            attendu.put(a.getCodeEAN13(), a);
+        }
+        Catalogue base = CatalogueCompact.compacter(t);
+        Catalogue c = base;
+        for (int etape = 0; etape < 20; etape++) {
+            Delta d = new Delta();
+            for (int i = 0; i < 50; i++) {
+                long code = r.nextInt(3500);
+                if (r.nextBoolean()) {
+                    d.supprimer(code);
+                    attendu.remove(code);
+                }
+                else {
+                    Article a = new Article(code, 2, "etape " + etape + " " + i);
+                    d.ajouter(a);
+                    attendu.put(code, a);
+                }
+            }
+            c = CatalogueEnCouches.empiler(c, d);
+            verifier(attendu, c);
+        }
+        assertSame(base, ((CatalogueEnCouches) c).base());
+        verifier(attendu, CatalogueCompact.compacter(c));
+    }
+
+    @Test
+    public void empreinte() {
+        Delta d1 = new Delta().ajouter(new Article(3474377910731L, 1.1, "Marker")).supprimer(3760244111005L);
+        Delta d2 = new Delta().ajouter(new Article(3474377910731L, 1.1, "Marker")).supprimer(3760244111005L);
+        Delta d3 = new Delta().ajouter(new Article(3474377910731L, 1.2, "Marker")).supprimer(3760244111005L);
+        assertEquals(d1.empreinte(), d2.empreinte());
+        assertNotEquals(d1.empreinte(), d3.empreinte());
+        assertEquals(64, d1.empreinte().length());
+    }
+}
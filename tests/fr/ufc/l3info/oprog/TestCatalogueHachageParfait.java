@@ -0,0 +1,189 @@
+/**
+ *  This work is licensed under the Creative Commons Attribution-NonCommercial-NoDerivatives 4.0 International License.
+ *  To view a copy of this license, visit http://creativecommons.org/licenses/by-nc-nd/4.0/ or send a letter to Creative
+ *  Commons, PO Box 1866, Mountain View, CA 94042, USA.
+ */
+package fr.ufc.l3info.oprog;
+
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests du catalogue compressé et de ses composants (hachage parfait, Elias-Fano).
+ */
+public class TestCatalogueHachageParfait {
+
+    @Test
+    public void entiersCompacts() {
+        Random r = new Random(1);
+        for (int largeur = 0; largeur < 64; largeur++) {
+            EntiersCompacts e = new EntiersCompacts(100, largeur);
+            long[] attendu = new long[100];
+            for (int i = 0; i < 100; i++) {
+                attendu[i] = (largeur == 0) ? 0 : r.nextLong() >>> (64 - largeur);
+                e.set(i, attendu[i]);
+            }
+            e.set(50, attendu[50]);
+            for (int i = 0; i < 100; i++) {
+                assertEquals(attendu[i], e.get(i));
+            }
+        }
+        try {
+            new EntiersCompacts(1, 3).set(0, 8);
+            fail();
+        }
+        catch (IllegalArgumentException e) {
+            // attendu
+        }
+    }
+
+    @Test
+    public void eliasFano() {
+        Random r = new Random(2);
+        long[] v = new long[10000];
+        for (int i = 1; i < v.length; i++) {
+            v[i] = v[i - 1] + ((i % 100 == 0) ? 1000000 : r.nextInt(50));
+        }
+        EliasFano ef = new EliasFano(v, v.length);
+        assertEquals(v.length, ef.taille());
+        for (int i = 0; i < v.length; i++) {
+            assertEquals(v[i], ef.get(i));
+        }
+        assertTrue(ef.empreinte() < 8L * v.length / 3);
+        assertEquals(0, new EliasFano(new long[0], 0).taille());
+        assertEquals(42, new EliasFano(new long[] { 42 }, 1).get(0));
+        try {
+            new EliasFano(new long[] { 3, 2 }, 2);
+            fail();
+        }
+        catch (IllegalArgumentException e) {
+            // attendu
+        }
+    }
+
+    /**
+     * Chaque code reçoit un indice distinct entre 0 et n-1, pour quelques bits par code
+     */
+    @Test
+    public void hachageParfaitMinimal() {
+        for (int n : new int[] { 0, 1, 2, 63, 1000, 200000 }) {
+            Random r = new Random(n);
+            long[] cles = new long[n];
+            for (int i = 0; i < n; i++) {
+                cles[i] = r.nextLong();
+            }
+            HachageParfait h = new HachageParfait(cles, n);
+            boolean[] pris = new boolean[n];
+            for (long c : cles) {
+                int i = h.indice(c);
+                assertTrue(i >= 0 && i < n);
+                assertFalse(pris[i]);
+                pris[i] = true;
+            }
+            if (n >= 1000) {
+                assertTrue(8.0 * h.empreinte() / n < 5);
+            }
+        }
+    }
+
+    @Test
+    public void memeContenu() throws IOException, FileFormatException {
+        TableArticles t = ChargeurCSV.charger(TestScanette.PATH_TO_CSV + "produits.csv");
+        Catalogue c = CatalogueHachageParfait.compresser(t);
+        assertTrue(c instanceof CatalogueHachageParfait);
+        assertEquals(t.taille(), c.taille());
+        for (int i = 0; i < t.taille(); i++) {
+            Article a = t.article(i);
+            Article b = c.get(a.getCodeEAN13());
+            assertEquals(a, b);
+            assertEquals(a.getNom(), b.getNom());
+            assertEquals(a.getPrixCentimes(), b.getPrixCentimes());
+            assertEquals(c.rang(a.getCodeEAN13()), Arrays.asList(articlesTries(c)).indexOf(a));
+        }
+        for (int i = 1; i < c.taille(); i++) {
+            assertTrue(c.article(i - 1).getCodeEAN13() < c.article(i).getCodeEAN13());
+        }
+        assertNull(c.get(5410188006712L));
+        assertNull(c.get(0));
+        assertNull(c.get(Long.MAX_VALUE));
+        assertNull(c.get(Long.MIN_VALUE));
+        assertEquals(0, CatalogueHachageParfait.compresser(new TableArticles()).taille());
+        assertNull(CatalogueHachageParfait.compresser(new TableArticles()).get(0));
+    }
+
+    private static Article[] articlesTries(Catalogue c) {
+        Article[] a = new Article[c.taille()];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = c.article(i);
+        }
+        return a;
+    }
+
+    /**
+     * Codes regroupés par préfixes, extrêmes et négatifs : toutes les recherches
+     * donnent le même résultat que la table de hachage, pour un index de moins
+     * de 8 octets par article
+     */
+    @Test
+    public void codesRegroupes() {
+        Random r = new Random(7);
+        TableArticles t = new TableArticles();
+        for (int i = 0; i < 100000; i++) {
+            long prefixe = (i % 3 == 0) ? 3560070000000L : (i % 3 == 1) ? 8715700000000L : 45496000000L;
+            t.put(new Article(prefixe + r.nextInt(10000000), r.nextInt(100000) / 100.0, "Produit " + i));
+        }
+        t.put(new Article(-5, 1, "Negatif"));
+        CatalogueHachageParfait c = (CatalogueHachageParfait) CatalogueHachageParfait.compresser(t);
+        assertEquals(t.taille(), c.taille());
+        for (int i = 0; i < t.taille(); i++) {
+            Article a = t.article(i);
+            Article b = c.get(a.getCodeEAN13());
+            assertEquals(a.getNom(), b.getNom());
+            assertEquals(a.getPrixCentimes(), b.getPrixCentimes());
+        }
+        for (int i = 0; i < 100000; i++) {
+            long code = 8715700000000L + r.nextInt(10000000);
+            assertEquals(t.get(code) == null, c.get(code) == null);
+        }
+        assertNull(c.get(-6));
+        assertNull(c.get(Long.MAX_VALUE));
+        assertTrue(c.empreinteIndex() < 8L * t.taille());
+        assertTrue(c.empreinte() < ((CatalogueCompact) CatalogueCompact.compacter(t)).empreinte());
+
+        // étendue des codes supérieure à 2^63, ou prix négatif : catalogue laissé tel quel
+        t.put(new Article(Long.MAX_VALUE, 1, "Max"));
+        assertSame(t, CatalogueHachageParfait.compresser(t));
+        TableArticles t2 = new TableArticles();
+        t2.put(Article.enCentimes(3474377910731L, -1, "Avoir"));
+        assertSame(t2, CatalogueHachageParfait.compresser(t2));
+    }
+
+    /**
+     * Base compressée : mêmes réponses, même version, modifications toujours possibles
+     */
+    @Test
+    public void baseCompressee() throws IOException, FileFormatException {
+        ArticleDB db = new ArticleDB();
+        db.init(TestScanette.PATH_TO_CSV + "produits.csv");
+        long version = db.getVersion();
+        int taille = db.getTailleDB();
+        db.compresser();
+        assertEquals(version, db.getVersion());
+        assertEquals(taille, db.getTailleDB());
+        assertEquals("Tropicana Tonic Breakfast", db.chercher(5410188006711L).getNom());
+        assertEquals(db.getTailleDB(), db.getArticlesPrefixe("").size());
+        assertEquals(4, db.getArticlesPrefixe("356007").size());
+        assertEquals(45496420598L, db.getArticlesEntre(Long.MIN_VALUE, 3000000000000L).get(0).getCodeEAN13());
+
+        db.appliquer(new Delta().supprimer(5410188006711L).ajouter(new Article(1234567890128L, 2, "Nouveau")));
+        assertNull(db.chercher(5410188006711L));
+        assertEquals("Nouveau", db.chercher(1234567890128L).getNom());
+        assertEquals(taille, db.getTailleDB());
+    }
+}
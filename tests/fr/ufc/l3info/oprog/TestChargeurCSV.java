@@ -0,0 +1,301 @@
+/**
+ *  This work is licensed under the Creative Commons Attribution-NonCommercial-NoDerivatives 4.0 International License.
+ *  To view a copy of this license, visit http://creativecommons.org/licenses/by-nc-nd/4.0/ or send a letter to Creative
+ *  Commons, PO Box 1866, Mountain View, CA 94042, USA.
+ */
+package fr.ufc.l3info.oprog;
+
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests du chargeur parallèle de fichiers CSV.
+ */
+public class TestChargeurCSV {
+
+    File fichier;
+
+    @Before
+    public void setUp() throws IOException {
+        fichier = File.createTempFile("produits", ".csv");
+        fichier.deleteOnExit();
+    }
+
+    private void ecrire(String contenu) throws IOException {
+        FileWriter w = new FileWriter(fichier);
+        w.write(contenu);
+        w.close();
+    }
+
+    /** Complète un code de 12 chiffres par sa clé EAN13 */
+    static long ean13(long code) {
+        long c = code;
+        int somme = 0;
+        for (int i = 0; i < 12; i++) {
+            int chiffre = (int) (c % 10);
+            somme += (i % 2 == 0) ? chiffre * 3 : chiffre;
+            c /= 10;
+        }
+        return code * 10 + (10 - somme % 10) % 10;
+    }
+
+    /**
+     * Fin de lignes Windows, colonnes vides finales et espaces autour du prix
+     */
+    @Test
+    public void variantesDeFormat() throws IOException, FileFormatException {
+        ecrire("3474377910731, 1.10 ,Marker,,\r\n3760244111005,2.,Eau\r3017620402678,1.86,Nutella,10%\r\n");
+        TableArticles t = ChargeurCSV.charger(fichier.getPath());
+        assertEquals(3, t.taille());
+        assertEquals(1.1, t.get(3474377910731L).getPrixUnitaire(), 0);
+        assertEquals("Marker", t.get(3474377910731L).getNom());
+        assertEquals(2.0, t.get(3760244111005L).getPrixUnitaire(), 0);
+        assertEquals(1.67, t.get(3017620402678L).getPrixUnitaire(), 0.001);
+    }
+
+    /**
+     * Les prix sont conservés en centimes, réductions comprises (arrondi inférieur)
+     */
+    @Test
+    public void prixEnCentimes() throws IOException, FileFormatException {
+        ecrire("3474377910731,1.10,Marker,10%\n3760244111005,0.29,Eau\n3017620402678,1.86,Nutella,10%\n");
+        TableArticles t = ChargeurCSV.charger(fichier.getPath());
+        assertEquals(99, t.get(3474377910731L).getPrixCentimes());
+        assertEquals(29, t.get(3760244111005L).getPrixCentimes());
+        assertEquals(167, t.get(3017620402678L).getPrixCentimes());
+        assertEquals(0.99, t.get(3474377910731L).getPrixUnitaire(), 0);
+    }
+
+    /**
+     * Fractions de centime : le prix est arrondi au centime le plus proche, puis la
+     * réduction est appliquée au prix arrondi (la lecture d'origine donnait 1.996
+     * sans réduction et floor(1.7964 * 100) / 100 = 1.79 avec 10%)
+     */
+    @Test
+    public void prixFractionsDeCentime() throws IOException, FileFormatException {
+        ecrire("3474377910731,1.996,Marker\n3760244111005,1.996,Eau,10%\n3017620402678,0.004,Nutella\n");
+        TableArticles t = ChargeurCSV.charger(fichier.getPath());
+        assertEquals(200, t.get(3474377910731L).getPrixCentimes());
+        assertEquals(2.0, t.get(3474377910731L).getPrixUnitaire(), 0);
+        assertEquals(180, t.get(3760244111005L).getPrixCentimes());
+        assertEquals(1.8, t.get(3760244111005L).getPrixUnitaire(), 0);
+        assertEquals(0, t.get(3017620402678L).getPrixCentimes());
+
+        // construit directement, l'article garde son prix unitaire exact
+        Article a = new Article(3474377910731L, 1.996, "Marker");
+        assertEquals(1.996, a.getPrixUnitaire(), 0);
+        assertEquals(200, a.getPrixCentimes());
+    }
+
+    @Test(expected = FileFormatException.class)
+    public void ligneVide() throws IOException, FileFormatException {
+        ecrire("3474377910731,1.1,Marker\n\n3760244111005,2.5,Eau\n");
+        ChargeurCSV.charger(fichier.getPath());
+    }
+
+    @Test(expected = FileFormatException.class)
+    public void codeAvecEspace() throws IOException, FileFormatException {
+        ecrire(" 3474377910731,1.1,Marker\n");
+        ChargeurCSV.charger(fichier.getPath());
+    }
+
+    @Test(expected = FileFormatException.class)
+    public void codeTropGrand() throws IOException, FileFormatException {
+        ecrire("99999999999999999999,1.1,Marker\n");
+        ChargeurCSV.charger(fichier.getPath());
+    }
+
+    @Test(expected = FileFormatException.class)
+    public void reductionSansPourcentage() throws IOException, FileFormatException {
+        ecrire("3474377910731,1.1,Marker, \n");
+        ChargeurCSV.charger(fichier.getPath());
+    }
+
+    @Test(expected = FileFormatException.class)
+    public void cinqColonnes() throws IOException, FileFormatException {
+        ecrire("3474377910731,1.1,Marker,10%,x\n");
+        ChargeurCSV.charger(fichier.getPath());
+    }
+
+    /**
+     * Prix infini : accepté par Double.parseDouble, mais pas exprimable en centimes
+     */
+    @Test(expected = FileFormatException.class)
+    public void prixInfini() throws IOException, FileFormatException {
+        ecrire("3474377910731,Infinity,Marker\n");
+        ChargeurCSV.charger(fichier.getPath());
+    }
+
+    /**
+     * Aucun morceau ne dépasse TAILLE_MAX_MORCEAU, même avec peu de processeurs
+     */
+    @Test
+    public void nombreDeMorceaux() {
+        assertEquals(8, ChargeurCSV.nbMorceaux(8L * ChargeurCSV.TAILLE_MORCEAU, 4));
+        assertEquals(16, ChargeurCSV.nbMorceaux(100L * ChargeurCSV.TAILLE_MORCEAU, 4));
+        assertEquals(1, ChargeurCSV.nbMorceaux(ChargeurCSV.TAILLE_MORCEAU - 1, 1));
+        for (int processeurs = 1; processeurs <= 2; processeurs++) {
+            long taille = 9L << 30;     // 9 Go
+            int nb = ChargeurCSV.nbMorceaux(taille, processeurs);
+            assertTrue(taille / nb <= ChargeurCSV.TAILLE_MAX_MORCEAU);
+            assertTrue(taille / nb >= ChargeurCSV.TAILLE_MORCEAU);
+        }
+    }
+
+    /**
+     * Gros fichier découpé en plusieurs morceaux : tous les articles sont lus,
+     * et en cas de doublon c'est la dernière occurrence qui l'emporte.
+     */
+    @Test
+    public void grosFichierEnMorceaux() throws IOException, FileFormatException {
+        int n = 120000;
+        BufferedWriter w = new BufferedWriter(new FileWriter(fichier));
+        for (int i = 0; i < n; i++) {
+            w.write(ean13(200000000000L + i) + "," + (i % 1000) + "." + (i % 100) + ",Produit numéro " + i + "\n");
+        }
+        // doublons en fin de fichier, donc dans un autre morceau
+        for (int i = 0; i < 10; i++) {
+            w.write(ean13(200000000000L + i) + ",0.5,Doublon " + i + ",50%\n");
+        }
+        w.close();
+        assertTrue(fichier.length() > 2 * ChargeurCSV.TAILLE_MORCEAU);
+
+        TableArticles t = ChargeurCSV.charger(fichier.getPath());
+        assertEquals(n, t.taille());
+        for (int i = 0; i < n; i++) {
+            Article a = t.get(ean13(200000000000L + i));
+            assertEquals(ean13(200000000000L + i), t.article(i).getCodeEAN13());
+            if (i < 10) {
+                assertEquals("Doublon " + i, a.getNom());
+                assertEquals(0.25, a.getPrixUnitaire(), 0);
+            }
+            else {
+                assertEquals(Double.parseDouble((i % 1000) + "." + (i % 100)), a.getPrixUnitaire(), 0);
+            }
+        }
+    }
+
+    /**
+     * Une erreur dans un morceau quelconque fait échouer tout le chargement
+     */
+    @Test(expected = FileFormatException.class)
+    public void grosFichierAvecErreur() throws IOException, FileFormatException {
+        BufferedWriter w = new BufferedWriter(new FileWriter(fichier));
+        for (int i = 0; i < 100000; i++) {
+            long code = ean13(200000000000L + i);
+            w.write((i == 77777 ? code + 1 : code) + ",1.5,Produit " + i + "\n");
+        }
+        w.close();
+        ChargeurCSV.charger(fichier.getPath());
+    }
+
+    /**
+     * Fichier compressé de plusieurs tampons, dont une ligne plus longue qu'un
+     * tampon : même contenu que le fichier non compressé
+     */
+    @Test
+    public void fichierCompresse() throws IOException, FileFormatException {
+        File gz = File.createTempFile("produits", ".csv.gz");
+        gz.deleteOnExit();
+        BufferedWriter w = new BufferedWriter(new FileWriter(fichier));
+        BufferedWriter wgz = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(gz))));
+        StringBuilder nomLong = new StringBuilder();
+        while (nomLong.length() < 3 * ChargeurCSV.TAILLE_MORCEAU) {
+            nomLong.append("Nom tres long ");
+        }
+        for (int i = 0; i < 120000; i++) {
+            String ligne = ean13(200000000000L + i) + "," + (i % 1000) + "." + (i % 100) + ","
+                    + (i == 60000 ? nomLong.toString().trim() : "Produit " + i) + "\n";
+            w.write(ligne);
+            wgz.write(ligne);
+        }
+        w.close();
+        wgz.close();
+        assertTrue(gz.length() < fichier.length());
+
+        TableArticles t = ChargeurCSV.charger(fichier.getPath());
+        TableArticles tgz = ChargeurCSV.charger(gz.getPath());
+        assertEquals(t.taille(), tgz.taille());
+        for (int i = 0; i < t.taille(); i++) {
+            assertEquals(t.article(i).getCodeEAN13(), tgz.article(i).getCodeEAN13());
+            assertEquals(t.article(i).getNom(), tgz.article(i).getNom());
+            assertEquals(t.article(i).getPrixCentimes(), tgz.article(i).getPrixCentimes());
+        }
+
+        ArticleDB db = new ArticleDB();
+        db.init(gz.getPath());
+        assertEquals(120000, db.getTailleDB());
+        assertEquals(nomLong.toString().trim(), db.chercher(ean13(200000060000L)).getNom());
+    }
+
+    /**
+     * Fichier compressé dont une ligne de plus de deux tampons est suivie d'une ligne
+     * de plus d'un tampon : la fin du tampon agrandi ne tient pas dans un tampon
+     */
+    @Test
+    public void fichierCompresseLignesLongues() throws IOException, FileFormatException {
+        File gz = File.createTempFile("produits", ".csv.gz");
+        gz.deleteOnExit();
+        BufferedWriter wgz = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(gz))));
+        StringBuilder nom1 = new StringBuilder();
+        while (nom1.length() < 5 * ChargeurCSV.TAILLE_MORCEAU / 2) {
+            nom1.append("Premier nom tres long ");
+        }
+        StringBuilder nom2 = new StringBuilder();
+        while (nom2.length() < 9 * ChargeurCSV.TAILLE_MORCEAU / 5) {
+            nom2.append("Second nom tres long ");
+        }
+        for (int i = 0; i < 1000; i++) {
+            String nom = (i == 10) ? nom1.toString() : (i == 11) ? nom2.toString() : "Produit " + i;
+            wgz.write(ean13(200000000000L + i) + ",1.5," + nom + "\n");
+        }
+        wgz.close();
+
+        TableArticles t = ChargeurCSV.charger(gz.getPath());
+        assertEquals(1000, t.taille());
+        assertEquals(nom1.toString().trim(), t.get(ean13(200000000010L)).getNom());
+        assertEquals(nom2.toString().trim(), t.get(ean13(200000000011L)).getNom());
+        assertEquals("Produit 999", t.get(ean13(200000000999L)).getNom());
+    }
+
+    @Test(expected = FileFormatException.class)
+    public void fichierCompresseAvecErreur() throws IOException, FileFormatException {
+        File gz = File.createTempFile("produits", ".csv.gz");
+        gz.deleteOnExit();
+        BufferedWriter w = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(gz))));
+        for (int i = 0; i < 100000; i++) {
+            long code = ean13(200000000000L + i);
+            w.write((i == 77777 ? code + 1 : code) + ",1.5,Produit " + i + "\n");
+        }
+        w.close();
+        ChargeurCSV.charger(gz.getPath());
+    }
+
+    /**
+     * Fichier qui n'est pas au format gzip
+     */
+    @Test(expected = IOException.class)
+    public void fichierCompresseIncorrect() throws IOException, FileFormatException {
+        File gz = File.createTempFile("produits", ".csv.gz");
+        gz.deleteOnExit();
+        ecrireDans(gz, "5410188006711,2.15,Tropicana\n");
+        new ArticleDB().init(gz.getPath());
+    }
+
+    private static void ecrireDans(File f, String contenu) throws IOException {
+        FileWriter w = new FileWriter(f);
+        w.write(contenu);
+        w.close();
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ *  This work is licensed under the Creative Commons Attribution-NonCommercial-NoDerivatives 4.0 International License.
+ *  To view a copy of this license, visit http://creativecommons.org/licenses/by-nc-nd/4.0/ or send a letter to Creative
+ *  Commons, PO Box 1866, Mountain View, CA 94042, USA.
+ */
+package fr.ufc.l3info.oprog;
+
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Lectures concurrentes d'une base modifiée en parallèle.
+ */
+public class TestConcurrence {
+
+    static final int NB_SURVEILLES = 200;
+    static final int NB_VERSIONS = 300;
+
+    static long code(int i) {
+        return TestChargeurCSV.ean13(300000000000L + i);
+    }
+
+    /**
+     * Chaque modification fixe le prix de tous les articles surveillés au numéro
+     * de la version : un lecteur ne doit jamais observer deux prix différents dans
+     * un même instantané, ni perdre un article.
+     */
+    @Test
+    public void lecturesPendantLesModifications() throws Exception {
+        final ArticleDB db = new ArticleDB();
+        Delta initial = new Delta();
+        for (int i = 0; i < 10000; i++) {
+            initial.ajouter(new Article(code(i), 1, "Produit " + i));
+        }
+        db.appliquer(initial);
+        final AtomicBoolean fini = new AtomicBoolean(false);
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            ArrayList<Future<Long>> lecteurs = new ArrayList<Future<Long>>();
+            for (int t = 0; t < 7; t++) {
+                lecteurs.add(pool.submit(new Callable<Long>() {
+                    public Long call() {
+                        long nbLectures = 0;
+                        while (!fini.get()) {
+                            ArticleDB vue = db.instantane();
+                            long prix = vue.chercher(code(0)).getPrixCentimes();
+                            for (int i = 1; i < NB_SURVEILLES; i++) {
+                                Article a = vue.chercher(code(i));
+                                assertNotNull(a);
+                                assertEquals(prix, a.getPrixCentimes());
+                            }
+                            assertNotNull(db.chercher(code(NB_SURVEILLES + (int) (nbLectures % 1000))));
+                            nbLectures++;
+                        }
+                        return nbLectures;
+                    }
+                }));
+            }
+            Future<Long> ecrivain = pool.submit(new Callable<Long>() {
+                public Long call() {
+                    long v = 0;
+                    for (int n = 0; n < NB_VERSIONS; n++) {
+                        Delta d = new Delta();
+                        for (int i = 0; i < NB_SURVEILLES; i++) {
+                            d.ajouter(Article.enCentimes(code(i), db.getVersion() + 1, "Produit " + i));
+                        }
+                        v = db.appliquer(d);
+                    }
+                    fini.set(true);
+                    return v;
+                }
+            });
+            assertEquals(NB_VERSIONS + 1, ecrivain.get().longValue());
+            for (Future<Long> f : lecteurs) {
+                assertTrue(f.get() > 0);
+            }
+        }
+        finally {
+            fini.set(true);
+            pool.shutdownNow();
+        }
+        assertEquals(NB_VERSIONS + 1, db.chercher(code(0)).getPrixCentimes());
+        assertEquals(10000, db.getTailleDB());
+    }
+
+    /**
+     * Demandes simultanées au registre : un seul chargement, une seule instance
+     */
+    @Test
+    public void registrePartage() throws Exception {
+        ArticleDBCache.vider();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            ArrayList<Future<ArticleDB>> demandes = new ArrayList<Future<ArticleDB>>();
+            for (int t = 0; t < 64; t++) {
+                demandes.add(pool.submit(new Callable<ArticleDB>() {
+                    public ArticleDB call() throws Exception {
+                        return ArticleDBCache.get(TestScanette.PATH_TO_CSV + "produits.csv");
+                    }
+                }));
+            }
+            ArticleDB db = demandes.get(0).get();
+            for (Future<ArticleDB> f : demandes) {
+                assertSame(db, f.get());
+            }
+            assertEquals(1, ArticleDBCache.getNbChargements());
+            assertEquals(64, ArticleDBCache.getNbSucces() + ArticleDBCache.getNbEchecs());
+        }
+        finally {
+            pool.shutdownNow();
+            ArticleDBCache.vider();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ *  This work is licensed under the Creative Commons Attribution-NonCommercial-NoDerivatives 4.0 International License.
+ *  To view a copy of this license, visit http://creativecommons.org/licenses/by-nc-nd/4.0/ or send a letter to Creative
+ *  Commons, PO Box 1866, Mountain View, CA 94042, USA.
+ */
+package fr.ufc.l3info.oprog;
+
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests des modifications incrémentales de la base de données d'articles.
+ */
+public class TestDelta {
+
+    ArticleDB db;
+
+    @Before
+    public void setUp() throws IOException, FileFormatException {
+        db = new ArticleDB();
+        db.init(TestScanette.PATH_TO_CSV + "validFile.csv");
+    }
+
+    private static ByteArrayInputStream flux(String contenu) {
+        return new ByteArrayInputStream(contenu.getBytes());
+    }
+
+    /**
+     * Ajout, remplacement et suppression
+     */
+    @Test
+    public void ajoutRemplacementSuppression() throws IOException, FileFormatException, ArticleNotFoundException {
+        long v = db.getVersion();
+        assertEquals(v + 1, db.appliquer(flux("+,3474377910731,1.50,Marker rouge\n-,3760244111005\n+,3017620402678,1.86,Nutella,10%\n")));
+        assertEquals(v + 1, db.getVersion());
+        assertEquals(2, db.getTailleDB());
+        assertEquals(1.5, db.getArticle(3474377910731L).getPrixUnitaire(), 0.001);
+        assertEquals("Marker rouge", db.getArticle(3474377910731L).getNom());
+        assertEquals(1.67, db.getArticle(3017620402678L).getPrixUnitaire(), 0.001);
+        try {
+            db.getArticle(3760244111005L);
+            fail();
+        }
+        catch (ArticleNotFoundException e) { }
+    }
+
+    /**
+     * La dernière opération sur un même code l'emporte
+     */
+    @Test
+    public void derniereOperationGagne() throws IOException, FileFormatException, ArticleNotFoundException {
+        db.appliquer(flux("-,3474377910731\n+,3474377910731,9.99,Marker\n+,3760244111005,3,Eau\n-,3760244111005"));
+        assertEquals(1, db.getTailleDB());
+        assertEquals(9.99, db.getArticle(3474377910731L).getPrixUnitaire(), 0.001);
+    }
+
+    /**
+     * Un fichier de modifications incorrect ne modifie pas la base
+     */
+    @Test
+    public void deltaIncorrect() throws IOException, ArticleNotFoundException {
+        long v = db.getVersion();
+        String[] incorrects = { "+,3474377910731,-1,Marker", "3474377910731,1,Marker", "-,abc", "*,1", "+,3474377910730,1,Marker" };
+        for (String delta : incorrects) {
+            try {
+                db.appliquer(flux("-,3760244111005\n" + delta));
+                fail(delta);
+            }
+            catch (FileFormatException e) { }
+        }
+        assertEquals(v, db.getVersion());
+        assertEquals(2, db.getTailleDB());
+        assertEquals(1.1, db.getArticle(3474377910731L).getPrixUnitaire(), 0.001);
+    }
+
+    @Test
+    public void deltaDepuisFichier() throws IOException, FileFormatException {
+        File f = File.createTempFile("delta", ".csv");
+        f.deleteOnExit();
+        FileWriter w = new FileWriter(f);
+        w.write("-,3474377910731\r\n-,3760244111005\r\n");
+        w.close();
+        db.appliquer(f.getPath());
+        assertEquals(0, db.getTailleDB());
+    }
+
+    /**
+     * Un instantané conserve la version de la base au moment de sa création
+     */
+    @Test
+    public void instantaneFige() throws IOException, FileFormatException, ArticleNotFoundException {
+        ArticleDB vue = db.instantane();
+        db.appliquer(new Delta().ajouter(new Article(3474377910731L, 5, "Marker")).supprimer(3760244111005L));
+        assertEquals(1.1, vue.getArticle(3474377910731L).getPrixUnitaire(), 0.001);
+        assertEquals(2, vue.getTailleDB());
+        assertEquals(5, db.getArticle(3474377910731L).getPrixUnitaire(), 0.001);
+        assertEquals(db.getVersion() - 1, vue.getVersion());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void instantaneNonModifiable() {
+        db.instantane().appliquer(new Delta().supprimer(3474377910731L));
+    }
+
+    /**
+     * Un appareil ne peut pas modifier la base partagée, et donc les prix des
+     * paniers en cours sur les autres appareils
+     */
+    @Test
+    public void panierCoherent() throws IOException, FileFormatException, ProductDBFailureException {
+        ArticleDBCache.vider();
+        Scanette scan = new Scanette(TestScanette.PATH_TO_CSV + "produitsOK.csv");
+        ArticleDB partagee = ArticleDBCache.get(TestScanette.PATH_TO_CSV + "produitsOK.csv");
+        assertEquals(0, scan.debloquer());
+        assertEquals(0, scan.scanner(8715700110622L));
+        try {
+            partagee.appliquer(flux("+,8715700110622,9.99,Ketchup\n-,5410188006711\n"));
+            fail();
+        }
+        catch (IllegalStateException e) {
+            // attendu
+        }
+        assertEquals(0, scan.scanner(5410188006711L));
+        Set<Article> articles = scan.getArticles();
+        for (Article a : articles) {
+            if (a.getCodeEAN13() == 8715700110622L) {
+                assertEquals(0.96, a.getPrixUnitaire(), 0.001);
+            }
+        }
+        assertEquals(2, articles.size());
+
+        // les modifications propres passent par une surcouche, sans effet sur la base partagée
+        ArticleDB propre = partagee.surcharger(new Delta().supprimer(5410188006711L));
+        assertNull(propre.chercher(5410188006711L));
+        scan.abandon();
+        assertEquals(0, scan.debloquer());
+        assertEquals(0, scan.scanner(5410188006711L));
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ *  This work is licensed under the Creative Commons Attribution-NonCommercial-NoDerivatives 4.0 International License.
+ *  To view a copy of this license, visit http://creativecommons.org/licenses/by-nc-nd/4.0/ or send a letter to Creative
+ *  Commons, PO Box 1866, Mountain View, CA 94042, USA.
+ */
+package fr.ufc.l3info.oprog;
+
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests du filtre des codes absents.
+ */
+public class TestFiltreBloom {
+
+    /**
+     * Aucun code inséré n'est déclaré absent
+     */
+    @Test
+    public void pasDeFauxNegatif() {
+        FiltreBloom f = new FiltreBloom(100000);
+        for (long i = 0; i < 100000; i++) {
+            f.ajouter(3000000000000L + i * 7);
+        }
+        for (long i = 0; i < 100000; i++) {
+            assertTrue(f.peutContenir(3000000000000L + i * 7));
+        }
+    }
+
+    /**
+     * Le taux de faux positifs reste proche de 1 %
+     */
+    @Test
+    public void tauxDeFauxPositifs() {
+        FiltreBloom f = new FiltreBloom(100000);
+        for (long i = 0; i < 100000; i++) {
+            f.ajouter(3000000000000L + i * 7);
+        }
+        int faux = 0;
+        for (long i = 0; i < 100000; i++) {
+            if (f.peutContenir(3000000000001L + i * 7)) {
+                faux++;
+            }
+        }
+        assertTrue("faux positifs : " + faux, faux < 3000);
+    }
+
+    @Test
+    public void filtreVide() {
+        FiltreBloom f = new FiltreBloom(0);
+        assertFalse(f.peutContenir(3474377910731L));
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ *  This work is licensed under the Creative Commons Attribution-NonCommercial-NoDerivatives 4.0 International License.
+ *  To view a copy of this license, visit http://creativecommons.org/licenses/by-nc-nd/4.0/ or send a letter to Creative
+ *  Commons, PO Box 1866, Mountain View, CA 94042, USA.
+ */
+package fr.ufc.l3info.oprog;
+
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests du calcul des clés de contrôle GTIN.
+ */
+public class TestGTIN {
+
+    /** Vérification d'un EAN13 à partir de sa représentation textuelle (ancienne méthode) */
+    private static boolean valideParChaine(long code) {
+        if (code < 0) {
+            return false;
+        }
+        String tab = Long.toString(code);
+        if (tab.length() > 13) {
+            return false;
+        }
+        while (tab.length() < 13) {
+            tab = "0" + tab;
+        }
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            int digit = tab.charAt(i) - '0';
+            sum += (i % 2 == 1) ? digit * 3 : digit;
+        }
+        int reste = sum % 10;
+        int key = (reste == 0) ? 0 : 10 - reste;
+        return key == (tab.charAt(12) - '0');
+    }
+
+    @Test
+    public void formats() {
+        assertTrue(GTIN.estValide(96385074L, GTIN.EAN8));
+        assertTrue(GTIN.estValide(36000291452L, GTIN.UPC_A));
+        assertTrue(GTIN.estValide(4006381333931L, GTIN.EAN13));
+        assertTrue(GTIN.estValide(10012345678902L, GTIN.GTIN14));
+        assertTrue(GTIN.estValide(12345600012L, GTIN.GTIN14));
+        // trop long pour le format
+        assertFalse(GTIN.estValide(4006381333931L, GTIN.EAN8));
+        assertFalse(GTIN.estValide(10012345678902L, GTIN.EAN13));
+        // clé erronée
+        assertFalse(GTIN.estValide(96385075L, GTIN.EAN8));
+        assertFalse(GTIN.estValide(-96385074L, GTIN.EAN8));
+    }
+
+    @Test
+    public void cleEtCompletion() {
+        assertEquals(1, GTIN.cle(347437791073L));
+        assertEquals(0, GTIN.cle(0));
+        assertEquals(-1, GTIN.cle(-1));
+        assertEquals(3474377910731L, GTIN.completer(347437791073L, GTIN.EAN13));
+        assertEquals(96385074L, GTIN.completer(9638507L, GTIN.EAN8));
+        assertEquals(-1, GTIN.completer(96385074L, GTIN.EAN8));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void longueurIncorrecte() {
+        GTIN.estValide(96385074L, 10);
+    }
+
+    /**
+     * Même résultat que la vérification sur la représentation textuelle
+     */
+    @Test
+    public void comparaisonAvecChaine() {
+        Random r = new Random(13);
+        for (int i = 0; i < 200000; i++) {
+            long code;
+            switch (i % 4) {
+                case 0: code = r.nextLong(); break;
+                case 1: code = (r.nextLong() >>> 1) % 100000000000000L; break;
+                case 2: code = GTIN.completer((r.nextLong() >>> 1) % 1000000000000L, GTIN.EAN13); break;
+                default: code = r.nextInt(100000); break;
+            }
+            assertEquals(Long.toString(code), valideParChaine(code), GTIN.estValideEAN13(code));
+        }
+        assertEquals(valideParChaine(Long.MAX_VALUE), GTIN.estValideEAN13(Long.MAX_VALUE));
+        assertEquals(valideParChaine(9999999999999L), GTIN.estValideEAN13(9999999999999L));
+    }
+
+    @Test
+    public void validationParLot() {
+        long[] codes = { 3474377910731L, 4006381333931L, 4006381333932L, 130 };
+        assertEquals(-1, GTIN.premierInvalide(codes, 0, 2, GTIN.EAN13));
+        assertEquals(2, GTIN.premierInvalide(codes, 0, 4, GTIN.EAN13));
+        assertEquals(-1, GTIN.premierInvalide(codes, 3, 4, GTIN.EAN13));
+        boolean[] resultats = new boolean[codes.length];
+        assertEquals(3, GTIN.valider(codes, resultats, GTIN.EAN13));
+        assertTrue(resultats[0]);
+        assertFalse(resultats[2]);
+    }
+}
@@ -9,7 +9,9 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 
 import java.util.HashSet;
 
@@ -37,7 +39,21 @@ public class TestMaCaisse {
         maCaisse = Mockito.spy(new MaCaisse(TestScanette.PATH_TO_CSV + "produitsOK.csv"));
 
         maScanette = Mockito.mock(Scanette.class);
+        simulerInstantane(maScanette);
+    }
 
+    /**
+     * Fait renvoyer par une scanette simulée l'instantané de son panier, reconstruit à
+     * chaque appel à partir de ses autres méthodes (cf. InstantanePanier.depuis(Scanette)),
+     * si bien que les bouchons posés ensuite sur celles-ci sont pris en compte.
+     * @param s la scanette simulée
+     */
+    static void simulerInstantane(final Scanette s) {
+        when(s.instantanePanier()).thenAnswer(new Answer<InstantanePanier>() {
+            public InstantanePanier answer(InvocationOnMock invocation) {
+                return InstantanePanier.depuis(s);
+            }
+        });
     }
 
     private void initPanier() {
@@ -0,0 +1,123 @@
+/**
+ *  This work is licensed under the Creative Commons Attribution-NonCommercial-NoDerivatives 4.0 International License.
+ *  To view a copy of this license, visit http://creativecommons.org/licenses/by-nc-nd/4.0/ or send a letter to Creative
+ *  Commons, PO Box 1866, Mountain View, CA 94042, USA.
+ */
+package fr.ufc.l3info.oprog;
+
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests du panier indexé par code EAN.
+ */
+public class TestPanierEAN {
+
+    PanierEAN panier;
+
+    @Before
+    public void setUp() {
+        panier = new PanierEAN();
+    }
+
+    @Test
+    public void panierVide() {
+        assertTrue(panier.estVide());
+        assertEquals(0, panier.quantite(3474377910731L));
+        assertEquals(0, panier.prixCentimes(3474377910731L));
+        assertEquals(0, panier.retirer(3474377910731L));
+    }
+
+    @Test
+    public void ajoutModificationRetrait() {
+        panier.fixer(3474377910731L, 1, 110);
+        panier.fixer(0, 2, 5);
+        panier.fixer(3474377910731L, 3, 110);
+        assertEquals(2, panier.taille());
+        assertEquals(3, panier.quantite(3474377910731L));
+        assertEquals(110, panier.prixCentimes(3474377910731L));
+        assertEquals(2, panier.quantite(0));
+        panier.fixer(0, 0, 5);
+        assertEquals(1, panier.taille());
+        assertEquals(3, panier.retirer(3474377910731L));
+        assertTrue(panier.estVide());
+    }
+
+    /**
+     * Le nombre total d'articles suit chaque modification et le panier vidé reste utilisable
+     */
+    @Test
+    public void nombreDArticles() {
+        panier.fixer(3474377910731L, 2, 110);
+        panier.fixer(3760244111005L, 5, 50);
+        assertEquals(7, panier.nbArticles());
+        panier.fixer(3474377910731L, 1, 110);
+        assertEquals(6, panier.nbArticles());
+        panier.retirer(3760244111005L);
+        assertEquals(1, panier.nbArticles());
+        int capacite = panier.capacite();
+        panier.vider();
+        assertEquals(0, panier.nbArticles());
+        assertEquals(capacite, panier.capacite());
+        panier.fixer(3760244111005L, 3, 50);
+        assertEquals(3, panier.nbArticles());
+        assertEquals(0, panier.quantite(3474377910731L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void quantiteNegative() {
+        panier.fixer(3474377910731L, -1, 110);
+    }
+
+    /**
+     * Suite aléatoire d'opérations comparée à une HashMap, avec de nombreuses
+     * collisions (codes multiples de la capacité) pour exercer le comblement
+     * des trous lors des retraits.
+     */
+    @Test
+    public void comparaisonAvecHashMap() {
+        Random r = new Random(42);
+        HashMap<Long, Integer> attendu = new HashMap<Long, Integer>();
+        for (int n = 0; n < 200000; n++) {
+            long code = r.nextBoolean() ? r.nextInt(300) : (long) r.nextInt(300) << 20;
+            if (r.nextInt(3) == 0) {
+                Integer q = attendu.remove(code);
+                assertEquals(q == null ? 0 : q.intValue(), panier.retirer(code));
+            }
+            else {
+                int q = 1 + r.nextInt(5);
+                attendu.put(code, q);
+                panier.fixer(code, q, code % 1000);
+            }
+            if (n % 1000 == 0) {
+                panier.vider();
+                attendu.clear();
+            }
+        }
+        assertEquals(attendu.size(), panier.taille());
+        for (Map.Entry<Long, Integer> e : attendu.entrySet()) {
+            assertEquals(e.getValue().intValue(), panier.quantite(e.getKey()));
+            assertEquals(e.getKey() % 1000, panier.prixCentimes(e.getKey()));
+        }
+        int occupees = 0;
+        for (int i = 0; i < panier.capacite(); i++) {
+            if (panier.quantiteCase(i) > 0) {
+                occupees++;
+                assertEquals(attendu.get(panier.codeCase(i)).intValue(), panier.quantiteCase(i));
+            }
+        }
+        assertEquals(attendu.size(), occupees);
+        int total = 0;
+        for (int q : attendu.values()) {
+            total += q;
+        }
+        assertEquals(total, panier.nbArticles());
+    }
+}
@@ -0,0 +1,225 @@
+/**
+ *  This work is licensed under the Creative Commons Attribution-NonCommercial-NoDerivatives 4.0 International License.
+ *  To view a copy of this license, visit http://creativecommons.org/licenses/by-nc-nd/4.0/ or send a letter to Creative
+ *  Commons, PO Box 1866, Mountain View, CA 94042, USA.
+ */
+package fr.ufc.l3info.oprog;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests de la résolution asynchrone des articles inconnus par un catalogue de second niveau.
+ */
+public class TestResolveurInconnus {
+
+    /** Codes présents dans produits.csv mais pas dans produitsOK.csv */
+    static final long DAUCY = 3017800238592L;
+    static final long CAHIER = 3020120029030L;
+
+    ArticleDB central;
+    ResolveurInconnus resolveur;
+
+    @Before
+    public void setUp() throws IOException, FileFormatException {
+        central = new ArticleDB();
+        central.init(TestScanette.PATH_TO_CSV + "produits.csv");
+    }
+
+    @After
+    public void tearDown() {
+        if (resolveur != null) {
+            resolveur.fermer();
+        }
+    }
+
+    /**
+     * Les demandes rapprochées sont regroupées en lots ; les codes inconnus du
+     * catalogue distant sont eux aussi gardés en cache
+     */
+    @Test
+    public void resolutionParLots() throws InterruptedException {
+        CatalogueDistantLocal distant = new CatalogueDistantLocal(central, 0);
+        resolveur = new ResolveurInconnus(distant, 100, 8);
+        long debut = System.nanoTime();
+        for (int i = 0; i < 20; i++) {
+            resolveur.demander(TestChargeurCSV.ean13(400000000000L + i));
+        }
+        resolveur.demander(DAUCY);
+        resolveur.demander(DAUCY);
+        assertTrue(resolveur.attendre(5000));
+        assertTrue(System.nanoTime() - debut < 5000000000L);
+        assertEquals(21, resolveur.getTailleCache());
+        assertTrue(distant.getNbLots() >= 3 && distant.getNbLots() < 21);
+        assertEquals("Daucy Curry", resolveur.chercher(DAUCY).getNom().substring(0, 11));
+        assertTrue(resolveur.estResolu(TestChargeurCSV.ean13(400000000000L)));
+        assertNull(resolveur.chercher(TestChargeurCSV.ean13(400000000000L)));
+
+        // code déjà en cache : pas de nouvelle consultation
+        int lots = distant.getNbLots();
+        resolveur.demander(DAUCY);
+        assertTrue(resolveur.attendre(1000));
+        assertEquals(lots, distant.getNbLots());
+    }
+
+    /**
+     * Les demandes ne bloquent pas, même lorsque le catalogue distant est lent
+     */
+    @Test
+    public void demandesNonBloquantes() throws InterruptedException {
+        resolveur = new ResolveurInconnus(new CatalogueDistantLocal(central, 300), 100, 4);
+        long debut = System.nanoTime();
+        for (int i = 0; i < 50; i++) {
+            resolveur.demander(TestChargeurCSV.ean13(400000000000L + i));
+        }
+        assertTrue(System.nanoTime() - debut < 200000000L);
+        assertFalse(resolveur.estResolu(TestChargeurCSV.ean13(400000000049L)));
+        assertTrue(resolveur.attendre(10000));
+        assertTrue(resolveur.estResolu(TestChargeurCSV.ean13(400000000049L)));
+    }
+
+    @Test
+    public void evictionDesMoinsRecents() throws InterruptedException {
+        resolveur = new ResolveurInconnus(new CatalogueDistantLocal(central, 0), 5, 100);
+        resolveur.demander(DAUCY);
+        assertTrue(resolveur.attendre(5000));
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(resolveur.chercher(DAUCY));
+            resolveur.demander(TestChargeurCSV.ean13(400000000000L + i));
+            assertTrue(resolveur.attendre(5000));
+        }
+        assertEquals(5, resolveur.getTailleCache());
+        assertTrue(resolveur.estResolu(DAUCY));
+        assertFalse(resolveur.estResolu(TestChargeurCSV.ean13(400000000000L)));
+    }
+
+    /**
+     * Un lot en échec est abandonné et peut être redemandé
+     */
+    @Test
+    public void catalogueIndisponible() throws InterruptedException {
+        CatalogueDistant enPanne = new CatalogueDistant() {
+            public Article[] resoudre(long[] codes) throws IOException {
+                throw new IOException("hors ligne");
+            }
+        };
+        resolveur = new ResolveurInconnus(enPanne, 10, 10);
+        resolveur.demander(DAUCY);
+        assertTrue(resolveur.attendre(5000));
+        assertFalse(resolveur.estResolu(DAUCY));
+        assertEquals(1, resolveur.getNbEchecs());
+        resolveur.demander(DAUCY);
+        assertTrue(resolveur.attendre(5000));
+        assertEquals(2, resolveur.getNbEchecs());
+    }
+
+    /**
+     * Les articles résolus avant la transmission sont ajoutés au panier,
+     * les autres restent inconnus
+     */
+    @Test
+    public void transmissionApresResolution() throws Exception {
+        resolveur = new ResolveurInconnus(new CatalogueDistantLocal(central, 0), 100, 10);
+        final Scanette scan = new Scanette(TestScanette.PATH_TO_CSV + "produitsOK.csv");
+        scan.setResolveur(resolveur);
+        scan.debloquer();
+        assertEquals(0, scan.scanner(5410188006711L));
+        assertEquals(-2, scan.scanner(DAUCY));
+        assertEquals(-2, scan.scanner(CAHIER));
+        assertEquals(-2, scan.scanner(CAHIER));
+        assertEquals(-2, scan.scanner(TestChargeurCSV.ean13(400000000000L)));
+        assertTrue(resolveur.attendre(5000));
+
+        final InstantanePanier[] transmis = new InstantanePanier[1];
+        Caisse caisse = Mockito.mock(Caisse.class);
+        Mockito.when(caisse.connexion(scan)).thenAnswer(new Answer<Integer>() {
+            public Integer answer(InvocationOnMock invocation) {
+                transmis[0] = scan.instantanePanier();
+                return 1;
+            }
+        });
+        assertEquals(1, scan.transmission(caisse));
+        assertEquals(3, transmis[0].nbCodes());
+        assertEquals(4, transmis[0].nbArticles());
+        assertEquals(1, transmis[0].nbInconnus());
+        assertEquals(TestChargeurCSV.ean13(400000000000L), transmis[0].inconnu(0));
+        assertEquals(2, scan.quantite(CAHIER));
+        assertEquals(3, scan.getArticles().size());
+        assertEquals(1, scan.getReferencesInconnues().size());
+    }
+
+    /** Caisse simulée renvoyant successivement les codes donnés à chaque connexion */
+    private static Caisse caisseRepondant(Scanette scan, Integer premier, Integer... suivants) {
+        Caisse caisse = Mockito.mock(Caisse.class);
+        Mockito.when(caisse.connexion(scan)).thenReturn(premier, suivants);
+        return caisse;
+    }
+
+    /**
+     * Une transmission refusée par la caisse ne modifie pas le panier : les articles
+     * résolus redeviennent inconnus, et sont ajoutés à la transmission suivante
+     * même s'ils ont quitté le cache du résolveur entre-temps
+     */
+    @Test
+    public void transmissionRefusee() throws Exception {
+        resolveur = new ResolveurInconnus(new CatalogueDistantLocal(central, 0), 2, 10);
+        Scanette scan = new Scanette(TestScanette.PATH_TO_CSV + "produitsOK.csv");
+        scan.setResolveur(resolveur);
+        scan.debloquer();
+        assertEquals(0, scan.scanner(5410188006711L));
+        assertEquals(-2, scan.scanner(CAHIER));
+        assertEquals(-2, scan.scanner(CAHIER));
+        assertTrue(resolveur.attendre(5000));
+
+        Caisse caisse = caisseRepondant(scan, -1, 1);
+        assertEquals(-1, scan.transmission(caisse));
+        assertEquals(0, scan.quantite(CAHIER));
+        assertEquals(1, scan.quantite(5410188006711L));
+        assertEquals(1, scan.getArticles().size());
+        assertEquals(1, scan.getReferencesInconnues().size());
+
+        // éviction de CAHIER du cache du résolveur
+        resolveur.demander(DAUCY);
+        resolveur.demander(TestChargeurCSV.ean13(400000000000L));
+        assertTrue(resolveur.attendre(5000));
+        assertFalse(resolveur.estResolu(CAHIER));
+
+        assertEquals(1, scan.transmission(caisse));
+        assertEquals(2, scan.quantite(CAHIER));
+        assertEquals(0, scan.getReferencesInconnues().size());
+        assertEquals(2, scan.getArticles().size());
+    }
+
+    /**
+     * Les articles résolus restent dans le panier une fois sortis du cache du résolveur
+     */
+    @Test
+    public void articlesResolusConserves() throws Exception {
+        resolveur = new ResolveurInconnus(new CatalogueDistantLocal(central, 0), 2, 10);
+        Scanette scan = new Scanette(TestScanette.PATH_TO_CSV + "produitsOK.csv");
+        scan.setResolveur(resolveur);
+        scan.debloquer();
+        assertEquals(-2, scan.scanner(DAUCY));
+        assertEquals(-2, scan.scanner(CAHIER));
+        assertTrue(resolveur.attendre(5000));
+        assertEquals(1, scan.transmission(caisseRepondant(scan, 1)));
+        assertEquals(2, scan.getArticles().size());
+
+        for (int i = 0; i < 4; i++) {
+            resolveur.demander(TestChargeurCSV.ean13(400000000000L + i));
+        }
+        assertTrue(resolveur.attendre(5000));
+        assertFalse(resolveur.estResolu(DAUCY));
+        assertFalse(resolveur.estResolu(CAHIER));
+        assertEquals(2, scan.getArticles().size());
+    }
+}
@@ -18,6 +18,11 @@ import org.mockito.junit.MockitoJUnitRunner;
 
 import org.junit.runner.RunWith;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.Set;
 
 /**
@@ -636,5 +641,40 @@ public class TestScanette {
         assertEquals(2, scan.getReferencesInconnues().size());
     }
 
+    /**
+     * Instantané du panier transmis à la caisse, et sa sérialisation
+     */
+    @Test
+    public void instantanePanier() throws IOException, ClassNotFoundException {
+        scan.debloquer();
+        scan.scanner(5410188006711L);
+        scan.scanner(5410188006711L);
+        scan.scanner(8715700110622L);
+        scan.scanner(5410188006712L);
+        scan.scanner(5410188006712L);
+        InstantanePanier p = scan.instantanePanier();
+
+        ByteArrayOutputStream octets = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(octets);
+        out.writeObject(p);
+        out.close();
+        p = (InstantanePanier) new ObjectInputStream(new ByteArrayInputStream(octets.toByteArray())).readObject();
+
+        assertEquals(2, p.nbCodes());
+        assertEquals(3, p.nbArticles());
+        assertEquals(1, p.nbInconnus());
+        assertEquals(5410188006712L, p.inconnu(0));
+        assertFalse(p.relectureEffectuee());
+        for (int i = 0; i < p.nbCodes(); i++) {
+            assertEquals(scan.quantite(p.code(i)), p.quantite(i));
+            assertEquals(p.code(i) == 8715700110622L ? 96 : 215, p.prixCentimes(i));
+        }
+
+        // l'instantané ne suit pas les modifications ultérieures
+        scan.scanner(8715700110622L);
+        assertEquals(3, p.nbArticles());
+        assertEquals(4, scan.instantanePanier().nbArticles());
+    }
+
 
 }
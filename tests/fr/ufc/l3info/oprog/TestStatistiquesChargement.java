@@ -0,0 +1,138 @@
+/**
+ *  This work is licensed under the Creative Commons Attribution-NonCommercial-NoDerivatives 4.0 International License.
+ *  To view a copy of this license, visit http://creativecommons.org/licenses/by-nc-nd/4.0/ or send a letter to Creative
+ *  Commons, PO Box 1866, Mountain View, CA 94042, USA.
+ */
+package fr.ufc.l3info.oprog;
+
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import fr.ufc.l3info.oprog.StatistiquesChargement.MotifRejet;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests du relevé des chargements de la base de données d'articles.
+ */
+public class TestStatistiquesChargement {
+
+    File fichier;
+
+    @Before
+    public void setUp() throws IOException {
+        fichier = File.createTempFile("produits", ".csv");
+        fichier.deleteOnExit();
+    }
+
+    private void ecrire(String contenu) throws IOException {
+        FileWriter w = new FileWriter(fichier);
+        w.write(contenu);
+        w.close();
+    }
+
+    @Test
+    public void chargementReussi() throws IOException, FileFormatException {
+        ecrire("5410188006711,2.15,Tropicana\n3560070048786,0.87,Cookies\n5410188006711,2.50,Tropicana\n");
+        long avant = ChargementCatalogue.get().getNbChargements();
+        ArticleDB db = new ArticleDB();
+        assertNull(db.getStatistiquesChargement());
+        db.init(fichier.getPath());
+        StatistiquesChargement s = db.getStatistiquesChargement();
+        assertTrue(s.isReussi());
+        assertEquals(fichier.getPath(), s.getFichier());
+        assertEquals(fichier.length(), s.getOctetsLus());
+        assertEquals(fichier.length(), s.getOctetsAnalyses());
+        assertEquals(3, s.getLignesLues());
+        assertEquals(0, s.getLignesRejetees());
+        assertEquals(1, s.getDoublons());
+        assertEquals(2, s.getTaille());
+        assertTrue(s.getEmpreinte() > 0);
+        assertTrue(s.getDureeNanos() > 0);
+        assertEquals(avant + 1, ChargementCatalogue.get().getNbChargements());
+        assertSame(s, ChargementCatalogue.get().getDernierChargement());
+    }
+
+    /**
+     * Toutes les lignes sont analysées malgré les erreurs, qui sont comptées par motif
+     */
+    @Test
+    public void rejetsParMotif() throws IOException {
+        ecrire("5410188006711,2.15,Tropicana\n"
+                + "5410188006711,2.15\n"
+                + "5410188006711,2.15,Tropicana,10%,x\n"
+                + "54101880067x1,2.15,Tropicana\n"
+                + "5410188006711,deux,Tropicana\n"
+                + "5410188006711,2.15,Tropicana,10\n"
+                + "5410188006711,-2.15,Tropicana\n"
+                + "5410188006711,2.15,Tropicana,200%\n"
+                + "5410188006712,2.15,Tropicana\n"
+                + "3560070048786,0.87,Cookies\n");
+        long echecs = ChargementCatalogue.get().getNbEchecs();
+        ArticleDB db = new ArticleDB();
+        try {
+            db.init(fichier.getPath());
+            fail();
+        }
+        catch (FileFormatException e) {
+            // attendu
+        }
+        StatistiquesChargement s = db.getStatistiquesChargement();
+        assertFalse(s.isReussi());
+        assertEquals(10, s.getLignesLues());
+        assertEquals(8, s.getLignesRejetees());
+        assertEquals(2, s.getRejets(MotifRejet.COLONNES));
+        assertEquals(2, s.getRejets(MotifRejet.NOMBRE));
+        assertEquals(1, s.getRejets(MotifRejet.REDUCTION));
+        assertEquals(2, s.getRejets(MotifRejet.PRIX_NEGATIF));
+        assertEquals(1, s.getRejets(MotifRejet.CLE_EAN13));
+        assertEquals(Long.valueOf(2), s.getRejetsParMotif().get("COLONNES"));
+        assertEquals(0, s.getTaille());
+        assertEquals(0, db.getTailleDB());
+        assertEquals(echecs + 1, ChargementCatalogue.get().getNbEchecs());
+    }
+
+    @Test
+    public void fichierIntrouvable() {
+        ArticleDB db = new ArticleDB();
+        try {
+            db.init(fichier.getPath() + ".absent.csv");
+            fail();
+        }
+        catch (IOException e) {
+            // attendu
+        }
+        catch (FileFormatException e) {
+            fail();
+        }
+        assertFalse(db.getStatistiquesChargement().isReussi());
+        assertEquals(0, db.getStatistiquesChargement().getLignesLues());
+    }
+
+    /**
+     * Les compteurs sont publiés par JMX, le dernier relevé sous forme de données composites
+     */
+    @Test
+    public void publicationJMX() throws Exception {
+        ecrire("5410188006711,2.15,Tropicana\n3560070048786,0.87,Cookies\n");
+        new ArticleDB().init(fichier.getPath());
+        MBeanServer serveur = ManagementFactory.getPlatformMBeanServer();
+        ObjectName nom = new ObjectName(ChargementCatalogue.NOM);
+        assertTrue(serveur.isRegistered(nom));
+        assertEquals(ChargementCatalogue.get().getNbChargements(), serveur.getAttribute(nom, "NbChargements"));
+        CompositeData dernier = (CompositeData) serveur.getAttribute(nom, "DernierChargement");
+        assertEquals(2, dernier.get("taille"));
+        assertEquals(2L, dernier.get("lignesLues"));
+        assertEquals(true, dernier.get("reussi"));
+    }
+}
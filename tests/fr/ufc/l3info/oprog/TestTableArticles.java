@@ -0,0 +1,95 @@
+/**
+ *  This work is licensed under the Creative Commons Attribution-NonCommercial-NoDerivatives 4.0 International License.
+ *  To view a copy of this license, visit http://creativecommons.org/licenses/by-nc-nd/4.0/ or send a letter to Creative
+ *  Commons, PO Box 1866, Mountain View, CA 94042, USA.
+ */
+package fr.ufc.l3info.oprog;
+
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests de la table de hachage des articles.
+ */
+public class TestTableArticles {
+
+    TableArticles table;
+
+    @Before
+    public void setUp() {
+        table = new TableArticles();
+    }
+
+    @Test
+    public void tableVide() {
+        assertEquals(0, table.taille());
+        assertNull(table.get(0));
+        assertNull(table.get(3474377910731L));
+    }
+
+    @Test
+    public void ajoutEtRecherche() {
+        table.put(new Article(3474377910731L, 1.1, "Marker"));
+        table.put(new Article(0, 2.2, "Code nul"));
+        assertEquals(2, table.taille());
+        assertEquals("Marker", table.get(3474377910731L).getNom());
+        assertEquals("Code nul", table.get(0).getNom());
+        assertNull(table.get(3474377910730L));
+    }
+
+    /**
+     * Une clé insérée deux fois garde sa position, la dernière valeur l'emporte
+     */
+    @Test
+    public void doublonDernierGagne() {
+        table.put(new Article(1, 1, "a"));
+        table.put(new Article(2, 2, "b"));
+        table.put(new Article(1, 3, "c"));
+        assertEquals(2, table.taille());
+        assertEquals("c", table.get(1).getNom());
+        assertEquals(1, table.article(0).getCodeEAN13());
+        assertEquals(2, table.article(1).getCodeEAN13());
+    }
+
+    /**
+     * Redimensionnement : toutes les clés restent accessibles, dans l'ordre d'insertion
+     */
+    @Test
+    public void agrandissement() {
+        int n = 100000;
+        for (int i = 0; i < n; i++) {
+            // codes espacés pour provoquer des collisions sur les bits de poids faible
+            table.put(new Article(i * 1024L, i, "a" + i));
+        }
+        assertEquals(n, table.taille());
+        for (int i = 0; i < n; i++) {
+            assertEquals(i * 1024L, table.get(i * 1024L).getCodeEAN13());
+            assertEquals(i * 1024L, table.article(i).getCodeEAN13());
+        }
+        assertNull(table.get(1));
+    }
+
+    /**
+     * Une table vidée est réutilisable : les anciennes clés sont absentes, l'ordre
+     * d'insertion repart de zéro
+     */
+    @Test
+    public void vider() {
+        for (int i = 0; i < 20; i++) {
+            table.put(new Article(i, i, "a" + i));
+        }
+        table.vider();
+        assertEquals(0, table.taille());
+        assertNull(table.get(5));
+        table.put(new Article(7, 7, "b"));
+        table.put(new Article(25, 25, "c"));
+        assertEquals(2, table.taille());
+        assertEquals("b", table.get(7).getNom());
+        assertEquals(25, table.article(1).getCodeEAN13());
+        assertEquals(1, table.rang(25));
+        assertNull(table.get(3));
+    }
+}